@@ -0,0 +1,84 @@
+package org.luwrain.core;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+//Throughput of the text normalization on large documents, the score multiplied by the size gives characters per second
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpeechNormalizerBenchmark
+{
+    static private final String CHARS_TO_NAME = "#$%&*+<=>@\\^_|~";
+
+    @Param({"0", "100", "10000"})
+    public int dictionarySize;
+
+    //In characters
+    @Param({"100000", "1000000"})
+    public int documentSize;
+
+    private SpeechNormalizer normalizer;
+    private String document;
+    private String[] lines;
+    private int lineIndex = 0;
+
+    @Setup(Level.Trial) public void prepare()
+    {
+	final Random rand = new Random(1);
+	final HashMap<String, String> dict = new HashMap<String, String>();
+	for(int i = 0;i < dictionarySize;++i)
+	    dict.put(word(new Random(i)), "pronunciation" + i);
+	normalizer = new SpeechNormalizer(dict, "\"", CHARS_TO_NAME, (ch)->Character.getName(ch), Locale.ENGLISH);
+	//The words of the dictionary are mixed with other words, numbers and symbols
+	final StringBuilder b = new StringBuilder();
+	final ArrayList<String> l = new ArrayList<String>();
+	int lineStart = 0;
+	while(b.length() < documentSize)
+	{
+	    final int kind = rand.nextInt(10);
+	    if (kind == 0)
+		b.append(rand.nextInt(1000000)); else
+		if (kind == 1)
+		    b.append(CHARS_TO_NAME.charAt(rand.nextInt(CHARS_TO_NAME.length()))); else
+		    if (kind == 2 && dictionarySize > 0)
+			b.append(word(new Random(rand.nextInt(dictionarySize)))); else
+			b.append(word(rand));
+	    b.append(rand.nextInt(12) == 0?". ":" ");
+	    if (b.length() - lineStart > 70)
+	    {
+		l.add(b.substring(lineStart));
+		lineStart = b.length();
+	    }
+	}
+	document = new String(b);
+	lines = l.toArray(new String[l.size()]);
+    }
+
+    @Benchmark public String wholeDocument()
+    {
+	return normalizer.normalize(document);
+    }
+
+    //The lines are short enough for the cache, as when reading an area line by line
+    @Benchmark @OutputTimeUnit(TimeUnit.MICROSECONDS) public String byLines()
+    {
+	final String res = normalizer.normalize(lines[lineIndex]);
+	lineIndex = (lineIndex + 1) % lines.length;
+	return res;
+    }
+
+    static private String word(Random rand)
+    {
+	final StringBuilder b = new StringBuilder();
+	final int len = 3 + rand.nextInt(8);
+	for(int i = 0;i < len;++i)
+	    b.append((char)('a' + rand.nextInt(26)));
+	return new String(b);
+    }
+}
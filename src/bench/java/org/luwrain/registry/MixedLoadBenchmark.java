@@ -0,0 +1,68 @@
+
+package org.luwrain.registry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.luwrain.core.Registry;
+
+//Several readers and one writer working with the registry at once
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MixedLoadBenchmark
+{
+    static private final int WIDTH = 100;
+    static private final int DEPTH = 3;
+
+    @Param({RegistryTrees.FSDIR, RegistryTrees.FSDIR_BATCHED, RegistryTrees.BIN})
+    public String backend;
+
+    private java.nio.file.Path dir;
+    private Registry registry;
+    private String[] leaves;
+
+    @Setup(Level.Trial) public void createRegistry() throws Exception
+    {
+	dir = RegistryTrees.createTempDir();
+	registry = RegistryTrees.open(backend, dir);
+	RegistryTrees.fill(registry, WIDTH, DEPTH, 5);
+	leaves = new String[WIDTH];
+	for(int i = 0;i < WIDTH;++i)
+	    leaves[i] = RegistryTrees.leafPath(DEPTH, i);
+    }
+
+    @TearDown(Level.Trial) public void deleteRegistry() throws Exception
+    {
+	RegistryTrees.close(registry);
+	RegistryTrees.delete(dir);
+    }
+
+    @Benchmark @Group("readMostly") @GroupThreads(3) public void reader(Blackhole bh)
+    {
+	bh.consume(registry.getString(leaves[ThreadLocalRandom.current().nextInt(WIDTH)] + "/str1"));
+    }
+
+    @Benchmark @Group("readMostly") @GroupThreads(1) public boolean writer()
+    {
+	final ThreadLocalRandom rand = ThreadLocalRandom.current();
+	return registry.setInteger(leaves[rand.nextInt(WIDTH)] + "/int0", rand.nextInt());
+    }
+
+    @Benchmark @Group("readWrite") @GroupThreads(2) public void balancedReader(Blackhole bh)
+    {
+	bh.consume(registry.getInteger(leaves[ThreadLocalRandom.current().nextInt(WIDTH)] + "/int0"));
+    }
+
+    @Benchmark @Group("readWrite") @GroupThreads(2) public boolean balancedWriter()
+    {
+	final ThreadLocalRandom rand = ThreadLocalRandom.current();
+	return registry.setInteger(leaves[rand.nextInt(WIDTH)] + "/int0", rand.nextInt());
+    }
+}
@@ -0,0 +1,55 @@
+package org.luwrain.registry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.luwrain.core.Registry;
+
+//The same reading with one thread and with all cores, the readers mustn't wait for each other
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadScalingBenchmark
+{
+    static private final int WIDTH = 50;
+    static private final int DEPTH = 2;
+
+    @Param({RegistryTrees.FSDIR, RegistryTrees.FSDIR_BATCHED, RegistryTrees.BIN})
+    public String backend;
+
+    private java.nio.file.Path dir;
+    private Registry registry;
+    private String[] leaves;
+
+    @Setup(Level.Trial) public void createRegistry() throws Exception
+    {
+	dir = RegistryTrees.createTempDir();
+	registry = RegistryTrees.open(backend, dir);
+	RegistryTrees.fill(registry, WIDTH, DEPTH, 5);
+	leaves = new String[WIDTH];
+	for(int i = 0;i < WIDTH;++i)
+	    leaves[i] = RegistryTrees.leafPath(DEPTH, i);
+    }
+
+    @TearDown(Level.Trial) public void deleteRegistry() throws Exception
+    {
+	RegistryTrees.close(registry);
+	RegistryTrees.delete(dir);
+    }
+
+    @Benchmark @Threads(1) public void oneReader(Blackhole bh)
+    {
+	bh.consume(registry.getString(leaves[ThreadLocalRandom.current().nextInt(WIDTH)] + "/str1"));
+    }
+
+    @Benchmark @Threads(Threads.MAX) public void allCoresReaders(Blackhole bh)
+    {
+	bh.consume(registry.getString(leaves[ThreadLocalRandom.current().nextInt(WIDTH)] + "/str1"));
+    }
+}
@@ -0,0 +1,90 @@
+
+package org.luwrain.registry;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.luwrain.core.Registry;
+
+//Single-threaded throughput and latency of the basic operations
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistryBenchmark
+{
+    static private final int VALUE_COUNT = 5;
+
+    @Param({RegistryTrees.FSDIR, RegistryTrees.FSDIR_BATCHED, RegistryTrees.BIN})
+    public String backend;
+
+    @Param({"10", "1000"})
+    public int width;
+
+    @Param({"1", "6"})
+    public int depth;
+
+    private java.nio.file.Path dir;
+    private Registry registry;
+    private String[] leaves;
+    private final Random rand = new Random(1);
+    private int counter = 0;
+
+    @Setup(Level.Trial) public void createRegistry() throws Exception
+    {
+	dir = RegistryTrees.createTempDir();
+	registry = RegistryTrees.open(backend, dir);
+	RegistryTrees.fill(registry, width, depth, VALUE_COUNT);
+	leaves = new String[width];
+	for(int i = 0;i < width;++i)
+	    leaves[i] = RegistryTrees.leafPath(depth, i);
+    }
+
+    @TearDown(Level.Trial) public void deleteRegistry() throws Exception
+    {
+	RegistryTrees.close(registry);
+	RegistryTrees.delete(dir);
+    }
+
+    @Benchmark public void getString(Blackhole bh)
+    {
+	bh.consume(registry.getString(leaves[rand.nextInt(width)] + "/str1"));
+    }
+
+    @Benchmark public void getTypeOf(Blackhole bh)
+    {
+	bh.consume(registry.getTypeOf(leaves[rand.nextInt(width)] + "/int1"));
+    }
+
+    @Benchmark public boolean setInteger()
+    {
+	return registry.setInteger(leaves[rand.nextInt(width)] + "/int0", ++counter);
+    }
+
+    @Benchmark public void listDirectories(Blackhole bh)
+    {
+	bh.consume(registry.getDirectories(RegistryTrees.parentPath(depth)));
+    }
+
+    @Benchmark public void listValues(Blackhole bh)
+    {
+	bh.consume(registry.getValues(leaves[rand.nextInt(width)]));
+    }
+
+    @Benchmark public boolean deleteAndSetValue()
+    {
+	final String path = leaves[rand.nextInt(width)] + "/temp";
+	registry.setString(path, "value");
+	return registry.deleteValue(path);
+    }
+
+    @Benchmark public void snapshot(Blackhole bh)
+    {
+	bh.consume(DirectorySnapshot.read(registry, RegistryTrees.parentPath(depth), true));
+    }
+}
@@ -0,0 +1,95 @@
+
+package org.luwrain.registry;
+
+import java.io.*;
+import java.nio.file.*;
+
+import org.luwrain.core.Registry;
+
+//Creation of the registry backends and synthetic trees for the benchmarks
+public class RegistryTrees
+{
+    static public final String FSDIR = "fsdir";
+    static public final String FSDIR_BATCHED = "fsdir-batched";
+    static public final String BIN = "bin";
+
+    static private final int FLUSH_DELAY = 1000;
+
+    static public Registry open(String backend, java.nio.file.Path dir) throws IOException
+    {
+	switch(backend)
+	{
+	case FSDIR:
+	    Files.createDirectories(dir);
+	    return new org.luwrain.registry.fsdir.RegistryImpl(dir);
+	case FSDIR_BATCHED:
+	    Files.createDirectories(dir);
+	    return new org.luwrain.registry.fsdir.RegistryImpl(dir, FLUSH_DELAY);
+	case BIN:
+	    Files.createDirectories(dir);
+	    return new org.luwrain.registry.bin.RegistryImpl(dir.resolve("registry.bin"));
+	default:
+	    throw new IllegalArgumentException("unknown backend " + backend);
+	}
+    }
+
+    static public void close(Registry registry)
+    {
+	if (registry instanceof org.luwrain.registry.fsdir.RegistryImpl)
+	    ((org.luwrain.registry.fsdir.RegistryImpl)registry).flush();
+	if (registry instanceof org.luwrain.registry.bin.RegistryImpl)
+	    ((org.luwrain.registry.bin.RegistryImpl)registry).close();
+    }
+
+    //The path of the directory at the given depth, where the leaves are created
+    static public String parentPath(int depth)
+    {
+	final StringBuilder b = new StringBuilder();
+	for(int i = 0;i < depth;++i)
+	    b.append("/level").append(i);
+	return new String(b);
+    }
+
+    static public String leafPath(int depth, int index)
+    {
+	return parentPath(depth) + "/leaf" + index;
+    }
+
+    /**
+     * Fills the registry with {@code width} sibling directories placed
+     * {@code depth} levels below the root, every directory with {@code
+     * valueCount} values of each type.
+     */
+    static public void fill(Registry registry, int width, int depth, int valueCount)
+    {
+	for(int i = 0;i < width;++i)
+	{
+	    final String leaf = leafPath(depth, i);
+	    for(int j = 0;j < valueCount;++j)
+	    {
+		registry.setString(leaf + "/str" + j, "value " + i + " " + j);
+		registry.setInteger(leaf + "/int" + j, i * j);
+		registry.setBoolean(leaf + "/bool" + j, (i + j) % 2 == 0);
+	    }
+	}
+    }
+
+    static public java.nio.file.Path createTempDir() throws IOException
+    {
+	return Files.createTempDirectory("luwrain-registry-bench");
+    }
+
+    static public void delete(java.nio.file.Path path) throws IOException
+    {
+	final File f = path.toFile();
+	deleteRecurse(f);
+    }
+
+    static private void deleteRecurse(File f)
+    {
+	if (f.isDirectory())
+	    for(File i: f.listFiles())
+		deleteRecurse(i);
+	f.delete();
+    }
+}
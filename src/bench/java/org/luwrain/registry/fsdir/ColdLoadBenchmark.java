@@ -0,0 +1,70 @@
+
+package org.luwrain.registry.fsdir;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.luwrain.core.Registry;
+import org.luwrain.registry.RegistryTrees;
+
+//Time of reading the data from the disk when nothing is loaded yet
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(1)
+public class ColdLoadBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int valueCount;
+
+    private java.nio.file.Path dir;
+    private File valuesDir;
+    private java.nio.file.Path binDir;
+
+    @Setup(Level.Trial) public void createRegistry() throws Exception
+    {
+	dir = RegistryTrees.createTempDir();
+	final java.nio.file.Path fsdirDir = dir.resolve("fsdir");
+	binDir = dir.resolve("bin");
+	final Registry fsdir = RegistryTrees.open(RegistryTrees.FSDIR, fsdirDir);
+	final Registry bin = RegistryTrees.open(RegistryTrees.BIN, binDir);
+	fillValues(fsdir);
+	fillValues(bin);
+	RegistryTrees.close(fsdir);
+	RegistryTrees.close(bin);
+	valuesDir = fsdirDir.resolve("values").toFile();
+    }
+
+    @TearDown(Level.Trial) public void deleteRegistry() throws Exception
+    {
+	RegistryTrees.delete(dir);
+    }
+
+    //A new directory object every time, so Directory.loadValues() reads the files again
+    @Benchmark public void fsdirLoadValues(Blackhole bh) throws IOException
+    {
+	bh.consume(new Directory("values", valuesDir).values());
+    }
+
+    @Benchmark public void binOpen(Blackhole bh) throws IOException
+    {
+	final org.luwrain.registry.bin.RegistryImpl registry = (org.luwrain.registry.bin.RegistryImpl)RegistryTrees.open(RegistryTrees.BIN, binDir);
+	bh.consume(registry.getValues("/values"));
+	registry.close();
+    }
+
+    private void fillValues(Registry registry)
+    {
+	for(int i = 0;i < valueCount;++i)
+	{
+	    registry.setString("/values/str" + i, "string value number " + i);
+	    registry.setInteger("/values/int" + i, i);
+	    registry.setBoolean("/values/bool" + i, i % 2 == 0);
+	}
+    }
+}
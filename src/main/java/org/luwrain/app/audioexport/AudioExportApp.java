@@ -0,0 +1,118 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.app.audioexport;
+
+import org.luwrain.core.*;
+import org.luwrain.core.events.*;
+import org.luwrain.controls.*;
+
+public class AudioExportApp implements Application
+{
+    static public final String STRINGS_NAME = "luwrain.audio-export";
+
+    private Luwrain luwrain;
+    private Strings strings;
+    private ProgressArea area;
+    private final Task task;
+    private Thread thread = null;
+    private volatile boolean closed = false;
+
+    public AudioExportApp(Task task)
+    {
+	NullCheck.notNull(task, "task");
+	this.task = task;
+    }
+
+    @Override public boolean onLaunch(Luwrain luwrain)
+    {
+	final Object o = luwrain.i18n().getStrings(STRINGS_NAME);
+	if (o == null || !(o instanceof Strings))
+	    return false;
+	strings = (Strings)o;
+	this.luwrain = luwrain;
+	createArea();
+	thread = new Thread(()->run(), "audio-export");
+	thread.setDaemon(true);
+	thread.start();
+	return true;
+    }
+
+    @Override public String getAppName()
+    {
+	return strings.appName();
+    }
+
+    private void createArea()
+    {
+	area = new ProgressArea(new DefaultControlEnvironment(luwrain), strings.appName()){
+		@Override public boolean onEnvironmentEvent(EnvironmentEvent event)
+		{
+		    NullCheck.notNull(event, "event");
+		    switch(event.getCode())
+		    {
+		    case CLOSE:
+			closeApp();
+			return true;
+		    default:
+			return super.onEnvironmentEvent(event);
+		    }
+		}
+	    };
+    }
+
+    //Runs in the background thread
+    private void run()
+    {
+	final boolean completed = task.run(new Task.Listener(){
+		@Override public void onProgress(String name, int percent)
+		{
+		    progressLine(strings.progress(name, percent));
+		}
+		@Override public void onDone(String name, String dest)
+		{
+		    progressLine(strings.done(name, dest));
+		}
+		@Override public void onFailed(String name, String message)
+		{
+		    progressLine(strings.failed(name, message));
+		}
+	    });
+	if (closed)
+	    return;
+	progressLine(completed?strings.finished():strings.cancelled());
+	if (completed)
+	    luwrain.runInMainThread(()->luwrain.message(strings.finished(), Luwrain.MESSAGE_DONE));
+    }
+
+    private void progressLine(String line)
+    {
+	if (!closed)
+	    luwrain.enqueueEvent(new ProgressLineEvent(area, line));
+    }
+
+    @Override public AreaLayout getAreasToShow()
+    {
+	return new AreaLayout(area);
+    }
+
+    private void closeApp()
+    {
+	closed = true;
+	task.cancel();
+	luwrain.closeApp();
+    }
+}
@@ -0,0 +1,35 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.app.audioexport;
+
+/**
+ * The export of texts to audio files prepared by the core. The
+ * application only runs it in the background and shows the progress.
+ */
+public interface Task
+{
+    public interface Listener
+    {
+	void onProgress(String name, int percent);
+	void onDone(String name, String dest);
+	void onFailed(String name, String message);
+    }
+
+    //Called in a background thread, returns false if cancelled
+    boolean run(Listener listener);
+    void cancel();
+}
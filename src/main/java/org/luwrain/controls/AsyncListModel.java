@@ -0,0 +1,218 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.controls;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.luwrain.core.*;
+
+/**
+ * The model for {@link ListArea} taking the items from a slow or a very
+ * large source. The items are requested by pages on a background thread,
+ * until a page comes its items are returned as null. Only the recently
+ * used pages are kept in memory. All methods except the ones of the
+ * source must be called in the main thread.
+ */
+public class AsyncListModel implements ListArea.AsyncModel
+{
+    static private final int PAGE_SIZE = 100;
+    static private final int MAX_PAGES = 64;
+    //In seconds
+    static private final int THREAD_KEEP_ALIVE = 10;
+
+    //The methods are called on the background thread
+    public interface Source
+    {
+	int getItemCount();
+	//May return less items than requested, if the source has changed
+	Object[] getItems(int fromIndex, int count);
+    }
+
+    private final Source source;
+    //Runs the given code in the main thread
+    private final Executor mainThread;
+    private final int pageSize;
+    private final int maxPages;
+    private final ExecutorService loader;
+    private final LinkedHashMap<Integer, Object[]> pages;
+    private final HashSet<Integer> pending = new HashSet<Integer>();
+    //The pages which couldn't be taken, not requested again until refreshing
+    private final HashSet<Integer> failed = new HashSet<Integer>();
+    private int itemCount = 0;
+    private boolean countPending = false;
+    //Increased on every refreshing, the pages for the previous ones are dropped
+    private int generation = 0;
+    private Runnable loadingListener = null;
+
+    public AsyncListModel(Luwrain luwrain, Source source)
+    {
+	this(source, (r)->luwrain.runInMainThread(r), PAGE_SIZE, MAX_PAGES);
+	NullCheck.notNull(luwrain, "luwrain");
+    }
+
+    AsyncListModel(Source source, Executor mainThread, int pageSize, int maxPages)
+    {
+	NullCheck.notNull(source, "source");
+	NullCheck.notNull(mainThread, "mainThread");
+	if (pageSize <= 0 || maxPages <= 0)
+	    throw new IllegalArgumentException("pageSize (" + pageSize + ") and maxPages (" + maxPages + ") must be greater than zero");
+	this.source = source;
+	this.mainThread = mainThread;
+	this.pageSize = pageSize;
+	this.maxPages = maxPages;
+	this.pages = new LinkedHashMap<Integer, Object[]>(16, 0.75f, true){
+		@Override protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest)
+		{
+		    return size() > AsyncListModel.this.maxPages;
+		}
+	    };
+	//The thread exits while there is nothing to load
+	final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+								   new LinkedBlockingQueue<Runnable>(), (r)->{
+									   final Thread t = new Thread(r, "list-loading");
+									   t.setDaemon(true);
+									   return t;
+								       });
+	executor.allowCoreThreadTimeOut(true);
+	this.loader = executor;
+	refresh();
+    }
+
+    @Override public int getItemCount()
+    {
+	return itemCount;
+    }
+
+    @Override public Object getItem(int index)
+    {
+	if (index < 0 || index >= itemCount)
+	    return null;
+	final int page = index / pageSize;
+	final Object[] items = pages.get(page);
+	if (items == null)
+	{
+	    if (!failed.contains(page))
+		requestPage(page);
+	    return null;
+	}
+	final int pos = index % pageSize;
+	return pos < items.length?items[pos]:null;
+    }
+
+    @Override public boolean isItemLoaded(int index)
+    {
+	if (index < 0 || index >= itemCount)
+	    return false;
+	//Without touching the order of the cache, nothing more comes for the failed pages
+	final int page = index / pageSize;
+	return pages.containsKey(page) || failed.contains(page);
+    }
+
+    @Override public void setLoadingListener(Runnable listener)
+    {
+	this.loadingListener = listener;
+    }
+
+    @Override public boolean toggleMark(int index)
+    {
+	return false;
+    }
+
+    //The previous items remain until the new number of items comes
+    @Override public void refresh()
+    {
+	++generation;
+	pending.clear();
+	failed.clear();
+	countPending = true;
+	final int gen = generation;
+	loader.execute(()->{
+		final int count;
+		try {
+		    count = source.getItemCount();
+		}
+		catch(Exception e)
+		{
+		    Log.error("controls", "unable to get the number of items of the list:" + e.getClass().getName() + ":" + e.getMessage());
+		    mainThread.execute(()->{
+			    if (gen == generation)
+				countPending = false;
+			});
+		    return;
+		}
+		mainThread.execute(()->onCount(gen, count));
+	    });
+    }
+
+    //True if the number of items is requested but not known yet
+    public boolean isCountPending()
+    {
+	return countPending;
+    }
+
+    private void onCount(int gen, int count)
+    {
+	if (gen != generation)
+	    return;
+	countPending = false;
+	itemCount = Math.max(count, 0);
+	pages.clear();
+	notifyListener();
+    }
+
+    private void requestPage(int page)
+    {
+	if (countPending || pending.contains(page))
+	    return;
+	pending.add(page);
+	final int gen = generation;
+	final int fromIndex = page * pageSize;
+	final int count = Math.min(pageSize, itemCount - fromIndex);
+	loader.execute(()->{
+		Object[] items;
+		try {
+		    items = source.getItems(fromIndex, count);
+		}
+		catch(Exception e)
+		{
+		    Log.error("controls", "unable to get the items of the list from " + fromIndex + ":" + e.getClass().getName() + ":" + e.getMessage());
+		    items = null;
+		}
+		final Object[] res = items;
+		mainThread.execute(()->onPage(gen, page, res));
+	    });
+    }
+
+    private void onPage(int gen, int page, Object[] items)
+    {
+	if (gen != generation)
+	    return;
+	pending.remove(page);
+	//Otherwise every redrawing would request it again
+	if (items == null)
+	    failed.add(page); else
+	    pages.put(page, items);
+	notifyListener();
+    }
+
+    private void notifyListener()
+    {
+	if (loadingListener != null)
+	    loadingListener.run();
+    }
+}
@@ -178,6 +178,7 @@ public class CommanderArea extends ListArea
 	if (!Files.isDirectory(path))
 	    throw new IllegalArgumentException("path must address a directory");
 	getListModel().load(path);
+	invalidatePrefixIndex();
 	hotPointY = 0;
 	if (isEmpty())
 	{
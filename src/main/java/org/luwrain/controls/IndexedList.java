@@ -0,0 +1,208 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.controls;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import org.luwrain.core.NullCheck;
+
+/**
+ * The sequence of items with access by index and replacing of ranges in
+ * logarithmic time. The items are kept in a treap ordered by the
+ * position, every node knows the size of its subtree, so replacing a range
+ * costs the number of new items plus the logarithm of the size.
+ */
+final class IndexedList<E>
+{
+    static private final class Node<E>
+    {
+	final E value;
+	final int priority;
+	Node<E> left = null;
+	Node<E> right = null;
+	int size = 1;
+
+	Node(E value, int priority)
+	{
+	    this.value = value;
+	    this.priority = priority;
+	}
+    }
+
+    //The result of splitting
+    static private final class Parts<E>
+    {
+	final Node<E> left;
+	final Node<E> right;
+
+	Parts(Node<E> left, Node<E> right)
+	{
+	    this.left = left;
+	    this.right = right;
+	}
+    }
+
+    private final Random random = new Random();
+    private Node<E> root = null;
+
+    IndexedList()
+    {
+    }
+
+    IndexedList(List<E> items)
+    {
+	NullCheck.notNull(items, "items");
+	root = build(items);
+    }
+
+    int size()
+    {
+	return size(root);
+    }
+
+    E get(int index)
+    {
+	if (index < 0 || index >= size())
+	    throw new IndexOutOfBoundsException("index (" + index + ") must be non-negative and less than " + size());
+	Node<E> node = root;
+	int i = index;
+	while(true)
+	{
+	    final int leftSize = size(node.left);
+	    if (i < leftSize)
+		node = node.left; else
+		if (i == leftSize)
+		    return node.value; else
+		{
+		    i -= leftSize + 1;
+		    node = node.right;
+		}
+	}
+    }
+
+    /**
+     * Removes the given number of items beginning at the position and
+     * inserts the new items in their place.
+     */
+    void replace(int index, int count, List<E> items)
+    {
+	NullCheck.notNull(items, "items");
+	if (index < 0 || count < 0 || index + count > size())
+	    throw new IndexOutOfBoundsException("index (" + index + ") and count (" + count + ") don't address a range in the list of " + size() + " items");
+	final Parts<E> head = split(root, index);
+	final Parts<E> tail = split(head.right, count);
+	root = merge(merge(head.left, build(items)), tail.right);
+    }
+
+    //Returns -1 if there is no such item
+    int indexOf(Predicate<? super E> cond)
+    {
+	NullCheck.notNull(cond, "cond");
+	final LinkedList<Node<E>> stack = new LinkedList<Node<E>>();
+	Node<E> node = root;
+	int index = 0;
+	while(node != null || !stack.isEmpty())
+	{
+	    while(node != null)
+	    {
+		stack.push(node);
+		node = node.left;
+	    }
+	    node = stack.pop();
+	    if (cond.test(node.value))
+		return index;
+	    ++index;
+	    node = node.right;
+	}
+	return -1;
+    }
+
+    //Builds the treap in linear time keeping the right spine on the stack
+    private Node<E> build(List<E> items)
+    {
+	if (items.isEmpty())
+	    return null;
+	final LinkedList<Node<E>> spine = new LinkedList<Node<E>>();
+	for(E item: items)
+	{
+	    final Node<E> node = new Node<E>(item, random.nextInt());
+	    Node<E> last = null;
+	    while(!spine.isEmpty() && spine.peek().priority < node.priority)
+		last = spine.pop();
+	    node.left = last;
+	    if (!spine.isEmpty())
+		spine.peek().right = node;
+	    spine.push(node);
+	}
+	final Node<E> res = spine.getLast();
+	updateSizes(res);
+	return res;
+    }
+
+    private Parts<E> split(Node<E> node, int count)
+    {
+	if (node == null)
+	    return new Parts<E>(null, null);
+	if (size(node.left) >= count)
+	{
+	    final Parts<E> p = split(node.left, count);
+	    node.left = p.right;
+	    update(node);
+	    return new Parts<E>(p.left, node);
+	}
+	final Parts<E> p = split(node.right, count - size(node.left) - 1);
+	node.right = p.left;
+	update(node);
+	return new Parts<E>(node, p.right);
+    }
+
+    private Node<E> merge(Node<E> left, Node<E> right)
+    {
+	if (left == null)
+	    return right;
+	if (right == null)
+	    return left;
+	if (left.priority > right.priority)
+	{
+	    left.right = merge(left.right, right);
+	    update(left);
+	    return left;
+	}
+	right.left = merge(left, right.left);
+	update(right);
+	return right;
+    }
+
+    private int updateSizes(Node<E> node)
+    {
+	if (node == null)
+	    return 0;
+	node.size = updateSizes(node.left) + updateSizes(node.right) + 1;
+	return node.size;
+    }
+
+    static private <E> void update(Node<E> node)
+    {
+	node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    static private <E> int size(Node<E> node)
+    {
+	return node != null?node.size:0;
+    }
+}
@@ -40,6 +40,17 @@ public class ListArea  implements Area, RegionProvider
 	void refresh();
     }
 
+    /**
+     * The model giving the items some time later. The items not loaded yet
+     * are returned as null, and the listener is called in the main thread
+     * when some items come.
+     */
+    public interface AsyncModel extends Model
+    {
+	boolean isItemLoaded(int index);
+	void setLoadingListener(Runnable listener);
+    }
+
     public interface Appearance
     {
 	public enum Flags { BRIEF };
@@ -90,6 +101,9 @@ public class ListArea  implements Area, RegionProvider
 	public ListClickHandler clickHandler;
 	public String name;
 	public Set<Flags> flags = EnumSet.of(Flags.EMPTY_LINE_BOTTOM);
+	//For moving to the items by typing their beginnings
+	public boolean typeAheadIgnoreCase = false;
+	public Locale typeAheadLocale = Locale.getDefault();
     }
 
     protected final RegionTranslator region = new RegionTranslator(this);
@@ -100,9 +114,16 @@ public class ListArea  implements Area, RegionProvider
     protected final Transition transition;
     protected final Set<Flags> flags;
     protected ListClickHandler clickHandler;
+    protected final boolean typeAheadIgnoreCase;
+    protected final Locale typeAheadLocale;
+    //Built on the first typed letter, null if it must be built again
+    private PrefixIndex prefixIndex = null;
+    private int prefixIndexItemCount = 0;
 
     protected int hotPointX = 0;
     protected int hotPointY = 0;
+    //The item under the hot point must be announced when it comes
+    protected boolean announceOnLoading = false;
 
     public ListArea(Params params)
     {
@@ -113,6 +134,7 @@ public class ListArea  implements Area, RegionProvider
 	NullCheck.notNull(params.transition, "params.transition");
 	NullCheck.notNull(params.name, "params.name");
 	NullCheck.notNull(params.flags, "params.flags");
+	NullCheck.notNull(params.typeAheadLocale, "params.typeAheadLocale");
 	this.environment = params.environment;
 	this.model = params.model;
 	this.appearance = params.appearance;
@@ -120,7 +142,11 @@ public class ListArea  implements Area, RegionProvider
 	this.clickHandler = params.clickHandler;
 	this.areaName = params.name;
 	this.flags = params.flags;
+	this.typeAheadIgnoreCase = params.typeAheadIgnoreCase;
+	this.typeAheadLocale = params.typeAheadLocale;
 	//	itemsLayout.setFlags(params.flags);
+	if (model instanceof AsyncModel)
+	    ((AsyncModel)model).setLoadingListener(()->onItemsLoaded());
 	resetHotPoint();
     }
 
@@ -217,6 +243,7 @@ public class ListArea  implements Area, RegionProvider
 	final Object item = model.getItem(index);
 	if (item != null)
 	{
+	    announceOnLoading = false;
 	    hotPointX = appearance.getObservableLeftBound(item);
 	    if (announce)
 		appearance.announceItem(item, NONE_APPEARANCE_FLAGS);
@@ -224,7 +251,7 @@ public class ListArea  implements Area, RegionProvider
 	{
 	    hotPointX = 0;
 	    if (announce)
-		environment.hint(Hints.EMPTY_LINE);
+		announceNotLoaded(index);
 	}
 	environment.onAreaNewHotPoint(this);
 	return true;
@@ -301,6 +328,7 @@ public class ListArea  implements Area, RegionProvider
     public void refresh()
     {
 	model.refresh();
+	invalidatePrefixIndex();
 	final int count = model.getItemCount();
 	if (count == 0)
 	{
@@ -439,7 +467,22 @@ public class ListArea  implements Area, RegionProvider
 	if (itemIndex < 0 || itemIndex >= model.getItemCount())
 	    return "";
 	final Object res = model.getItem(itemIndex);
-	return res != null?appearance.getScreenAppearance(res, NONE_APPEARANCE_FLAGS):"";
+	if (res == null)
+	    return isLoaded(itemIndex)?"":loadingStr();
+	return appearance.getScreenAppearance(res, NONE_APPEARANCE_FLAGS);
+    }
+
+    @Override public String[] getLines(int fromIndex, int count)
+    {
+	if (fromIndex < 0 || count < 0)
+	    throw new IllegalArgumentException("fromIndex (" + fromIndex + ") and count (" + count + ") may not be negative");
+	final String[] res = new String[Math.min(count, Math.max(getLineCount() - fromIndex, 0))];
+	for(int i = 0;i < res.length;++i)
+	{
+	    final String line = getLine(fromIndex + i);
+	    res[i] = line != null?line:"";
+	}
+	return res;
     }
 
     @Override public int getHotPointX()
@@ -575,7 +618,6 @@ final int rightBound = appearance.getObservableRightBound(item);
     {
 	if (noContent())
 	    return true;
-	final int count = model.getItemCount();
 	final char c = event.getChar();
 	final String beginning;
 	if (selected() != null)
@@ -590,18 +632,74 @@ final int rightBound = appearance.getObservableRightBound(item);
 	} else
 	    beginning = "";
 	final String mustBegin = beginning + c;
+	final int index = findByPrefix(mustBegin);
+	if (index < 0)
+	    return false;
+	final Object item = model.getItem(index);
+	hotPointY = getLineIndexByItemIndex(index);
+	hotPointX = appearance.getObservableLeftBound(item) + mustBegin.length();
+	appearance.announceItem(item, NONE_APPEARANCE_FLAGS);
+	environment.onAreaNewHotPoint(this);
+	return true;
+    }
+
+    /**
+     * Finds the first item whose observable part begins with the given
+     * string. The index of the items is built on the first call and is
+     * used until the content of the list changes. The items not loaded by
+     * an asynchronous model aren't looked through.
+     *
+     * @param prefix The beginning of the item to look for
+     * @return The index of the item or -1 if there is no such item
+     */
+    public int findByPrefix(String prefix)
+    {
+	NullCheck.notNull(prefix, "prefix");
+	final String key = typeAheadKey(prefix);
+	if (prefixIndex == null || prefixIndexItemCount != model.getItemCount())
+	    buildPrefixIndex();
+	final int index = prefixIndex.findFirst(key);
+	if (index < 0 || matchesPrefix(index, key))
+	    return index;
+	//The model was changed without refreshing
+	buildPrefixIndex();
+	return prefixIndex.findFirst(key);
+    }
+
+    //Must be called if the screen appearance of the items may change without refreshing
+    protected void invalidatePrefixIndex()
+    {
+	prefixIndex = null;
+    }
+
+    private void buildPrefixIndex()
+    {
+	final int count = model.getItemCount();
+	final String[] keys = new String[count];
 	for(int i = 0;i < count;++i)
 	{
-	    final String name = getObservableSubstr(model.getItem(i));
-	    if (!name.startsWith(mustBegin))
+	    //The items not loaded yet aren't requested for searching
+	    if (!isLoaded(i))
 		continue;
-	    hotPointY = getLineIndexByItemIndex(i);
-	    ++hotPointX;
-	    appearance.announceItem(model.getItem(hotPointY), NONE_APPEARANCE_FLAGS);
-	    environment.onAreaNewHotPoint(this);
-	    return true;
+	    final Object item = model.getItem(i);
+	    if (item != null)
+		keys[i] = typeAheadKey(getObservableSubstr(item));
 	}
-	return false;
+	prefixIndex = new PrefixIndex(keys);
+	prefixIndexItemCount = count;
+    }
+
+    private boolean matchesPrefix(int index, String key)
+    {
+	if (index >= model.getItemCount() || !isLoaded(index))
+	    return false;
+	final Object item = model.getItem(index);
+	return item != null && typeAheadKey(getObservableSubstr(item)).startsWith(key);
+    }
+
+    protected String typeAheadKey(String text)
+    {
+	return typeAheadIgnoreCase?text.toLowerCase(typeAheadLocale):text;
     }
 
     protected boolean onArrowDown(KeyboardEvent event, boolean briefAnnouncement)
@@ -847,6 +945,7 @@ final int rightBound = appearance.getObservableRightBound(item);
 	    return false;
 	if (!model.toggleMark(index))
 	    return false;
+	invalidatePrefixIndex();
 	environment.onAreaNewContent(this);
 	if (hotPointY + 1 < getLineCount())
 	{
@@ -884,7 +983,8 @@ final int rightBound = appearance.getObservableRightBound(item);
 	final int count = model.getItemCount();
 	for(int i = 0;i < count;++i)
 	{
-	    final String line = appearance.getScreenAppearance(model.getItem(i), NONE_APPEARANCE_FLAGS);
+	    final Object item = model.getItem(i);
+	    final String line = item != null?appearance.getScreenAppearance(item, NONE_APPEARANCE_FLAGS):null;
 	    res.add(line != null?line:"");
 	}
 	res.add("");
@@ -899,7 +999,8 @@ final int rightBound = appearance.getObservableRightBound(item);
 	    return null;
 	if (fromY == toY)
 	{
-	    final String line = appearance.getScreenAppearance(model.getItem(fromY), NONE_APPEARANCE_FLAGS);
+	    final Object item = model.getItem(fromY);
+	    final String line = item != null?appearance.getScreenAppearance(item, NONE_APPEARANCE_FLAGS):null;
 	    if (line == null || line.isEmpty())
 		return null;
 	    final int fromPos = fromX < line.length()?fromX:line.length();
@@ -911,7 +1012,8 @@ final int rightBound = appearance.getObservableRightBound(item);
 	final LinkedList<String> res = new LinkedList<String>();
 	for(int i = fromY;i < toY;++i)
 	{
-	    final String line = appearance.getScreenAppearance(model.getItem(i), NONE_APPEARANCE_FLAGS);
+	    final Object item = model.getItem(i);
+	    final String line = item != null?appearance.getScreenAppearance(item, NONE_APPEARANCE_FLAGS):null;
 	    res.add(line != null?line:"");
 	}
 	res.add("");
@@ -946,11 +1048,12 @@ final int rightBound = appearance.getObservableRightBound(item);
 	final Object item = model.getItem(index);
 	if (item == null)
 	{
-	    environment.hint(Hints.EMPTY_LINE);
+	    announceNotLoaded(index);
 	    hotPointX = 0;
 	    environment.onAreaNewHotPoint(this);
 	    return;
 	}
+	announceOnLoading = false;
 	appearance.announceItem(item, briefAnnouncement?BRIEF_ANNOUNCEMENT_ONLY:NONE_APPEARANCE_FLAGS);
 	hotPointX = appearance.getObservableLeftBound(item);
 	environment.onAreaNewHotPoint(this);
@@ -975,6 +1078,48 @@ return line.substring(leftBound, rightBound);
 	return environment.getStaticStr("ListNoContent");
     }
 
+    protected String loadingStr()
+    {
+	return environment.getStaticStr("ListLoading");
+    }
+
+    protected boolean isLoaded(int index)
+    {
+	return !(model instanceof AsyncModel) || ((AsyncModel)model).isItemLoaded(index);
+    }
+
+    protected void announceNotLoaded(int index)
+    {
+	if (isLoaded(index))
+	{
+	    environment.hint(Hints.EMPTY_LINE);
+	    return;
+	}
+	announceOnLoading = true;
+	environment.hint(loadingStr(), Hints.EMPTY_LINE);
+    }
+
+    //Called by the asynchronous models in the main thread
+    protected void onItemsLoaded()
+    {
+	invalidatePrefixIndex();
+	final int lineCount = getLineCount();
+	if (hotPointY >= lineCount)
+	{
+	    hotPointY = lineCount - 1;
+	    hotPointX = 0;
+	}
+	environment.onAreaNewContent(this);
+	final Object item = selected();
+	if (announceOnLoading && item != null)
+	{
+	    announceOnLoading = false;
+	    hotPointX = appearance.getObservableLeftBound(item);
+	    appearance.announceItem(item, NONE_APPEARANCE_FLAGS);
+	}
+	environment.onAreaNewHotPoint(this);
+    }
+
     protected void announceChar(String  line, int pos, int rightBound)
     {
 	NullCheck.notNull(line, "line");
@@ -16,7 +16,7 @@
 
 package org.luwrain.controls;
 
-import java.util.Vector;
+import java.util.*;
 
 import org.luwrain.core.*;
 
@@ -67,6 +67,19 @@ public class MutableLinesImpl implements MutableLines
 	return lines.get(index);
     }
 
+    @Override public String[] getLines(int fromIndex, int count)
+    {
+	if (fromIndex < 0 || count < 0)
+	    throw new IllegalArgumentException("fromIndex (" + fromIndex + ") and count (" + count + ") may not be negative");
+	synchronized(lines) {
+	    final int toIndex = Math.min(fromIndex + count, lines.size());
+	    if (fromIndex >= toIndex)
+		return new String[0];
+	    final List<String> res = lines.subList(fromIndex, toIndex);
+	    return res.toArray(new String[res.size()]);
+	}
+    }
+
     public void setLines(String[] lines)
     {
 	NullCheck.notNullItems(lines, "lines");
@@ -0,0 +1,98 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.controls;
+
+import java.util.*;
+
+/**
+ * Finds the first string in a list beginning with the given prefix. The
+ * strings are sorted, so the strings with the prefix make a range found
+ * with binary search, and the least position in the range is taken from
+ * a segment tree.
+ */
+final class PrefixIndex
+{
+    private final String[] keys;
+    //The positions in the original list, the leaves in the second half
+    private final int[] tree;
+    private final int size;
+
+    //The null strings are never found
+    PrefixIndex(String[] strings)
+    {
+	int count = 0;
+	for(String s: strings)
+	    if (s != null)
+		++count;
+	final Integer[] order = new Integer[count];
+	int k = 0;
+	for(int i = 0;i < strings.length;++i)
+	    if (strings[i] != null)
+		order[k++] = i;
+	//The sorting is stable, the equal strings remain in their order
+	Arrays.sort(order, (a, b)->strings[a].compareTo(strings[b]));
+	this.size = count;
+	this.keys = new String[count];
+	this.tree = new int[2 * count];
+	for(int i = 0;i < count;++i)
+	{
+	    keys[i] = strings[order[i]];
+	    tree[count + i] = order[i];
+	}
+	for(int i = count - 1;i > 0;--i)
+	    tree[i] = Math.min(tree[2 * i], tree[2 * i + 1]);
+    }
+
+    //Returns -1 if there is no such string
+    int findFirst(String prefix)
+    {
+	int l = 0;
+	int r = size;
+	while(l < r)
+	{
+	    final int m = (l + r) >>> 1;
+	    if (keys[m].compareTo(prefix) < 0)
+		l = m + 1; else
+		r = m;
+	}
+	final int from = l;
+	r = size;
+	while(l < r)
+	{
+	    final int m = (l + r) >>> 1;
+	    if (keys[m].startsWith(prefix))
+		l = m + 1; else
+		r = m;
+	}
+	if (from >= l)
+	    return -1;
+	return min(from, l);
+    }
+
+    private int min(int from, int to)
+    {
+	int res = Integer.MAX_VALUE;
+	for(int l = from + size, r = to + size;l < r;l >>= 1, r >>= 1)
+	{
+	    if ((l & 1) == 1)
+		res = Math.min(res, tree[l++]);
+	    if ((r & 1) == 1)
+		res = Math.min(res, tree[--r]);
+	}
+	return res;
+    }
+}
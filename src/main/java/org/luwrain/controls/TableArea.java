@@ -295,25 +295,47 @@ int getColWidth(TableArea.Model model, int  colIndex);
 	    return index <= 0?environment.staticStr(LangStatic.TABLE_NO_CONTENT):"";
 	if (index < 0 || index >= model.getRowCount())
 	    return "";
+	return constructLine(index, getColUnderPos(hotPointX));
+    }
+
+    @Override public String[] getLines(int fromIndex, int count)
+    {
+	if (fromIndex < 0 || count < 0)
+	    throw new IllegalArgumentException("fromIndex (" + fromIndex + ") and count (" + count + ") may not be negative");
+	if (noProperContent())
+	{
+	    final String[] res = new String[Math.min(count, Math.max(2 - fromIndex, 0))];
+	    for(int i = 0;i < res.length;++i)
+		res[i] = fromIndex + i == 0?environment.staticStr(LangStatic.TABLE_NO_CONTENT):"";
+	    return res;
+	}
+	final int rowCount = model.getRowCount();
 	final int currentCol = getColUnderPos(hotPointX);
-	    String line = getStringOfLen(appearance.getRowPrefix(model, index), initialHotPointX, "", "");
+	final String[] res = new String[Math.min(count, Math.max(rowCount + 1 - fromIndex, 0))];
+	for(int i = 0;i < res.length;++i)
+	    res[i] = fromIndex + i < rowCount?constructLine(fromIndex + i, currentCol):"";
+	return res;
+    }
+
+    private String constructLine(int index, int currentCol)
+    {
+	final StringBuilder b = new StringBuilder();
+	b.append(getStringOfLen(appearance.getRowPrefix(model, index), initialHotPointX, "", ""));
 	if (index != hotPointY || currentCol < 0)
 	{
 	    for(int i = 0;i < model.getColCount();++i)
-		line += getStringOfLen(appearance.getCellText(model, i, index), colWidth[i], ">", " ");
-	    return line;
+		b.append(getStringOfLen(appearance.getCellText(model, i, index), colWidth[i], ">", " "));
+	    return new String(b);
 	}
-	if (currentCol > 0)
-	    for(int i = 0;i < currentCol;++i)
-		line += getStringOfLen(appearance.getCellText(model, i, index), colWidth[i], ">", " ");
-	    String currentColText = appearance.getCellText(model, currentCol, index);
-	    if (cellShift > 0 && cellShift < currentColText.length())
+	for(int i = 0;i < currentCol;++i)
+	    b.append(getStringOfLen(appearance.getCellText(model, i, index), colWidth[i], ">", " "));
+	String currentColText = appearance.getCellText(model, currentCol, index);
+	if (cellShift > 0 && cellShift < currentColText.length())
 	    currentColText = currentColText.substring(cellShift);
-		line += getStringOfLen(currentColText, colWidth[currentCol], ">", " ");
-		if (currentCol + 1 < colWidth.length)
-		    for(int i = currentCol + 1;i < colWidth.length;++i)
-			line += getStringOfLen(appearance.getCellText(model, i, index), colWidth[i], ">", " ");
-    return line;
+	b.append(getStringOfLen(currentColText, colWidth[currentCol], ">", " "));
+	for(int i = currentCol + 1;i < colWidth.length;++i)
+	    b.append(getStringOfLen(appearance.getCellText(model, i, index), colWidth[i], ">", " "));
+	return new String(b);
     }
 
     @Override public int getHotPointX()
@@ -26,7 +26,8 @@ public class TreeArea implements Area
     protected final Model model;
     protected String name = "";
     protected Node root = null;
-    protected VisibleItem[] items = null;
+    //The lines of the tree, null if there is no root
+    private IndexedList<VisibleItem> items = null;
     protected int hotPointX = 0;
     protected int hotPointY = 0;
     protected ClickHandler clickHandler = null;
@@ -42,7 +43,7 @@ public class TreeArea implements Area
 	name = params.name;
 	clickHandler = params.clickHandler;
 	root = constructNode(model.getRoot(), null, true);//true means children should be expanded
-	items = generateAllVisibleItems();
+	items = buildVisibleItems();
     }
 
     public ClickHandler getClickHandler()
@@ -72,16 +73,34 @@ public class TreeArea implements Area
 
     public int getLineCount()
     {
-	if (items == null || items.length < 1)
+	if (items == null || items.size() < 1)
 	    return 1;
-	return items.length + 1;
+	return items.size() + 1;
     }
 
     public String getLine(int index)
     {
-	if (items == null || items.length < 1 || index >= items.length)
+	if (items == null || index < 0 || index >= items.size())
 	    return "";
-	return constructLineForScreen(items[index]);
+	return constructLineForScreen(items.get(index));
+    }
+
+    @Override public String[] getLines(int fromIndex, int count)
+    {
+	if (fromIndex < 0 || count < 0)
+	    throw new IllegalArgumentException("fromIndex (" + fromIndex + ") and count (" + count + ") may not be negative");
+	final IndexedList<VisibleItem> visibleItems = items;
+	final int itemCount = visibleItems != null?visibleItems.size():0;
+	final int lineCount = itemCount < 1?1:itemCount + 1;
+	final String[] res = new String[Math.min(count, Math.max(lineCount - fromIndex, 0))];
+	for(int i = 0;i < res.length;++i)
+	{
+	    final int index = fromIndex + i;
+	    if (index >= itemCount)
+		res[i] = ""; else
+		res[i] = constructLineForScreen(visibleItems.get(index));
+	}
+	return res;
     }
 
     public int getHotPointX()
@@ -97,7 +116,7 @@ public class TreeArea implements Area
     public boolean onKeyboardEvent(KeyboardEvent event)
     {
 	NullCheck.notNull(event, "event");
-	if (items == null || items.length < 1)
+	if (items == null || items.size() < 1)
 	{
 	    environment.hint(Hints.NO_CONTENT);
 	    return true;
@@ -181,14 +200,14 @@ public class TreeArea implements Area
 	    refreshNode(root);
 	} else
 	    root = constructNode(model.getRoot(), null, true); //true means expand children;
-	items = generateAllVisibleItems();
+	items = buildVisibleItems();
 	environment.onAreaNewContent(this);
 	if (oldSelected == null)
 		selectFirstItem(); else
 	{
 	    if (!selectObject(oldSelected))
 	{
-	    if (items != null && oldHotPointY < items.length)
+	    if (items != null && oldHotPointY < items.size())
 		hotPointY = oldHotPointY; else 
 	    selectEmptyLastLine();
 	    environment.onAreaNewHotPoint(this);
@@ -198,20 +217,17 @@ public class TreeArea implements Area
 
     public Object selected()
     {
-	if (items == null || hotPointY < 0 || hotPointY >= items.length)
+	if (items == null || hotPointY < 0 || hotPointY >= items.size())
 	    return null;
-	return items[hotPointY].node.obj;
+	return items.get(hotPointY).node.obj;
     }
 
     public boolean selectObject(Object obj)
     {
-	if (items == null || items.length == 0)
+	if (items == null || items.size() == 0)
 	    return false;
-	int k;
-	for(k = 0;k < items.length;++k)
-	    if (items[k].node.obj.equals(obj))
-		break;
-	if (k >= items.length)
+	final int k = items.indexOf((item)->item.node.obj.equals(obj));
+	if (k < 0)
 	    return false;
 	hotPointY = k;
 	hotPointX = getInitialHotPointX(hotPointY);
@@ -221,9 +237,9 @@ public class TreeArea implements Area
 
     public void selectEmptyLastLine()
     {
-	if (items == null || items.length < 1)
+	if (items == null || items.size() < 1)
 	    hotPointY = 0; else
-	    hotPointY = items.length;
+	    hotPointY = items.size();
 	hotPointX = 0;
 	environment.onAreaNewHotPoint(this);
     }
@@ -349,9 +365,9 @@ public class TreeArea implements Area
     {
 	if (items == null)
 	    return false;
-	if (hotPointY >= items.length)
+	if (hotPointY >= items.size())
 	    return false;
-	final VisibleItem item = items[hotPointY];
+	final VisibleItem item = items.get(hotPointY);
 	if (item.node.obj != null)
 	    onClick(item.node.obj);
 	return true;
@@ -359,9 +375,9 @@ public class TreeArea implements Area
 
     protected boolean onKeyEnter(KeyboardEvent event)
     {
-	if (event.isModified() || items == null || hotPointY >= items.length)
+	if (event.isModified() || items == null || hotPointY >= items.size())
 	    return false;
-	final VisibleItem item = items[hotPointY];
+	final VisibleItem item = items.get(hotPointY);
 	if (item.type == VisibleItem.Type.LEAF)
 	{
 	    onClick(item.node.obj);
@@ -369,16 +385,14 @@ public class TreeArea implements Area
 	}
 	if (item.type == VisibleItem.Type.CLOSED)
 	{
-	    fillChildrenForNonLeaf(item.node);
-	    items = generateAllVisibleItems();
+	    expand(hotPointY);
 		environment.hint(Hints.TREE_BRANCH_EXPANDED);
 		environment.onAreaNewContent(this);
 		return true;
 	}
 	    if (item.type == VisibleItem.Type.OPENED)
 	    {
-		item.node.children = null;
-		items = generateAllVisibleItems();
+		collapse(hotPointY);
 		environment.hint(Hints.TREE_BRANCH_COLLAPSED);
 		environment.onAreaNewContent(this);
 		return true;
@@ -388,17 +402,16 @@ public class TreeArea implements Area
 
     protected boolean onExpand(KeyboardEvent event)
     {
-	if (event.isModified() || items == null || hotPointY >= items.length)
+	if (event.isModified() || items == null || hotPointY >= items.size())
 	    return false;
-	final VisibleItem item = items[hotPointY];
+	final VisibleItem item = items.get(hotPointY);
 	switch(item.type)
 	{
 	case LEAF:
 	case OPENED:
 	    return false;
 	case CLOSED:
-	    fillChildrenForNonLeaf(item.node);
-	    items = generateAllVisibleItems();
+	    expand(hotPointY);
 	    //		environment.hint(Hints.TREE_BRANCH_EXPANDED);
 	    environment.say("Раскрыто");
 		environment.onAreaNewContent(this);
@@ -410,17 +423,16 @@ public class TreeArea implements Area
 
     protected boolean onCollapse(KeyboardEvent event)
     {
-	if (event.isModified() || items == null || hotPointY >= items.length)
+	if (event.isModified() || items == null || hotPointY >= items.size())
 	    return false;
-	final VisibleItem item = items[hotPointY];
+	final VisibleItem item = items.get(hotPointY);
 	switch(item.type)
 	{
 	case LEAF:
 	case CLOSED:
 	    return false;
 	case OPENED:
-		item.node.children = null;
-		items = generateAllVisibleItems();
+		collapse(hotPointY);
 		//		environment.hint(Hints.TREE_BRANCH_COLLAPSED);
 		environment.say("Свёрнуто");
 		environment.onAreaNewContent(this);
@@ -434,20 +446,20 @@ public class TreeArea implements Area
     {
 	if (event.isModified() || items == null)
 	    return false;
-	if (hotPointY  >= items.length)
+	if (hotPointY  >= items.size())
 	{
 	    environment.hint(Hints.TREE_END);
 	    return true;
 	}
 	++hotPointY;
-	if (hotPointY >= items.length)
+	if (hotPointY >= items.size())
 	{
 	    hotPointX = 0;
 	    environment.hint(Hints.EMPTY_LINE);
 	} else
 	{
 	    hotPointX = getInitialHotPointX(hotPointY);
-announce(items[hotPointY], briefAnnouncement);
+announce(items.get(hotPointY), briefAnnouncement);
 	}
 	environment.onAreaNewHotPoint(this );
 	return true;
@@ -464,16 +476,16 @@ announce(items[hotPointY], briefAnnouncement);
 	}
 	--hotPointY;
 	hotPointX = getInitialHotPointX(hotPointY);
-announce(items[hotPointY], briefAnnouncement);
+announce(items.get(hotPointY), briefAnnouncement);
 	environment.onAreaNewHotPoint(this );
 	return true;
     }
 
     protected boolean onKeyRight(KeyboardEvent event)
     {
-	if (items == null || hotPointY >= items.length)
+	if (items == null || hotPointY >= items.size())
 	    return false;
-	final String value = items[hotPointY].title;
+	final String value = items.get(hotPointY).title;
 	final int offset = getInitialHotPointX(hotPointY);
 	if (value.isEmpty())
 	{
@@ -497,9 +509,9 @@ announce(items[hotPointY], briefAnnouncement);
 
     protected boolean onKeyLeft(KeyboardEvent event)
     {
-	if (items == null || hotPointY >= items.length)
+	if (items == null || hotPointY >= items.size())
 	    return false;
-	final String value = items[hotPointY].title;
+	final String value = items.get(hotPointY).title;
 	final int offset = getInitialHotPointX(hotPointY);
 	if (value.isEmpty())
 	{
@@ -519,46 +531,100 @@ announce(items[hotPointY], briefAnnouncement);
 	return true;
     }
 
-    protected VisibleItem[] generateVisibleItems(Node node, int level)
+    //Adds the lines of the node and all its opened descendants
+    protected void collectVisibleItems(Node node, int level, List<VisibleItem> dest)
     {
 	if (node == null)
-	    return null;
-	VisibleItem itself = new VisibleItem();
+	    return;
+	final VisibleItem itself = new VisibleItem();
 	itself.node = node;
 	itself.title = node.title();
 	itself.level = level;
 	if (node.leaf || node.children == null)
 	{
 	    itself.type = node.leaf?VisibleItem.Type.LEAF:VisibleItem.Type.CLOSED;
-	    VisibleItem res[] = new VisibleItem[1];
-	    res[0] = itself;
-	    return res;
+	    dest.add(itself);
+	    return;
 	}
 	itself.type = VisibleItem.Type.OPENED;
-	ArrayList<VisibleItem> items = new ArrayList<VisibleItem>();
-	items.add(itself);
-    	for(int i = 0;i < node.children.length;i++)
-	{
-	    VisibleItem c[] = generateVisibleItems(node.children[i], level + 1);
-	    if (c == null)
-		continue;
-	    for(VisibleItem v: c)
-		items.add(v);
-	}
-	VisibleItem res[] = new VisibleItem[items.size()];
-	int k = 0;
-	for(VisibleItem i: items)
-	    res[k++] = i;
+	dest.add(itself);
+	for(Node n: node.children)
+	    collectVisibleItems(n, level + 1, dest);
+    }
+
+    //The number of the lines of the node and all its opened descendants
+    protected int countVisibleItems(Node node)
+    {
+	if (node == null)
+	    return 0;
+	int res = 1;
+	if (!node.leaf && node.children != null)
+	    for(Node n: node.children)
+		res += countVisibleItems(n);
 	return res;
     }
 
-    protected VisibleItem[] generateAllVisibleItems()
+    protected VisibleItem[] generateVisibleItems(Node node, int level)
     {
-	if (root == null)
+	if (node == null)
 	    return null;
+	final ArrayList<VisibleItem> res = new ArrayList<VisibleItem>();
+	collectVisibleItems(node, level, res);
+	return res.toArray(new VisibleItem[res.size()]);
+    }
+
+    protected VisibleItem[] generateAllVisibleItems()
+    {
 	return generateVisibleItems(root, 0);
     }
 
+    //The number of the lines of the tree without the empty last line
+    protected int getVisibleItemCount()
+    {
+	return items != null?items.size():0;
+    }
+
+    //Returns null if there is no such line
+    protected VisibleItem getVisibleItem(int index)
+    {
+	if (items == null || index < 0 || index >= items.size())
+	    return null;
+	return items.get(index);
+    }
+
+    //Through generateAllVisibleItems(), so that the subclasses may still override it
+    private IndexedList<VisibleItem> buildVisibleItems()
+    {
+	final VisibleItem[] res = generateAllVisibleItems();
+	if (res == null)
+	    return null;
+	return new IndexedList<VisibleItem>(Arrays.asList(res));
+    }
+
+    //Only the lines of the node are replaced, the rest of the tree isn't touched
+    protected void expand(int index)
+    {
+	final VisibleItem item = items.get(index);
+	fillChildrenForNonLeaf(item.node);
+	replaceVisibleItems(index, 1);
+    }
+
+    protected void collapse(int index)
+    {
+	final VisibleItem item = items.get(index);
+	final int count = countVisibleItems(item.node);
+	item.node.children = null;
+	replaceVisibleItems(index, count);
+    }
+
+    //Puts the current lines of the node instead of the given number of lines
+    protected void replaceVisibleItems(int index, int oldCount)
+    {
+	final VisibleItem item = items.get(index);
+	final VisibleItem[] res = generateVisibleItems(item.node, item.level);
+	items.replace(index, oldCount, res != null?Arrays.asList(res):new ArrayList<VisibleItem>());
+    }
+
     protected boolean isLeaf(Object o)
     {
 	NullCheck.notNull(o, "o");
@@ -617,9 +683,9 @@ announce(items[hotPointY], briefAnnouncement);
 
 protected int getInitialHotPointX(int index)
     {
-	if (items == null ||  index >= items.length)
+	if (items == null || index < 0 || index >= items.size())
 	    return 0;
-	return (items[index].level * 2) + 2;
+	return (items.get(index).level * 2) + 2;
     }
 
     public interface ClickHandler
@@ -19,13 +19,20 @@ package org.luwrain.core;
 import org.luwrain.core.events.*;
 import org.luwrain.core.queries.*;
 import org.luwrain.speech.*;
+import org.luwrain.util.SentenceSegmenter;
 
 class AreaListening
 {
+    //Longer sentences are split, so that the speech starts without waiting too much
+    static private final int MAX_SEGMENT_LENGTH = 400;
+
     private final Luwrain luwrain;
     private final Speech speech;
     private final Area area;
     private Channel channel;
+    private ListeningPipeline pipeline = null;
+    //Where the pipeline takes the next segment from
+    private SentenceSegmenter segmenter = null;
 
     AreaListening(Luwrain luwrain, Speech speech, Area area)
     {
@@ -39,16 +46,42 @@ class AreaListening
 
     boolean start()
     {
-channel = speech.getReadingChannel();
-if (channel == null)
-    return false;
-Log.debug("core", "using the channel \'" + channel.getChannelName() + " for listening area of class " + area.getClass().getName());
-onFinish(null, null);
-	    return true;
+	channel = speech.getReadingChannel();
+	final Channel streamingChannel = speech.getStreamingChannel();
+	if (streamingChannel != null && !AreaQuery.ask(area, new BeginListeningQuery()))
+	{
+	    final ListeningPipeline.Listener listener = new ListeningPipeline.Listener(){
+		    @Override public void onSegmentPlayed(ListeningPipeline.Segment segment)
+		    {
+			AreaListening.this.onSegmentPlayed(segment);
+		    }
+		    @Override public void onFailed()
+		    {
+			onPipelineFailed();
+		    }
+		};
+	    pipeline = ListeningPipeline.create(luwrain, streamingChannel, ()->nextSegment(), listener, speech.newPcmOutput());
+	    if (pipeline != null)
+	    {
+		Log.debug("core", "using the channel \'" + streamingChannel.getChannelName() + "\' for continuous listening of area of class " + area.getClass().getName());
+		pipeline.start();
+		return true;
+	    }
+	}
+	if (channel == null)
+	    return false;
+	Log.debug("core", "using the channel \'" + channel.getChannelName() + " for listening area of class " + area.getClass().getName());
+	onFinish(null, null);
+	return true;
     }
 
     void cancel()
     {
+	if (pipeline != null)
+	{
+	    pipeline.cancel();
+	    pipeline = null;
+	}
 	if (channel == null)
 	    return;
 	channel.silence();
@@ -76,57 +109,48 @@ onFinish(null, null);
 		{
 		    luwrain.runInMainThread(()->onFinish(text, extraInfo));
 		}};
-	channel .speak(text, listener, 0, 0, false);
+	channel .speak(speech.normalize(text), listener, 0, 0, false);
     }
 
     private void startGeneral()
     {
-	final int fromPosX = area.getHotPointX(); 
-	final int fromPosY = area.getHotPointY();
-	final StringBuilder b = new StringBuilder();
-	final int count = area.getLineCount();
-	if (fromPosY >= count)
+	final SentenceSegmenter.Segment segment = createSegmenter().next();
+	if (segment != null)
+	    startNormal(segment.text, new PositionInfo(segment.toX, segment.toY));
+    }
+
+    //The text is taken ahead of the hot point, which is moved only after the speaking
+    private ListeningPipeline.Segment nextSegment()
+    {
+	if (segmenter == null)
+	    segmenter = createSegmenter();
+	final SentenceSegmenter.Segment segment = segmenter.next();
+	if (segment == null)
+	    return null;
+	return new ListeningPipeline.Segment(speech.normalize(segment.text), new PositionInfo(segment.toX, segment.toY));
+    }
+
+    private void onSegmentPlayed(ListeningPipeline.Segment segment)
+    {
+	final PositionInfo pos = (PositionInfo)segment.extraInfo;
+	area.onEnvironmentEvent(new MoveHotPointEvent(pos.x, pos.y, false));
+    }
+
+    //Continues from the current hot point speaking by the channel
+    private void onPipelineFailed()
+    {
+	if (pipeline == null)
 	    return;
-	int index = fromPosY;
-	String line = area.getLine(index);
-	if (line == null)
-	    line = "";
-	if (fromPosX < line.length())
-	    line = line.substring(fromPosX); else
-	    line = "";
-	int pos = 0;
-	while(true)
-	{
-	while (pos < line.length() && 
-	       line.charAt(pos) != '.' && line.charAt(pos) != '!' && line.charAt(pos) != '?')
-	    ++pos;
-	if (pos >= line.length())
-	{
-	    b.append(line + " ");
-	    pos = 0;
-	    ++index;
-	    if (index >= count)
-		break;
-	    line = area.getLine(index);
-	    if (line == null)
-		line = "";
-	    continue;
-	}
-	b.append(line.substring(0, pos + 1));
-	break;
-	} //while(true)
-	int nextPosX = pos + 1;
-	int nextPosY = index;
-	if (nextPosX >= line.length())
-	{
-	    nextPosX = 0;
-	    //We may be careless that nextPosY is greater than number of lines, a corresponding check will be performed on next step
-	    ++nextPosY;
-	}
-	//If it is still a first line, we must restore a shift for the text prior to fromPosX
-	if (nextPosY == fromPosY)
-	    nextPosX += fromPosX;
-	startNormal(new String(b), new PositionInfo(nextPosX, nextPosY));
+	pipeline = null;
+	segmenter = null;
+	if (channel != null)
+	    onFinish(null, null);
+    }
+
+    private SentenceSegmenter createSegmenter()
+    {
+	return new SentenceSegmenter(area, luwrain.i18n().getLocale(), MAX_SEGMENT_LENGTH,
+				     Math.max(area.getHotPointX(), 0), Math.max(area.getHotPointY(), 0));
     }
 
 static private class PositionInfo
@@ -0,0 +1,355 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.core;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.charset.StandardCharsets;
+import javax.sound.sampled.AudioFormat;
+
+import org.luwrain.speech.*;
+import org.luwrain.util.SentenceSegmenter;
+import org.luwrain.controls.MutableLinesImpl;
+import org.luwrain.app.audioexport.Task;
+
+/**
+ * Renders texts to WAV files. The text is split into sentences, which
+ * are synthesized at the same time by several instances of the streaming
+ * channel, one thread per instance. The audio is written to the file
+ * strictly in the order of the text, the segments synthesized ahead wait
+ * for the previous ones, but not more than a few per thread.
+ */
+class AudioExport implements Task
+{
+    static private final int MAX_SEGMENT_LENGTH = 400;
+    //How many segments each thread may synthesize beyond the one being written
+    static private final int SEGMENTS_AHEAD = 4;
+    //In percents
+    static private final int PROGRESS_STEP = 10;
+
+    static final class Job
+    {
+	final String name;
+	//Null if the text must be read from the source file
+	final Lines text;
+	final Path source;
+	final Path dest;
+
+	Job(String name, Lines text, Path dest)
+	{
+	    NullCheck.notNull(name, "name");
+	    NullCheck.notNull(text, "text");
+	    NullCheck.notNull(dest, "dest");
+	    this.name = name;
+	    this.text = text;
+	    this.source = null;
+	    this.dest = dest;
+	}
+
+	Job(Path source, Path dest)
+	{
+	    NullCheck.notNull(source, "source");
+	    NullCheck.notNull(dest, "dest");
+	    this.name = source.getFileName().toString();
+	    this.text = null;
+	    this.source = source;
+	    this.dest = dest;
+	}
+    }
+
+    private final Speech speech;
+    private final Locale locale;
+    private final Job[] jobs;
+    private volatile boolean cancelled = false;
+
+    AudioExport(Speech speech, Locale locale, Job[] jobs)
+    {
+	NullCheck.notNull(speech, "speech");
+	NullCheck.notNull(locale, "locale");
+	NullCheck.notNullItems(jobs, "jobs");
+	this.speech = speech;
+	this.locale = locale;
+	this.jobs = jobs;
+    }
+
+    @Override public boolean run(Listener listener)
+    {
+	NullCheck.notNull(listener, "listener");
+	final Channel[] channels = speech.newExportChannels(Runtime.getRuntime().availableProcessors());
+	try {
+	    final Channel[] usable = chooseChannels(channels);
+	    if (usable.length == 0)
+	    {
+		for(Job job: jobs)
+		    listener.onFailed(job.name, "no speech channel able to synthesize to files");
+		return true;
+	    }
+	    final AudioFormat format = usable[0].getSynthSupportedFormats()[0];
+	    Log.debug("core", "exporting to audio files with " + usable.length + " channel(s) in the format " + format.toString());
+	    final BlockingQueue<Channel> free = new LinkedBlockingQueue<Channel>(Arrays.asList(usable));
+	    final ExecutorService executor = Executors.newFixedThreadPool(usable.length, (r)->{
+		    final Thread t = new Thread(r, "audio-export-synth");
+		    t.setDaemon(true);
+		    return t;
+		});
+	    try {
+		for(Job job: jobs)
+		{
+		    if (cancelled)
+			return false;
+		    try {
+			if (!exportJob(job, format, free, executor, usable.length * SEGMENTS_AHEAD, listener))
+			{
+			    Files.deleteIfExists(job.dest);
+			    return false;
+			}
+			listener.onDone(job.name, job.dest.toString());
+		    }
+		    catch(IOException e)
+		    {
+			Log.error("core", "unable to export " + job.name + " to " + job.dest.toString() + ":" + e.getClass().getName() + ":" + e.getMessage());
+			//Leaving no truncated file behind
+			try {
+			    Files.deleteIfExists(job.dest);
+			}
+			catch(IOException ee)
+			{
+			    Log.warning("core", "unable to delete " + job.dest.toString() + ":" + ee.getClass().getName() + ":" + ee.getMessage());
+			}
+			listener.onFailed(job.name, e.getMessage());
+		    }
+		}
+		return !cancelled;
+	    }
+	    finally {
+		executor.shutdownNow();
+	    }
+	}
+	finally {
+	    speech.releaseExportChannels(channels);
+	}
+    }
+
+    @Override public void cancel()
+    {
+	cancelled = true;
+    }
+
+    //Returns false if cancelled
+    private boolean exportJob(Job job, AudioFormat format, BlockingQueue<Channel> free,
+			      ExecutorService executor, int window, Listener listener) throws IOException
+    {
+	final ArrayList<String> segments = split(job);
+	try (final WavOutput output = new WavOutput(job.dest, format)) {
+	    final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+	    int next = 0;
+	    int written = 0;
+	    int reported = 0;
+	    try {
+		while(written < segments.size())
+		{
+		    if (cancelled)
+			return false;
+		    while(next < segments.size() && pending.size() < window)
+		    {
+			final String text = segments.get(next++);
+			pending.add(executor.submit(()->synth(text, format, free)));
+		    }
+		    output.write(pending.removeFirst().get());
+		    ++written;
+		    final int percent = (written * 100) / segments.size();
+		    if (percent >= reported + PROGRESS_STEP && written < segments.size())
+		    {
+			reported = percent - percent % PROGRESS_STEP;
+			listener.onProgress(job.name, reported);
+		    }
+		}
+	    }
+	    catch(InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+		return false;
+	    }
+	    catch(ExecutionException e)
+	    {
+		final Throwable cause = e.getCause();
+		if (cause instanceof IOException)
+		    throw (IOException)cause;
+		throw new IOException(cause.getClass().getName() + ":" + cause.getMessage(), cause);
+	    }
+	    finally {
+		for(Future<byte[]> f: pending)
+		    f.cancel(true);
+	    }
+	}
+	return true;
+    }
+
+    //Runs in the threads of the executor, every channel is used only by one thread at once
+    private byte[] synth(String text, AudioFormat format, BlockingQueue<Channel> free) throws IOException, InterruptedException
+    {
+	final Channel channel = free.take();
+	try {
+	    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	    if (!channel.synth(text, channel.getDefaultPitch(), channel.getDefaultRate(), format, stream))
+		throw new IOException("the channel \'" + channel.getChannelName() + "\' is unable to synthesize the text");
+	    return stream.toByteArray();
+	}
+	finally {
+	    free.add(channel);
+	}
+    }
+
+    private ArrayList<String> split(Job job) throws IOException
+    {
+	final Lines text;
+	if (job.text != null)
+	    text = job.text; else
+	{
+	    final List<String> lines = Files.readAllLines(job.source, StandardCharsets.UTF_8);
+	    text = new MutableLinesImpl(lines.toArray(new String[lines.size()]));
+	}
+	final ArrayList<String> res = new ArrayList<String>();
+	final SentenceSegmenter segmenter = new SentenceSegmenter(text, locale, MAX_SEGMENT_LENGTH, 0, 0);
+	SentenceSegmenter.Segment segment;
+	while((segment = segmenter.next()) != null)
+	{
+	    final String s = speech.normalize(segment.text);
+	    if (!s.trim().isEmpty())
+		res.add(s);
+	}
+	return res;
+    }
+
+    //All channels must give the audio in the same format
+    static private Channel[] chooseChannels(Channel[] channels)
+    {
+	if (channels.length == 0)
+	    return new Channel[0];
+	final AudioFormat[] formats = channels[0].getSynthSupportedFormats();
+	if (formats == null || formats.length == 0 || formats[0] == null || !WavOutput.isSupported(formats[0]))
+	    return new Channel[0];
+	final LinkedList<Channel> res = new LinkedList<Channel>();
+	for(Channel c: channels)
+	{
+	    final AudioFormat[] f = c.getSynthSupportedFormats();
+	    if (f != null && f.length > 0 && f[0] != null && f[0].matches(formats[0]))
+		res.add(c);
+	}
+	return res.toArray(new Channel[res.size()]);
+    }
+
+    /**
+     * Writes PCM data to a WAV file. The header is written first with zero
+     * sizes and updated on closing, so the data isn't kept in memory. The
+     * samples are converted to the byte order and the signedness WAV files
+     * require.
+     */
+    static final class WavOutput implements Closeable
+    {
+	static private final int HEADER_SIZE = 44;
+
+	private final RandomAccessFile file;
+	private final AudioFormat format;
+	private final int sampleSize;
+	private long dataSize = 0;
+
+	WavOutput(Path path, AudioFormat format) throws IOException
+	{
+	    NullCheck.notNull(path, "path");
+	    NullCheck.notNull(format, "format");
+	    if (!isSupported(format))
+		throw new IOException("unsupported audio format for WAV files: " + format.toString());
+	    this.format = format;
+	    this.sampleSize = format.getSampleSizeInBits() / 8;
+	    this.file = new RandomAccessFile(path.toFile(), "rw");
+	    file.setLength(0);
+	    file.write(header());
+	}
+
+	static boolean isSupported(AudioFormat format)
+	{
+	    final AudioFormat.Encoding encoding = format.getEncoding();
+	    if (!encoding.equals(AudioFormat.Encoding.PCM_SIGNED) && !encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED))
+		return false;
+	    final int bits = format.getSampleSizeInBits();
+	    return bits > 0 && bits % 8 == 0 && format.getChannels() > 0 &&
+	    format.getFrameSize() == format.getChannels() * bits / 8;
+	}
+
+	void write(byte[] data) throws IOException
+	{
+	    NullCheck.notNull(data, "data");
+	    final int len = data.length - data.length % format.getFrameSize();
+	    final boolean signed = format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED);
+	    //8-bit WAV data is unsigned, the wider samples are signed little-endian
+	    final boolean flipSign = sampleSize == 1?signed:!signed;
+	    final boolean swap = sampleSize > 1 && format.isBigEndian();
+	    if (flipSign || swap)
+		for(int i = 0;i < len;i += sampleSize)
+		{
+		    if (swap)
+			for(int k = 0;k < sampleSize / 2;++k)
+			{
+			    final byte b = data[i + k];
+			    data[i + k] = data[i + sampleSize - 1 - k];
+			    data[i + sampleSize - 1 - k] = b;
+			}
+		    //The most significant byte is the last one now
+		    if (flipSign)
+			data[i + sampleSize - 1] ^= 0x80;
+		}
+	    file.write(data, 0, len);
+	    dataSize += len;
+	}
+
+	@Override public void close() throws IOException
+	{
+	    try {
+		file.seek(0);
+		file.write(header());
+	    }
+	    finally {
+		file.close();
+	    }
+	}
+
+	private byte[] header()
+	{
+	    final int channels = format.getChannels();
+	    final int sampleRate = (int)format.getSampleRate();
+	    final java.nio.ByteBuffer b = java.nio.ByteBuffer.allocate(HEADER_SIZE).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+	    b.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+	    b.putInt((int)(HEADER_SIZE - 8 + dataSize));
+	    b.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+	    b.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+	    b.putInt(16);
+	    //PCM
+	    b.putShort((short)1);
+	    b.putShort((short)channels);
+	    b.putInt(sampleRate);
+	    b.putInt(sampleRate * channels * sampleSize);
+	    b.putShort((short)(channels * sampleSize));
+	    b.putShort((short)(sampleSize * 8));
+	    b.put("data".getBytes(StandardCharsets.US_ASCII));
+	    b.putInt((int)dataSize);
+	    return b.array();
+	}
+    }
+}
@@ -0,0 +1,442 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.core;
+
+import java.util.*;
+import javax.sound.sampled.*;
+
+/**
+ * Mixes all the audio of the core into one output line. The sounds, the
+ * background loops and the synthesized speech are the voices of the
+ * mixer, each one with its own gain. The voices are mixed by short
+ * periods on a single thread, which writes them to the line kept open
+ * all the time. The audio is converted to the format of the mixer when
+ * the voice is created or when the data is written to the stream, never
+ * during the mixing. The line is opened with the first voice, if that
+ * fails no voices are created at all. The under-runs of the line while
+ * anything is playing are counted.
+ */
+class AudioMixer implements Runnable
+{
+    static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    static private final int CHANNELS = 2;
+    //10 ms
+    static private final int PERIOD_FRAMES = 441;
+    static private final int LINE_BUFFER_PERIODS = 4;
+    //How much audio a stream may have queued before its writer waits
+    static private final int MAX_STREAM_FRAMES = 44100;
+
+    /**
+     * The audio source of the mixer. The buffered voices play the samples
+     * given on the creation, the streams play the data written to them
+     * until the end is marked.
+     */
+    final class Voice
+    {
+	private final LinkedList<short[]> chunks = new LinkedList<short[]>();
+	private final boolean loop;
+	private final Runnable onFinished;
+	private final Converter converter;
+	private volatile float gain;
+	//The index of the current chunk, used only for loops which keep all chunks
+	private int chunkIndex = 0;
+	private int pos = 0;
+	private int queuedFrames = 0;
+	private boolean ended;
+	private boolean stopped = false;
+	//Whether the stream has played something and has no data now
+	private boolean started = false;
+	private boolean starving = false;
+
+	private Voice(short[] samples, float gain, boolean loop, Runnable onFinished)
+	{
+	    if (samples.length > 0)
+		chunks.add(samples);
+	    this.gain = gain;
+	    this.loop = loop && samples.length > 0;
+	    this.onFinished = onFinished;
+	    this.converter = null;
+	    this.ended = true;
+	}
+
+	private Voice(AudioFormat format, float gain)
+	{
+	    this.gain = gain;
+	    this.loop = false;
+	    this.onFinished = null;
+	    this.converter = new Converter(format);
+	    this.ended = false;
+	}
+
+	void setGain(float gain)
+	{
+	    this.gain = gain;
+	}
+
+	//Removes the voice from the mixer without calling onFinished
+	void stop()
+	{
+	    synchronized(AudioMixer.this) {
+		stopped = true;
+		voices.remove(this);
+		AudioMixer.this.notifyAll();
+	    }
+	}
+
+	boolean isFinished()
+	{
+	    synchronized(AudioMixer.this) {
+		return stopped || !voices.contains(this);
+	    }
+	}
+
+	/**
+	 * Adds the data to the stream, waiting while too much is queued.
+	 * Returns false if the voice is stopped.
+	 */
+	boolean write(byte[] data, int offset, int length) throws InterruptedException
+	{
+	    NullCheck.notNull(data, "data");
+	    if (converter == null)
+		throw new IllegalStateException("only streams accept the data");
+	    final short[] samples = converter.convert(data, offset, length);
+	    synchronized(AudioMixer.this) {
+		while(!stopped && queuedFrames > MAX_STREAM_FRAMES)
+		    AudioMixer.this.wait();
+		if (stopped)
+		    return false;
+		if (samples.length > 0)
+		{
+		    chunks.add(samples);
+		    queuedFrames += samples.length / CHANNELS;
+		}
+		AudioMixer.this.notifyAll();
+		return true;
+	    }
+	}
+
+	//The voice is finished once the queued data is played
+	void end()
+	{
+	    synchronized(AudioMixer.this) {
+		ended = true;
+		AudioMixer.this.notifyAll();
+	    }
+	}
+
+	//Must be called with the lock held, returns false if the voice is finished
+	private boolean mix(int[] acc, int frames)
+	{
+	    final float g = gain;
+	    int index = 0;
+	    while(index < frames * CHANNELS)
+	    {
+		if (chunks.isEmpty() || (loop && chunkIndex >= chunks.size()))
+		{
+		    if (!ended)
+		    {
+			if (started && !starving)
+			    ++starvations;
+			starving = true;
+			return true;
+		    }
+		    return false;
+		}
+		started = true;
+		starving = false;
+		final short[] chunk = loop?chunks.get(chunkIndex):chunks.getFirst();
+		final int len = Math.min(chunk.length - pos, frames * CHANNELS - index);
+		if (g == 1.0f)
+		    for(int i = 0;i < len;++i)
+			acc[index + i] += chunk[pos + i]; else
+		    for(int i = 0;i < len;++i)
+			acc[index + i] += (int)(chunk[pos + i] * g);
+		index += len;
+		pos += len;
+		if (pos >= chunk.length)
+		{
+		    pos = 0;
+		    if (loop)
+			chunkIndex = (chunkIndex + 1) % chunks.size(); else
+		    {
+			chunks.removeFirst();
+			queuedFrames -= chunk.length / CHANNELS;
+		    }
+		}
+	    }
+	    return true;
+	}
+    }
+
+    private final ArrayList<Voice> voices = new ArrayList<Voice>();
+    private Thread thread = null;
+    private SourceDataLine line = null;
+    private boolean lineFailed = false;
+    private long underruns = 0;
+    private long starvations = 0;
+
+    /**
+     * Starts playing the samples in the format of the mixer. onFinished
+     * isn't called if the voice is stopped. Returns null if the audio line
+     * can't be opened.
+     */
+    Voice play(short[] samples, float gain, boolean loop, Runnable onFinished)
+    {
+	NullCheck.notNull(samples, "samples");
+	final Voice voice = new Voice(samples, gain, loop, onFinished);
+	return add(voice)?voice:null;
+    }
+
+    //Returns null if the audio line can't be opened
+    Voice play(byte[] data, AudioFormat format, float gain, Runnable onFinished)
+    {
+	NullCheck.notNull(data, "data");
+	NullCheck.notNull(format, "format");
+	return play(convert(data, format), gain, false, onFinished);
+    }
+
+    //Returns null if the audio line can't be opened
+    Voice openStream(AudioFormat format, float gain)
+    {
+	NullCheck.notNull(format, "format");
+	final Voice voice = new Voice(format, gain);
+	return add(voice)?voice:null;
+    }
+
+    //The line was empty while something had to be played
+    synchronized long getUnderrunCount()
+    {
+	return underruns;
+    }
+
+    //The streams had no data in time
+    synchronized long getStarvationCount()
+    {
+	return starvations;
+    }
+
+    static short[] convert(byte[] data, AudioFormat format)
+    {
+	NullCheck.notNull(data, "data");
+	NullCheck.notNull(format, "format");
+	return new Converter(format).convert(data, 0, data.length);
+    }
+
+    //The line is opened here, so that the failure is known to the caller
+    private synchronized boolean add(Voice voice)
+    {
+	if (prepareLine() == null)
+	    return false;
+	voices.add(voice);
+	if (thread == null)
+	{
+	    thread = new Thread(this, "audio-mixer");
+	    thread.setDaemon(true);
+	    thread.start();
+	}
+	notifyAll();
+	return true;
+    }
+
+    @Override public void run()
+    {
+	final int[] acc = new int[PERIOD_FRAMES * CHANNELS];
+	final byte[] buf = new byte[PERIOD_FRAMES * FORMAT.getFrameSize()];
+	final ArrayList<Voice> finished = new ArrayList<Voice>();
+	boolean playing = false;
+	while(true)
+	{
+	    final SourceDataLine l;
+	    final boolean idle;
+	    synchronized(this) {
+		try {
+		    while(voices.isEmpty() && !playing)
+			wait();
+		}
+		catch(InterruptedException e)
+		{
+		    Thread.currentThread().interrupt();
+		    return;
+		}
+		idle = voices.isEmpty();
+	    }
+	    if (idle)
+	    {
+		//Not under the lock, the voices may come while draining
+		playing = false;
+		line.drain();
+		synchronized(this) {
+		    if (voices.isEmpty())
+			line.stop();
+		}
+		continue;
+	    }
+	    synchronized(this) {
+		//Opened on adding the first voice
+		l = line;
+		Arrays.fill(acc, 0);
+		for(Voice v: voices)
+		    if (!v.mix(acc, PERIOD_FRAMES))
+			finished.add(v);
+		voices.removeAll(finished);
+		//The writers of the streams wait for the queued data to be played
+		notifyAll();
+		if (playing && l.available() >= l.getBufferSize())
+		    ++underruns;
+	    }
+	    for(int i = 0;i < acc.length;++i)
+	    {
+		final int value = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, acc[i]));
+		buf[2 * i] = (byte)value;
+		buf[2 * i + 1] = (byte)(value >> 8);
+	    }
+	    if (!l.isRunning())
+		l.start();
+	    l.write(buf, 0, buf.length);
+	    playing = true;
+	    for(Voice v: finished)
+		if (v.onFinished != null)
+		    v.onFinished.run();
+	    finished.clear();
+	}
+    }
+
+    //Must be called with the lock held
+    private SourceDataLine prepareLine()
+    {
+	if (line != null)
+	    return line;
+	if (lineFailed)
+	    return null;
+	try {
+	    final SourceDataLine l = AudioSystem.getSourceDataLine(FORMAT);
+	    l.open(FORMAT, PERIOD_FRAMES * FORMAT.getFrameSize() * LINE_BUFFER_PERIODS);
+	    line = l;
+	    return line;
+	}
+	catch(LineUnavailableException | IllegalArgumentException | SecurityException e)
+	{
+	    Log.error("core", "unable to open the audio line for mixing:" + e.getClass().getName() + ":" + e.getMessage());
+	    //Not trying again on every sound
+	    lineFailed = true;
+	    return null;
+	}
+    }
+
+    /**
+     * Converts PCM data of any sample size, byte order and sample rate to
+     * the format of the mixer. The sample rate is changed with linear
+     * interpolation, the state of which is kept between the calls, so the
+     * data may come by parts.
+     */
+    static private final class Converter
+    {
+	private final AudioFormat format;
+	private final int bytesPerSample;
+	private final int frameSize;
+	private final boolean signed;
+	private final double step;
+	//The incomplete frame from the previous part
+	private byte[] rest = new byte[0];
+	private boolean hasPrev = false;
+	private int prevLeft = 0;
+	private int prevRight = 0;
+	//The position of the next output frame, the previous frame is at zero
+	private double t = 0;
+
+	Converter(AudioFormat format)
+	{
+	    final AudioFormat.Encoding encoding = format.getEncoding();
+	    if (!encoding.equals(AudioFormat.Encoding.PCM_SIGNED) && !encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED))
+		throw new IllegalArgumentException("only PCM data may be mixed, not " + encoding.toString());
+	    if (format.getSampleSizeInBits() % 8 != 0 || format.getSampleSizeInBits() > 32 || format.getChannels() < 1)
+		throw new IllegalArgumentException("unsupported audio format: " + format.toString());
+	    this.format = format;
+	    this.bytesPerSample = format.getSampleSizeInBits() / 8;
+	    this.frameSize = bytesPerSample * format.getChannels();
+	    this.signed = encoding.equals(AudioFormat.Encoding.PCM_SIGNED);
+	    this.step = format.getSampleRate() / FORMAT.getSampleRate();
+	}
+
+	short[] convert(byte[] data, int offset, int length)
+	{
+	    byte[] d = data;
+	    int off = offset;
+	    int len = length;
+	    if (rest.length > 0)
+	    {
+		d = new byte[rest.length + length];
+		System.arraycopy(rest, 0, d, 0, rest.length);
+		System.arraycopy(data, offset, d, rest.length, length);
+		off = 0;
+		len = d.length;
+	    }
+	    final int count = len / frameSize;
+	    rest = Arrays.copyOfRange(d, off + count * frameSize, off + len);
+	    if (count == 0)
+		return new short[0];
+	    //The frames with the previous one at the beginning
+	    final int first = hasPrev?1:0;
+	    final int[] left = new int[count + first];
+	    final int[] right = new int[count + first];
+	    if (hasPrev)
+	    {
+		left[0] = prevLeft;
+		right[0] = prevRight;
+	    }
+	    for(int i = 0;i < count;++i)
+	    {
+		final int pos = off + i * frameSize;
+		left[i + first] = sample(d, pos);
+		right[i + first] = format.getChannels() > 1?sample(d, pos + bytesPerSample):left[i + first];
+	    }
+	    hasPrev = true;
+	    final int last = left.length - 1;
+	    prevLeft = left[last];
+	    prevRight = right[last];
+	    final short[] res = new short[((int)Math.ceil((last - t) / step) + 1) * CHANNELS];
+	    int n = 0;
+	    while(t < last && n < res.length)
+	    {
+		final int i = (int)t;
+		final double frac = t - i;
+		res[n++] = (short)(left[i] + (left[i + 1] - left[i]) * frac);
+		res[n++] = (short)(right[i] + (right[i + 1] - right[i]) * frac);
+		t += step;
+	    }
+	    t -= last;
+	    return n == res.length?res:Arrays.copyOf(res, n);
+	}
+
+	//Returns the 16-bit value
+	private int sample(byte[] d, int pos)
+	{
+	    int value = 0;
+	    if (format.isBigEndian())
+		for(int k = 0;k < bytesPerSample;++k)
+		    value = (value << 8) | (d[pos + k] & 0xff); else
+		for(int k = bytesPerSample - 1;k >= 0;--k)
+		    value = (value << 8) | (d[pos + k] & 0xff);
+	    final int bits = bytesPerSample * 8;
+	    if (signed)
+		//Extending the sign
+		value = (value << (32 - bits)) >> (32 - bits); else
+		value -= 1 << (bits - 1);
+	    return bits > 16?value >> (bits - 16):value << (16 - bits);
+	}
+    }
+}
@@ -18,6 +18,8 @@ package org.luwrain.core;
 
 import java.util.*;
 
+import org.luwrain.registry.DirectorySnapshot;
+
 class CommandManager
 {
     class Entry 
@@ -89,12 +91,16 @@ class CommandManager
 	NullCheck.notNull(luwrain, "luwrain");
 	NullCheck.notNull(registry, "registry");
 	registry.addDirectory(Settings.OS_COMMANDS_PATH);
-	for(String s: registry.getDirectories(Settings.OS_COMMANDS_PATH))
+	final DirectorySnapshot snapshot = DirectorySnapshot.read(registry, Settings.OS_COMMANDS_PATH, true);
+	if (snapshot == null)
+	    return;
+	final Registry commandsRegistry = snapshot.asRegistry();
+	for(String s: snapshot.getSubdirNames())
 	{
 	    if (s.trim().isEmpty())
 		continue;
 	    final OsCommands.OsCommand cmd = new OsCommands.OsCommand();
-	    if (cmd.init(Settings.createOsCommand(registry, Registry.join(Settings.OS_COMMANDS_PATH, s))))
+	    if (cmd.init(Settings.createOsCommand(commandsRegistry, Registry.join(Settings.OS_COMMANDS_PATH, s))))
 	    add(luwrain, cmd);
 	}
     }
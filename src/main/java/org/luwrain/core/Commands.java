@@ -657,6 +657,79 @@ class Commands
 		}
 	    },
 
+	    //export-area-to-audio
+	    new Command() {
+		@Override public String getName()
+		{
+		    return "export-area-to-audio";
+		}
+		@Override public void onCommand(Luwrain luwrain)
+		{
+		    final Area area = env.getValidActiveArea(true);
+		    if (area == null)
+			return;
+		    //The area may change while exporting, so its text is taken now
+		    final String[] lines = area.getLines(0, area.getLineCount());
+		    if (lines.length == 0)
+		    {
+			env.eventNotProcessedMessage();
+			return;
+		    }
+		    Path dest = Popups.path(env.getObjForEnvironment(), luwrain.i18n().getStaticStr("AudioExportPopupName"), luwrain.i18n().getStaticStr("AudioExportPopupPrefix"), Paths.get(luwrain.currentAreaDir()));
+		    if (dest == null)
+			return;
+		    final String name = area.getAreaName();
+		    if (Files.isDirectory(dest))
+			dest = dest.resolve(name.replaceAll("[/\\\\:*?\"<>|]", "_") + ".wav");
+		    final AudioExport.Job job = new AudioExport.Job(name, new org.luwrain.controls.MutableLinesImpl(lines), dest);
+		    env.launchApp(new org.luwrain.app.audioexport.AudioExportApp(new AudioExport(env.getSpeech(), luwrain.i18n().getLocale(), new AudioExport.Job[]{job})));
+		}
+	    },
+
+	    //export-files-to-audio
+	    new Command() {
+		@Override public String getName()
+		{
+		    return "export-files-to-audio";
+		}
+		@Override public void onCommand(Luwrain luwrain)
+		{
+		    final Path source = Popups.path(env.getObjForEnvironment(), luwrain.i18n().getStaticStr("AudioExportFilesPopupName"), luwrain.i18n().getStaticStr("AudioExportFilesPopupPrefix"), Paths.get(luwrain.currentAreaDir()));
+		    if (source == null)
+			return;
+		    //All files of the directory are taken, each one goes to the WAV file next to it
+		    final LinkedList<Path> files = new LinkedList<Path>();
+		    if (Files.isDirectory(source))
+		    {
+			try (final DirectoryStream<Path> stream = Files.newDirectoryStream(source)) {
+			    for(Path p: stream)
+				if (Files.isRegularFile(p) && !p.getFileName().toString().toLowerCase().endsWith(".wav"))
+				    files.add(p);
+			}
+			catch(java.io.IOException e)
+			{
+			    env.message(luwrain.i18n().getExceptionDescr(e), Luwrain.MESSAGE_ERROR);
+			    return;
+			}
+			Collections.sort(files);
+		    } else
+			files.add(source);
+		    if (files.isEmpty())
+		    {
+			env.eventNotProcessedMessage();
+			return;
+		    }
+		    final LinkedList<AudioExport.Job> jobs = new LinkedList<AudioExport.Job>();
+		    for(Path p: files)
+		    {
+			final String fileName = p.getFileName().toString();
+			final int dot = fileName.lastIndexOf('.');
+			jobs.add(new AudioExport.Job(p, p.resolveSibling((dot > 0?fileName.substring(0, dot):fileName) + ".wav")));
+		    }
+		    env.launchApp(new org.luwrain.app.audioexport.AudioExportApp(new AudioExport(env.getSpeech(), luwrain.i18n().getLocale(), jobs.toArray(new AudioExport.Job[jobs.size()]))));
+		}
+	    },
+
 	    //run
 	    new Command() {
 		@Override public String getName()
@@ -91,7 +91,7 @@ class Environment extends EnvironmentAreas
 
     private void init()
     {
-	speech = new Speech(cmdLine, registry);
+	speech = new Speech(cmdLine, registry, mixer);
 	desktop.onLaunch(interfaces.requestNew(desktop, this));
 	apps = new AppManager(desktop);
 	screenContentManager = new ScreenContentManager(apps);
@@ -100,8 +100,10 @@ class Environment extends EnvironmentAreas
 	extensions.load((ext)->interfaces.requestNew(ext, this), cmdLine);
 	initI18n();
 	initObjects();
-	if (!speech.init())
+	if (!speech.init(i18n))
 	    Log.warning("core", "unable to initialize speech core, very likely LUWRAIN will be silent");
+	if (coreProps.getProperty("luwrain.speech.cache.warmup").equals("1"))
+	    warmUpSpeechCache();
 	braille.init(registry, os.getBraille(), this);
 	globalKeys = new GlobalKeys(registry);
 	globalKeys.loadFromRegistry();
@@ -111,6 +113,18 @@ class Environment extends EnvironmentAreas
 	uiSettings = Settings.createUserInterface(registry);
     }
 
+    private void warmUpSpeechCache()
+    {
+	final List<String> hints = new LinkedList<String>();
+	for(int i = Hints.SPACE;i <= Hints.TABLE_END_OF_ROW;++i)
+	{
+	    final LangStatic id = Hints.hintToStaticStrMap(i);
+	    if (id != null)
+		hints.add(i18n.staticStr(id));
+	}
+	speech.warmUpCache(hints.toArray(new String[hints.size()]));
+    }
+
     private void initObjects()
     {
 	final Command[] standardCommands = Commands.createStandardCommands(this);
@@ -646,7 +660,7 @@ onNewAreasLayout();
 	if (effectiveArea == null)//Area isn't known by the applications manager, generally admissible situation
 	    return;
 	if (effectiveArea == screenContentManager.getActiveArea())
-	    windowManager.redrawArea(effectiveArea);
+	    redrawArea(effectiveArea);
     }
 
     void onAreaNewContentIface(Luwrain instance, Area area)
@@ -655,7 +669,7 @@ onNewAreasLayout();
 	final Area effectiveArea = getEffectiveAreaFor(instance, area);
 	if (effectiveArea == null)//Area isn't known by the applications manager, generally admissible situation
 	    return;
-	windowManager.redrawArea(effectiveArea);
+	redrawArea(effectiveArea);
     }
 
     void onAreaNewNameIface(Luwrain instance, Area area)
@@ -664,7 +678,7 @@ onNewAreasLayout();
 	final Area effectiveArea = getEffectiveAreaFor(instance, area);
 	if (effectiveArea == null)//Area isn't known by the applications manager, generally admissible situation
 	    return;
-	windowManager.redrawArea(effectiveArea);
+	redrawArea(effectiveArea);
     }
 
     void onAreaNewBackgroundSound(Luwrain instance, Area area)
@@ -759,7 +773,9 @@ onNewAreasLayout();
 	needForIntroduction = false;
 	if (sound != null)
 	    playSound(sound);
-	speech.speak(text, Luwrain.PITCH_MESSAGE, 0);
+	speech.speak(text, Luwrain.PITCH_MESSAGE, 0, SpeechScheduler.Priority.MESSAGE);
+	//The pending redrawing would erase the message
+	flushRedrawing();
 	interaction.startDrawSession();
 	interaction.clearRect(0, interaction.getHeightInCharacters() - 1, interaction.getWidthInCharacters() - 1, interaction.getHeightInCharacters() - 1);
 	interaction.drawText(0, interaction.getHeightInCharacters() - 1, text, true);
@@ -32,13 +32,40 @@ abstract class EnvironmentAreas extends EnvironmentBase
 	super(cmdLine, registry, coreProps, lang);
     }
 
+    //May be null before the interaction is initialized
+    WindowManager getWindowManager()
+    {
+	return windowManager;
+    }
+
     protected void onNewAreasLayout()
     {
 	screenContentManager.updatePopupState();
-	windowManager.redraw();
+	if (windowManager.invalidate())
+	    wakeUpForRedrawing();
 	updateBackgroundSound(null);
     }
 
+    protected void redrawArea(Area area)
+    {
+	NullCheck.notNull(area, "area");
+	if (windowManager.invalidateArea(area))
+	    wakeUpForRedrawing();
+    }
+
+    @Override protected void flushRedrawing()
+    {
+	if (windowManager != null)
+	    windowManager.flush();
+    }
+
+    //Redrawing requested from a background thread must not wait for the next event from the user
+    private void wakeUpForRedrawing()
+    {
+	if (!isEventLoopThread())
+	    enqueueEvent(new RunnableEvent(()->{}));
+    }
+
     protected void updateBackgroundSound(Area updateFor)
     {
 	final Area area = getValidActiveArea(false);
@@ -27,12 +27,14 @@ abstract class EnvironmentBase implements org.luwrain.base.EventConsumer
     protected Speech speech = null;
     protected final Braille braille = new Braille();
     private RegionContent clipboard = null;
-    protected final SoundsPlayer sounds = new SoundsPlayer();
+    protected final AudioMixer mixer = new AudioMixer();
+    protected final SoundsPlayer sounds = new SoundsPlayer(mixer);
     protected final SoundManager soundManager;
     protected final org.luwrain.base.CoreProperties coreProps;
     protected final String lang;
     protected boolean needForIntroduction = false;
     protected boolean introduceApp = false;
+    private Thread eventLoopThread = null;
 
     protected EnvironmentBase(CmdLine cmdLine, Registry registry,
 			      org.luwrain.base.CoreProperties coreProps, String lang)
@@ -45,21 +47,26 @@ abstract class EnvironmentBase implements org.luwrain.base.EventConsumer
 	this.registry = registry;
 	this.coreProps = coreProps;
 	this.lang = lang;
-	this.soundManager = new SoundManager(registry, coreProps);
+	this.soundManager = new SoundManager(registry, coreProps, mixer);
     }
 
     //True means the event is processed and there is no need to process it again;
     abstract protected boolean onEvent(Event event);
     abstract protected void introduce(EventLoopStopCondition stopCondition);
     abstract Luwrain getObjForEnvironment();
+    //Performs all redrawing requested during processing of the last event
+    abstract protected void flushRedrawing();
 
     protected void eventLoop(EventLoopStopCondition stopCondition)
     {
 	NullCheck.notNull(stopCondition, "stopCondition");
+	eventLoopThread = Thread.currentThread();
 	while(stopCondition.continueEventLoop())
 	{
 	    needForIntroduction = false;
 	    introduceApp = false;
+	    //The layout could be changed before the nested loop of a popup
+	    flushRedrawing();
 	    final Event event = eventQueue.takeEvent();
 	    if (event == null)
 		continue;
@@ -68,7 +75,8 @@ abstract class EnvironmentBase implements org.luwrain.base.EventConsumer
 		eventQueue.onceAgain(event);
 		continue;
 	    }
-	    event.markAsProcessed();
+	    flushRedrawing();
+	    eventQueue.markAsProcessed(event);
 	    if (!eventQueue.hasAgain())
 		introduce(stopCondition);
 	}
@@ -79,6 +87,11 @@ abstract class EnvironmentBase implements org.luwrain.base.EventConsumer
 	eventQueue.putEvent(e);
     }
 
+    protected boolean isEventLoopThread()
+    {
+	return Thread.currentThread() == eventLoopThread;
+    }
+
     void playSound(Sounds sound)
     {
 	NullCheck.notNull(sound, "sound");
@@ -144,6 +157,16 @@ abstract class EnvironmentBase implements org.luwrain.base.EventConsumer
 	return   braille;
     }
 
+    AudioMixer getMixer()
+    {
+	return mixer;
+    }
+
+    EventQueue getEventQueue()
+    {
+	return eventQueue;
+    }
+
     org.luwrain.base.CoreProperties getCoreProperties()
     {
 	return coreProps;
@@ -16,21 +16,93 @@
 
 package org.luwrain.core;
 
-import java.util.concurrent.*;
+import java.util.*;
 
+import org.luwrain.core.events.*;
+
+/**
+ * The queue of the main event loop. Events are distributed over several
+ * lanes which are served in the order of their priority, so that the
+ * keyboard input is never delayed by a burst of events from background
+ * threads. Producers are never blocked: if a lane is full, its overflow
+ * policy decides what to do with the event. Some events without any
+ * payload (like {@code REFRESH}) are merged with the identical events
+ * already waiting in the queue.
+ */
 public class EventQueue
 {
-    private final LinkedBlockingQueue<Event> events = new LinkedBlockingQueue<Event>(1024);
+    enum Lane {
+	KEYBOARD,
+	ENVIRONMENT,
+	BROADCAST,
+	RUNNABLE,
+    };
+
+    enum Overflow {
+	/** The new event is rejected*/
+	DROP_NEWEST,
+	/** The oldest event of the lane is rejected to free the place for the new one*/
+	DROP_OLDEST,
+	/** The lane grows over its capacity with a warning in the log*/
+	GROW,
+    };
+
+    static private final Set<EnvironmentEvent.Code> MERGEABLE_CODES = EnumSet.of(
+										 EnvironmentEvent.Code.REFRESH,
+										 EnvironmentEvent.Code.INTRODUCE);
+
+    static private final int KEYBOARD_CAPACITY = 1024;
+    static private final int ENVIRONMENT_CAPACITY = 1024;
+    static private final int BROADCAST_CAPACITY = 256;
+    static private final int RUNNABLE_CAPACITY = 4096;
+
+    private final LaneQueue[] lanes = new LaneQueue[]{
+	new LaneQueue(Lane.KEYBOARD, KEYBOARD_CAPACITY, Overflow.DROP_NEWEST),
+	new LaneQueue(Lane.ENVIRONMENT, ENVIRONMENT_CAPACITY, Overflow.GROW),
+	new LaneQueue(Lane.BROADCAST, BROADCAST_CAPACITY, Overflow.DROP_OLDEST),
+	new LaneQueue(Lane.RUNNABLE, RUNNABLE_CAPACITY, Overflow.GROW),
+    };
+
+    //Keys of events waiting in the queue which may absorb their duplicates
+    private final Map<MergeKey, Event> mergeable = new HashMap<MergeKey, Event>();
+    //Events absorbed by the queued ones, they are marked as processed together with them
+    private final Map<Event, List<Event>> merged = new IdentityHashMap<Event, List<Event>>();
     private Event again = null;
+    private long mergedCount = 0;
+    private long droppedCount = 0;
 
     void putEvent(Event e)
     {
-	try {
-	    events.put(e);
+	NullCheck.notNull(e, "e");
+	final Event rejected;
+	synchronized(this) {
+	    final MergeKey key = MergeKey.create(e);
+	    if (key != null)
+	    {
+		final Event queued = mergeable.get(key);
+		if (queued != null)
+		{
+		    if (queued != e)
+			addMerged(queued, e);
+		    ++mergedCount;
+		    return;
+		}
+	    }
+	    final LaneQueue lane = lanes[getLane(e).ordinal()];
+	    rejected = lane.offer(e);
+	    if (rejected != e && key != null)
+		mergeable.put(key, e);
+	    if (rejected != null)
+	    {
+		++droppedCount;
+		forget(rejected);
+	    }
+	    notifyAll();
 	}
-	catch (InterruptedException ex)
+	if (rejected != null)
 	{
-	    Thread.currentThread().interrupt();
+	    Log.warning("queue", "the lane " + getLane(rejected) + " is full, the event of class " + rejected.getClass().getName() + " rejected");
+	    markAsProcessed(rejected);
 	}
     }
 
@@ -59,12 +131,202 @@ public class EventQueue
 	    again = null;
 	    return event;
 	}
-	try {
-	    return events.take();
+	synchronized(this) {
+	    try {
+		while(true)
+		{
+		    for(LaneQueue l: lanes)
+			if (!l.isEmpty())
+			{
+			    final Event event = l.poll();
+			    final MergeKey key = MergeKey.create(event);
+			    if (key != null && mergeable.get(key) == event)
+				mergeable.remove(key);
+			    return event;
+			}
+		    wait();
+		}
+	    }
+	    catch (InterruptedException ex)
+	    {
+		Thread.currentThread().interrupt();
+		return null;
+	    }
+	}
+    }
+
+    /**
+     * Marks the event as processed together with all events merged with
+     * it while it was waiting in the queue.
+     */
+    void markAsProcessed(Event event)
+    {
+	NullCheck.notNull(event, "event");
+	final List<Event> absorbed;
+	synchronized(this) {
+	    absorbed = merged.remove(event);
+	}
+	event.markAsProcessed();
+	if (absorbed != null)
+	    for(Event e: absorbed)
+		e.markAsProcessed();
+    }
+
+    synchronized long getMergedCount()
+    {
+	return mergedCount;
+    }
+
+    synchronized long getDroppedCount()
+    {
+	return droppedCount;
+    }
+
+    private void addMerged(Event queued, Event event)
+    {
+	List<Event> list = merged.get(queued);
+	if (list == null)
+	{
+	    list = new LinkedList<Event>();
+	    merged.put(queued, list);
 	}
-	catch (InterruptedException ex)
+	list.add(event);
+    }
+
+    //Called for the rejected events, so they don't stay in the merging maps
+    private void forget(Event event)
+    {
+	final MergeKey key = MergeKey.create(event);
+	if (key != null && mergeable.get(key) == event)
+	    mergeable.remove(key);
+	final List<Event> absorbed = merged.remove(event);
+	if (absorbed != null)
+	    for(Event e: absorbed)
+		e.markAsProcessed();
+    }
+
+    static private Lane getLane(Event event)
+    {
+	if (event instanceof KeyboardEvent)
+	    return Lane.KEYBOARD;
+	if (event instanceof RunnableEvent)
+	    return Lane.RUNNABLE;
+	if (event instanceof EnvironmentEvent && !(event instanceof AddressedEnvironmentEvent) &&
+	    ((EnvironmentEvent)event).getType() == EnvironmentEvent.Type.BROADCAST)
+	    return Lane.BROADCAST;
+	return Lane.ENVIRONMENT;
+    }
+
+    static private final class LaneQueue
+    {
+	private final Lane lane;
+	private final int capacity;
+	private final Overflow overflow;
+	private final ArrayDeque<Event> events = new ArrayDeque<Event>();
+
+	LaneQueue(Lane lane, int capacity, Overflow overflow)
+	{
+	    this.lane = lane;
+	    this.capacity = capacity;
+	    this.overflow = overflow;
+	}
+
+	//Returns the event rejected by the overflow policy or null
+	Event offer(Event event)
+	{
+	    if (events.size() < capacity)
+	    {
+		events.addLast(event);
+		return null;
+	    }
+	    switch(overflow)
+	    {
+	    case DROP_NEWEST:
+		return event;
+	    case DROP_OLDEST:
+		{
+		    final Event oldest = events.pollFirst();
+		    events.addLast(event);
+		    return oldest;
+		}
+	    default:
+		if (events.size() % capacity == 0)
+		    Log.warning("queue", "the lane " + lane + " has grown to " + events.size() + " events");
+		events.addLast(event);
+		return null;
+	    }
+	}
+
+	Event poll()
+	{
+	    return events.pollFirst();
+	}
+
+	boolean isEmpty()
+	{
+	    return events.isEmpty();
+	}
+    }
+
+    /**
+     * Identifies the events without any payload which produce the same
+     * effect regardless of how many times they are delivered. Only the
+     * events of the exact classes {@code EnvironmentEvent} and {@code
+     * AddressedEnvironmentEvent} are taken into account, since their
+     * subclasses may carry some additional data.
+     */
+    static private final class MergeKey
+    {
+	private final EnvironmentEvent.Type type;
+	private final EnvironmentEvent.Code code;
+	private final Area destArea;
+	private final String filterClassName;
+	private final String filterUniRef;
+
+	private MergeKey(EnvironmentEvent event, Area destArea)
+	{
+	    this.type = event.getType();
+	    this.code = event.getCode();
+	    this.destArea = destArea;
+	    this.filterClassName = event.getBroadcastFilterAreaClassName();
+	    this.filterUniRef = event.getBroadcastFilterUniRef();
+	}
+
+	@Override public boolean equals(Object o)
+	{
+	    if (o == null || !(o instanceof MergeKey))
+		return false;
+	    final MergeKey k = (MergeKey)o;
+	    return type == k.type && code == k.code && destArea == k.destArea &&
+	    filterClassName.equals(k.filterClassName) && filterUniRef.equals(k.filterUniRef);
+	}
+
+	@Override public int hashCode()
+	{
+	    int res = type.hashCode();
+	    res = 31 * res + code.hashCode();
+	    res = 31 * res + System.identityHashCode(destArea);
+	    res = 31 * res + filterClassName.hashCode();
+	    return 31 * res + filterUniRef.hashCode();
+	}
+
+	//Returns null if the event may not be merged
+	static MergeKey create(Event event)
 	{
-	    Thread.currentThread().interrupt();
+	    if (event == null)
+		return null;
+	    if (event.getClass() == EnvironmentEvent.class)
+	    {
+		final EnvironmentEvent e = (EnvironmentEvent)event;
+		return MERGEABLE_CODES.contains(e.getCode())?new MergeKey(e, null):null;
+	    }
+	    if (event.getClass() == AddressedEnvironmentEvent.class)
+	    {
+		final AddressedEnvironmentEvent e = (AddressedEnvironmentEvent)event;
+		if (e.getInstanceObj() != null || !MERGEABLE_CODES.contains(e.getCode()))
+		    return null;
+		return new MergeKey(e, e.getDestArea());
+	    }
 	    return null;
 	}
     }
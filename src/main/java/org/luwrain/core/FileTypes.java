@@ -21,6 +21,8 @@ import java.net.*;
 import java.io.*;
 import java.nio.file.*;
 
+import org.luwrain.registry.DirectorySnapshot;
+
 public class FileTypes
 {
     private final HashMap<String, String> fileTypes = new HashMap<String, String>();
@@ -29,20 +31,19 @@ public class FileTypes
     {
 	NullCheck.notNull(registry, "registry");
 	final String path = Settings.FILE_TYPES_PATH;
-	final String[] values= registry.getValues(path);
-	if (values.length < 1)
+	final DirectorySnapshot snapshot = DirectorySnapshot.read(registry, path, false);
+	if (snapshot == null)
 	    return;
-	for(String v: values)
+	for(String v: snapshot.getValueNames())
 	{
 	    if (v.trim().isEmpty())
 		continue;
-	    final String valuePath = Registry.join(path, v);
-	    if (registry.getTypeOf(valuePath) != Registry.STRING)
+	    if (snapshot.getTypeOf(v) != Registry.STRING)
 	    {
-		Log.warning("core", "registry value " + valuePath + " is not a string");
+		Log.warning("core", "registry value " + Registry.join(path, v) + " is not a string");
 		continue;
 	    }
-	    final String value = registry.getString(valuePath).trim();
+	    final String value = snapshot.getString(v).trim();
 	    if (value.isEmpty())
 		continue;
 	    fileTypes.put(v.trim().toLowerCase(), value);
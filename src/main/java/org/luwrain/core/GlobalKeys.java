@@ -18,6 +18,7 @@ package org.luwrain.core;
 
 import java.util.*;
 import org.luwrain.core.events.*;
+import org.luwrain.registry.DirectorySnapshot;
 
 class GlobalKeys
 {
@@ -57,14 +58,17 @@ class GlobalKeys
     public void loadFromRegistry()
     {
 	final String globalKeysDir = Settings.GLOBAL_KEYS_PATH;
-	String[] dirs = registry.getDirectories(Settings.GLOBAL_KEYS_PATH);
-	if (dirs != null)
-	    for(String s: dirs)
-	    {
-		KeyboardEvent event = getKeyboardEventFromRegistry(globalKeysDir + "/" + s);
-		if (event != null)
-		    addMapping(event, s.trim());
-	    }
+	//All keys are read at once, the proxies are created over the snapshot
+	final DirectorySnapshot snapshot = DirectorySnapshot.read(registry, globalKeysDir, true);
+	if (snapshot == null)
+	    return;
+	final Registry keysRegistry = snapshot.asRegistry();
+	for(String s: snapshot.getSubdirNames())
+	{
+	    KeyboardEvent event = getKeyboardEventFromRegistry(keysRegistry, globalKeysDir + "/" + s);
+	    if (event != null)
+		addMapping(event, s.trim());
+	}
     }
 
     public void addMapping(KeyboardEvent event, String actionName)
@@ -76,8 +80,9 @@ class GlobalKeys
 	items.add(new Item(event, actionName));
     }
 
-    private KeyboardEvent getKeyboardEventFromRegistry(String path)
+    private KeyboardEvent getKeyboardEventFromRegistry(Registry registry, String path)
     {
+	NullCheck.notNull(registry, "registry");
 	NullCheck.notNull(path, "path");
 	final Settings.HotKey proxy = Settings.createHotKey(registry, path);
 	KeyboardEvent.Special special = null;
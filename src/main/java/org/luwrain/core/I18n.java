@@ -28,4 +28,10 @@ public interface I18n
     String getPastTimeBrief(Date date);
     String getNumberStr(int count, String entities);
     String getExceptionDescr(Exception e);
+
+    //The locale of the chosen language for splitting the text into sentences and words
+    default Locale getLocale()
+    {
+	return Locale.getDefault();
+    }
 }
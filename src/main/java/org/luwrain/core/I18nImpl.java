@@ -257,6 +257,11 @@ class I18nImpl implements I18n, I18nExtension
 	return chosenLangName;
     }
 
+    @Override public Locale getLocale()
+    {
+	return !chosenLangName.isEmpty()?Locale.forLanguageTag(chosenLangName):Locale.getDefault();
+    }
+
     static private String convertStaticValueName(String name)
     {
 	final StringBuilder b = new StringBuilder();
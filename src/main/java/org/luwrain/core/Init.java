@@ -47,6 +47,10 @@ public class Init
     static private final String DEFAULT_USER_DATA_DIR_WINDOWS = "Luwrain";
     static private final String DEFAULT_USER_DATA_DIR_LINUX = ".luwrain";
 
+    //Registry changes are saved in batches with this delay in milliseconds
+    static private final int REGISTRY_FLUSH_DELAY = 1000;
+    static private final String REGISTRY_FILE = "registry.bin";
+
     private final CmdLine cmdLine;
     private final CoreProperties coreProps = new CoreProperties();
     private final Path dataDir;
@@ -110,7 +114,8 @@ public class Init
     private boolean init()
     {
 	coreProps.load(dataDir.resolve("properties"), userDataDir.resolve("properties"));
-	registry = new org.luwrain.registry.fsdir.RegistryImpl(userDataDir.resolve("registry"));
+	if (!initRegistry())
+	    return false;
 	if (!initOs())
 	    return false;
 	final InteractionParamsLoader interactionParams = new InteractionParamsLoader();
@@ -145,10 +150,30 @@ public class Init
 	return true;
     }
 
+    //The fsdir registry is used unless luwrain.registry.type is "bin"
     private boolean initRegistry()
     {
-
-	return true;
+	final Path registryDir = userDataDir.resolve("registry");
+	if (!coreProps.getProperty("luwrain.registry.type").equals("bin"))
+	{
+	    registry = new org.luwrain.registry.fsdir.RegistryImpl(registryDir, REGISTRY_FLUSH_DELAY);
+	    return true;
+	}
+	final Path registryFile = userDataDir.resolve(REGISTRY_FILE);
+	try {
+	    if (!Files.exists(registryFile))
+	    {
+		Log.info("init", "converting the registry from " + registryDir.toString() + " to " + registryFile.toString());
+		org.luwrain.registry.bin.Converter.fsdirToBin(registryDir, registryFile);
+	    }
+	    registry = new org.luwrain.registry.bin.RegistryImpl(registryFile);
+	    return true;
+	}
+	catch(IOException e)
+	{
+	    Log.fatal("init", "unable to open the registry file " + registryFile.toString() + ":" + e.getClass().getName() + ":" + e.getMessage());
+	    return false;
+	}
     }
 
     private boolean initOs()
@@ -214,6 +239,16 @@ public class Init
 				    return getSystemPath(propName);
 				}
 			    }, lang).run();
+	if (registry instanceof org.luwrain.registry.fsdir.RegistryImpl)
+	{
+	    Log.debug("init", "saving pending registry changes");
+	    ((org.luwrain.registry.fsdir.RegistryImpl)registry).flush();
+	}
+	if (registry instanceof org.luwrain.registry.bin.RegistryImpl)
+	{
+	    Log.debug("init", "closing the registry file");
+	    ((org.luwrain.registry.bin.RegistryImpl)registry).close();
+	}
 	if (interaction != null)
 	{
 	    Log.debug("init", "closing interaction");
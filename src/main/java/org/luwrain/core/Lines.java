@@ -20,4 +20,33 @@ public interface Lines
 {
     int getLineCount();
     String getLine(int index);
+
+    /**
+     * Returns several consecutive lines in one call. The renderer asks
+     * only for the lines visible on the screen, so implementations with
+     * costly {@code getLine()} may override this method to prepare all
+     * the requested lines at once. The default implementation just calls
+     * {@code getLine()} for each line. The returned array never contains
+     * {@code null} items and is shorter than {@code count} if there are
+     * not enough lines after {@code fromIndex}.
+     *
+     * @param fromIndex The index of the first line to return
+     * @param count The maximum number of lines to return
+     * @return The array of lines, never {@code null}
+     */
+    default String[] getLines(int fromIndex, int count)
+    {
+	if (fromIndex < 0)
+	    throw new IllegalArgumentException("fromIndex (" + fromIndex + ") may not be negative");
+	if (count < 0)
+	    throw new IllegalArgumentException("count (" + count + ") may not be negative");
+	final int available = Math.min(count, Math.max(getLineCount() - fromIndex, 0));
+	final String[] res = new String[available];
+	for(int i = 0;i < available;++i)
+	{
+	    final String line = getLine(fromIndex + i);
+	    res[i] = line != null?line:"";
+	}
+	return res;
+    }
 }
@@ -0,0 +1,225 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.core;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.ByteArrayOutputStream;
+import javax.sound.sampled.AudioFormat;
+
+import org.luwrain.speech.*;
+
+/**
+ * Reads the text without pauses between the segments. While one segment
+ * is played, the following ones are already synthesized in the
+ * background, so the next segment starts right after the previous one
+ * ends. The segments are taken and the listener is notified in the main
+ * thread only, the audio path doesn't depend on it.
+ */
+class ListeningPipeline
+{
+    //How many segments are synthesized beyond the playing one
+    static private final int LOOK_AHEAD = 2;
+
+    static final class Segment
+    {
+	final String text;
+	final Object extraInfo;
+	byte[] data = null;
+
+	Segment(String text, Object extraInfo)
+	{
+	    NullCheck.notNull(text, "text");
+	    this.text = text;
+	    this.extraInfo = extraInfo;
+	}
+    }
+
+    interface Source
+    {
+	//Called in the main thread, null means the end of the text
+	Segment next();
+    }
+
+    interface Listener
+    {
+	//Called in the main thread
+	void onSegmentPlayed(Segment segment);
+	//Called in the main thread, the audio can't be played and the pipeline is cancelled
+	void onFailed();
+    }
+
+    private final Luwrain luwrain;
+    private final Channel channel;
+    private final AudioFormat format;
+    private final Source source;
+    private final Listener listener;
+    private final PcmOutput output;
+    private final ExecutorService synthExecutor;
+
+    //Segments taken from the source and not played yet, in their order
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private Segment playing = null;
+    private boolean noMoreSegments = false;
+    private volatile boolean cancelled = false;
+
+    private ListeningPipeline(Luwrain luwrain, Channel channel, AudioFormat format,
+			      Source source, Listener listener, PcmOutput output)
+    {
+	this.luwrain = luwrain;
+	this.channel = channel;
+	this.format = format;
+	this.source = source;
+	this.listener = listener;
+	this.output = output;
+	this.synthExecutor = Executors.newSingleThreadExecutor((r)->{
+		final Thread t = new Thread(r, "listening-synth");
+		t.setDaemon(true);
+		return t;
+	    });
+    }
+
+    //Returns null if the channel can't synthesize to streams
+    static ListeningPipeline create(Luwrain luwrain, Channel channel, Source source, Listener listener, PcmOutput output)
+    {
+	NullCheck.notNull(luwrain, "luwrain");
+	NullCheck.notNull(channel, "channel");
+	NullCheck.notNull(source, "source");
+	NullCheck.notNull(listener, "listener");
+	NullCheck.notNull(output, "output");
+	if (!channel.getFeatures().contains(Channel.Features.CAN_SYNTH_TO_STREAM))
+	    return null;
+	final AudioFormat[] formats = channel.getSynthSupportedFormats();
+	if (formats == null || formats.length == 0 || formats[0] == null)
+	    return null;
+	return new ListeningPipeline(luwrain, channel, formats[0], source, listener, output);
+    }
+
+    //Must be called in the main thread
+    void start()
+    {
+	fill();
+    }
+
+    void cancel()
+    {
+	cancelled = true;
+	synthExecutor.shutdownNow();
+	output.stop();
+	synchronized(this) {
+	    segments.clear();
+	    playing = null;
+	}
+    }
+
+    private void fill()
+    {
+	while(!cancelled)
+	{
+	    synchronized(this) {
+		if (noMoreSegments || segments.size() > LOOK_AHEAD)
+		    break;
+	    }
+	    final Segment segment = source.next();
+	    synchronized(this) {
+		if (segment == null)
+		{
+		    noMoreSegments = true;
+		    break;
+		}
+		segments.add(segment);
+	    }
+	    synthExecutor.execute(()->synth(segment));
+	}
+	synchronized(this) {
+	    //Everything is played, the synthesizing thread isn't needed any more
+	    if (noMoreSegments && playing == null && segments.isEmpty())
+		synthExecutor.shutdown();
+	}
+    }
+
+    private void synth(Segment segment)
+    {
+	if (cancelled)
+	    return;
+	final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	if (!segment.text.trim().isEmpty())
+	    try {
+		if (!channel.synth(segment.text, channel.getDefaultPitch(), channel.getDefaultRate(), format, stream))
+		    Log.warning("core", "the channel \'" + channel.getChannelName() + "\' is unable to synthesize the text for listening");
+	    }
+	    catch(Exception e)
+	    {
+		Log.error("core", "unable to synthesize the text for listening:" + e.getClass().getName() + ":" + e.getMessage());
+	    }
+	synchronized(this) {
+	    segment.data = stream.toByteArray();
+	    if (playing == null)
+		playNext();
+	}
+    }
+
+    //Must be called with the lock held
+    private void playNext()
+    {
+	if (cancelled || segments.isEmpty() || segments.getFirst().data == null)
+	    return;
+	final Segment segment = segments.removeFirst();
+	playing = segment;
+	if (segment.data.length == 0)
+	{
+	    //Nothing to play, but the hot point must be moved anyway
+	    playing = null;
+	    onPlayed(segment);
+	    return;
+	}
+	final boolean res = output.play(segment.data, format, ()->{
+		synchronized(this) {
+		    if (playing != segment)
+			return;
+		    playing = null;
+		    onPlayed(segment);
+		}
+	    });
+	if (!res)
+	    fail();
+    }
+
+    //Must be called with the lock held
+    private void fail()
+    {
+	Log.error("core", "unable to play the synthesized text for listening, cancelling");
+	cancelled = true;
+	synthExecutor.shutdownNow();
+	segments.clear();
+	playing = null;
+	luwrain.runInMainThread(()->listener.onFailed());
+    }
+
+    //Must be called with the lock held
+    private void onPlayed(Segment segment)
+    {
+	//The next segment starts right now, not after the main thread notices the end
+	playNext();
+	luwrain.runInMainThread(()->{
+		if (cancelled)
+		    return;
+		listener.onSegmentPlayed(segment);
+		fill();
+	    });
+    }
+}
@@ -81,16 +81,11 @@ public final class Luwrain implements org.luwrain.base.EventConsumer, org.luwrai
     static public final int MESSAGE_ERROR = 4;
 
     private final Environment environment;
-    private String charsToSkip = "";
 
     Luwrain(Environment environment)
     {
 	NullCheck.notNull(environment, "environment");
 	this.environment = environment;
-	Registry registry = environment.registry();
-	final String path = "/org/luwrain/speech/preprocess-cchars-to-skip";
-	if (registry.getTypeOf(path) == Registry.STRING)
-	    charsToSkip = registry.getString(path);
     }
 
     public RegionContent currentAreaRegion(boolean issueErrorMessages)
@@ -181,7 +176,8 @@ public final class Luwrain implements org.luwrain.base.EventConsumer, org.luwrai
     public void hint(String text)
     {
 	NullCheck.notNull(text, "text");
-	say(text, PITCH_HINT);
+	environment.getBraille().textToSpeak(text);
+	environment.getSpeech().speak(text, PITCH_HINT, 0, SpeechScheduler.Priority.HINT);
     }
 
     public void hint(String text, int code)
@@ -402,7 +398,7 @@ public final class Luwrain implements org.luwrain.base.EventConsumer, org.luwrai
     {
 	NullCheck.notNull(text, "text");
 	environment.getBraille().textToSpeak(text);
-	environment.getSpeech().speak(preprocess(text), 0, 0);
+	environment.getSpeech().speak(text, 0, 0);
     }
 
     public void say(String text, Sounds sound)
@@ -417,14 +413,14 @@ public final class Luwrain implements org.luwrain.base.EventConsumer, org.luwrai
     {
 	NullCheck.notNull(text, "text");
 	environment.getBraille().textToSpeak(text);
-	environment.getSpeech().speak(preprocess(text), pitch, 0);
+	environment.getSpeech().speak(text, pitch, 0);
     }
 
     public void say(String text,
 		    int pitch, int rate)
     {
 	NullCheck.notNull(text, "text");
-	environment.getSpeech().speak(preprocess(text), pitch, rate);
+	environment.getSpeech().speak(text, pitch, rate);
     }
 
     public void sayLetter(char letter)
@@ -588,22 +584,6 @@ public final class Luwrain implements org.luwrain.base.EventConsumer, org.luwrai
 	return environment.getAllShortcutNames();
     }
 
-    private String preprocess(String s)
-    {
-	StringBuilder b = new StringBuilder();
-	for(int i = 0;i < s.length();++i)
-	{
-	    final char c = s.charAt(i);
-	    int k;
-	    for(k = 0;k < charsToSkip.length();++k)
-		if (c == charsToSkip.charAt(k))
-		    break;
-	    if (k >= charsToSkip.length())
-		b.append(c);
-	}
-	return b.toString();
-    }
-
     @Override public java.nio.file.Path getPathProperty(String propName)
     {
 	NullCheck.notEmpty(propName, "propName");
@@ -680,6 +660,22 @@ public final class Luwrain implements org.luwrain.base.EventConsumer, org.luwrai
 	}
 	switch(propName)
 	{
+	case "luwrain.speech.dropped":
+	    return "" + environment.getSpeech().getDroppedCount();
+	case "luwrain.speech.merged":
+	    return "" + environment.getSpeech().getMergedCount();
+	case "luwrain.events.merged":
+	    return "" + environment.getEventQueue().getMergedCount();
+	case "luwrain.events.dropped":
+	    return "" + environment.getEventQueue().getDroppedCount();
+	case "luwrain.audio.underruns":
+	    return "" + environment.getMixer().getUnderrunCount();
+	case "luwrain.audio.starvations":
+	    return "" + environment.getMixer().getStarvationCount();
+	case "luwrain.screen.redrawrequests":
+	case "luwrain.screen.redrawsperformed":
+	case "luwrain.screen.redrawssaved":
+	    return getRedrawingProperty(propName);
 	case "luwrain.braille.active":
 	    return environment.getBraille().isActive()?"1":"0";
 	case "luwrain.braille.driver":
@@ -700,6 +696,22 @@ public final class Luwrain implements org.luwrain.base.EventConsumer, org.luwrai
 	}
     }
 
+    private String getRedrawingProperty(String propName)
+    {
+	final WindowManager windowManager = environment.getWindowManager();
+	if (windowManager == null)
+	    return "0";
+	switch(propName)
+	{
+	case "luwrain.screen.redrawrequests":
+	    return "" + windowManager.getRedrawRequests();
+	case "luwrain.screen.redrawsperformed":
+	    return "" + windowManager.getRedrawsPerformed();
+	default:
+	    return "" + windowManager.getRedrawsSaved();
+	}
+    }
+
 public FilesOperations getFilesOperations()
     {
 	return environment.getFilesOperations();
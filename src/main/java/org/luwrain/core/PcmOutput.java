@@ -0,0 +1,61 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.core;
+
+import javax.sound.sampled.*;
+
+//Plays PCM buffers through the mixer, a new buffer stops the previous one
+class PcmOutput
+{
+    private final AudioMixer mixer;
+    private AudioMixer.Voice voice = null;
+
+    PcmOutput(AudioMixer mixer)
+    {
+	NullCheck.notNull(mixer, "mixer");
+	this.mixer = mixer;
+    }
+
+    /**
+     * Starts playing the data. onFinished is called only if the playback
+     * wasn't cancelled. Returns false if the data can't be played, then
+     * onFinished is never called.
+     */
+    synchronized boolean play(byte[] data, AudioFormat format, Runnable onFinished)
+    {
+	NullCheck.notNull(data, "data");
+	NullCheck.notNull(format, "format");
+	stop();
+	try {
+	    voice = mixer.play(data, format, 1.0f, onFinished);
+	}
+	catch(IllegalArgumentException e)
+	{
+	    Log.error("core", "unable to play the audio data:" + e.getMessage());
+	    return false;
+	}
+	return voice != null;
+    }
+
+    synchronized void stop()
+    {
+	if (voice == null)
+	    return;
+	voice.stop();
+	voice = null;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.core;
+
+import org.luwrain.base.*;
+
+/**
+ * The character matrix of the screen. {@code WindowManager} composes the
+ * screen content in one buffer and compares it with another one keeping
+ * what was actually sent to {@code Interaction} last time, so only the
+ * changed runs of characters are drawn.
+ */
+class ScreenBuffer
+{
+    static private final char BLANK = ' ';
+
+    //Changed runs separated by fewer equal cells are sent as a single one
+    static private final int MAX_GAP = 4;
+
+    final int width;
+    final int height;
+    private final char[] chars;
+    private final boolean[] highlighted;
+
+    ScreenBuffer(int width, int height)
+    {
+	if (width < 0)
+	    throw new IllegalArgumentException("width (" + width + ") may not be negative");
+	if (height < 0)
+	    throw new IllegalArgumentException("height (" + height + ") may not be negative");
+	this.width = width;
+	this.height = height;
+	this.chars = new char[width * height];
+	this.highlighted = new boolean[width * height];
+	clear();
+    }
+
+    boolean hasSize(int width, int height)
+    {
+	return this.width == width && this.height == height;
+    }
+
+    void clear()
+    {
+	clearRect(0, 0, width - 1, height - 1);
+    }
+
+    //The bounds are inclusive like in Interaction.clearRect()
+    void clearRect(int left, int top, int right, int bottom)
+    {
+	final int l = Math.max(left, 0), r = Math.min(right, width - 1);
+	final int t = Math.max(top, 0), b = Math.min(bottom, height - 1);
+	for(int y = t;y <= b;++y)
+	    for(int x = l;x <= r;++x)
+	    {
+		chars[y * width + x] = BLANK;
+		highlighted[y * width + x] = false;
+	    }
+    }
+
+    void putText(int x, int y, String text, boolean highlight)
+    {
+	NullCheck.notNull(text, "text");
+	if (y < 0 || y >= height)
+	    return;
+	for(int i = 0;i < text.length();++i)
+	{
+	    final int xx = x + i;
+	    if (xx < 0)
+		continue;
+	    if (xx >= width)
+		break;
+	    chars[y * width + xx] = text.charAt(i);
+	    highlighted[y * width + xx] = highlight;
+	}
+    }
+
+    /**
+     * Sends to {@code interaction} all non-blank content of the given
+     * rectangle. The rectangle must be cleared by the caller.
+     */
+    void drawRect(Interaction interaction, int left, int top, int right, int bottom)
+    {
+	NullCheck.notNull(interaction, "interaction");
+	final int l = Math.max(left, 0), r = Math.min(right, width - 1);
+	final int t = Math.max(top, 0), b = Math.min(bottom, height - 1);
+	for(int y = t;y <= b;++y)
+	{
+	    int x = l;
+	    while (x <= r)
+	    {
+		if (chars[y * width + x] == BLANK)
+		{
+		    ++x;
+		    continue;
+		}
+		final int runEnd = findRunEnd(y, x, r);
+		final String text = new String(chars, y * width + x, runEnd - x + 1);
+		drawText(interaction, x, y, text, highlighted[y * width + x]);
+		x = runEnd + 1;
+	    }
+	}
+    }
+
+    /**
+     * Sends to {@code interaction} only the cells of the given rectangle
+     * which differ from the content of {@code shown}, and makes {@code
+     * shown} equal to this buffer within the rectangle.
+     *
+     * @return The number of drawn runs
+     */
+    int drawDiff(Interaction interaction, ScreenBuffer shown,
+		 int left, int top, int right, int bottom)
+    {
+	NullCheck.notNull(interaction, "interaction");
+	NullCheck.notNull(shown, "shown");
+	if (!shown.hasSize(width, height))
+	    throw new IllegalArgumentException("the buffers have different sizes");
+	final int l = Math.max(left, 0), r = Math.min(right, width - 1);
+	final int t = Math.max(top, 0), b = Math.min(bottom, height - 1);
+	int runs = 0;
+	for(int y = t;y <= b;++y)
+	{
+	    int x = l;
+	    while (x <= r)
+	    {
+		if (sameCell(shown, y * width + x))
+		{
+		    ++x;
+		    continue;
+		}
+		//Extending the run over short gaps of unchanged cells with the same highlighting
+		final boolean highlight = highlighted[y * width + x];
+		int end = x;
+		int gap = 0;
+		for(int xx = x + 1;xx <= r && highlighted[y * width + xx] == highlight;++xx)
+		    if (!sameCell(shown, y * width + xx))
+		    {
+			end = xx;
+			gap = 0;
+		    } else
+			if (++gap >= MAX_GAP)
+			    break;
+		interaction.clearRect(x, y, end, y);
+		int textEnd = end;
+		while (textEnd >= x && chars[y * width + textEnd] == BLANK)
+		    --textEnd;
+		if (textEnd >= x)
+		    drawText(interaction, x, y, new String(chars, y * width + x, textEnd - x + 1), highlight);
+		System.arraycopy(chars, y * width + x, shown.chars, y * width + x, end - x + 1);
+		System.arraycopy(highlighted, y * width + x, shown.highlighted, y * width + x, end - x + 1);
+		++runs;
+		x = end + 1;
+	    }
+	}
+	return runs;
+    }
+
+    void copyFrom(ScreenBuffer buf)
+    {
+	NullCheck.notNull(buf, "buf");
+	if (!buf.hasSize(width, height))
+	    throw new IllegalArgumentException("the buffers have different sizes");
+	System.arraycopy(buf.chars, 0, chars, 0, chars.length);
+	System.arraycopy(buf.highlighted, 0, highlighted, 0, highlighted.length);
+    }
+
+    private boolean sameCell(ScreenBuffer buf, int index)
+    {
+	return chars[index] == buf.chars[index] && highlighted[index] == buf.highlighted[index];
+    }
+
+    //Returns the last non-blank cell of the run with the same highlighting
+    private int findRunEnd(int y, int from, int right)
+    {
+	final boolean highlight = highlighted[y * width + from];
+	int end = from;
+	for(int x = from + 1;x <= right && highlighted[y * width + x] == highlight;++x)
+	    if (chars[y * width + x] != BLANK)
+		end = x;
+	return end;
+    }
+
+    static private void drawText(Interaction interaction, int x, int y, String text, boolean highlight)
+    {
+	if (highlight)
+	    interaction.drawText(x, y, text, true); else
+	    interaction.drawText(x, y, text);
+    }
+}
@@ -73,6 +73,11 @@ class SearchAreaWrapper implements Area, AreaWrapper
 	return area.getLine(index);
     }
 
+    @Override public String[] getLines(int fromIndex, int count)
+    {
+	return area.getLines(fromIndex, count);
+    }
+
     @Override public boolean onKeyboardEvent(KeyboardEvent event)
     {
 	if (event.isSpecial() && !event.isModified())
@@ -98,6 +98,25 @@ return res >= 0?res:0;
 	}
     }
 
+    @Override public String[] getLines(int fromIndex, int count)
+    {
+	try {
+	    final String[] res = area.getLines(fromIndex, count);
+	    if (res == null)
+		return new String[0];
+	    for(int i = 0;i < res.length;++i)
+		if (res[i] == null)
+		    res[i] = "";
+	    return res;
+	}
+	catch(Throwable e)
+	{
+	    exceptionMsg("getLines()", e);
+	    e.printStackTrace();
+	    return new String[0];
+	}
+    }
+
     @Override public boolean onKeyboardEvent(KeyboardEvent event)
     {
 	//FIXME:Exception, but unclear
@@ -18,6 +18,8 @@ package org.luwrain.core;
 
 import java.util.*;
 
+import org.luwrain.registry.CachingProxy;
+
 public interface Settings
 {
     static final String FILE_TYPES_APP_INFO_PATH = "/org/luwrain/file-types/app-info";
@@ -26,6 +28,7 @@ public interface Settings
     static final String GLOBAL_KEYS_PATH = "/org/luwrain/global-keys";
     static final String MAIN_MENU_SECTIONS_PATH = "/org/luwrain/main-menu/sections";
     static final String SPEECH_PATH = "/org/luwrain/speech";
+    static final String SPEECH_PRONUNCIATION_PATH = "/org/luwrain/speech/pronunciation";
     static final String BRAILLE_PATH = "/org/luwrain/braille";
     static final String CURRENT_SOUND_SCHEME_PATH = "/org/luwrain/sounds/current-scheme";
     static final String UI_PATH = "/org/luwrain/ui";
@@ -266,6 +269,16 @@ public interface Braille
 	int getRate(int defValue);
 	void setPitch(int value);
 	void setRate(int value);
+	String getCharsToName(String defValue);
+	void setCharsToName(String value);
+    }
+
+    public interface PronunciationEntry
+    {
+	String getWord(String defValue);
+	String getPronunciation(String defValue);
+	void setWord(String value);
+	void setPronunciation(String value);
     }
 
     public interface SpeechChannelBase
@@ -293,12 +306,12 @@ public interface Braille
 
     static public UserInterface createUserInterface(Registry registry)
     {
-	return RegistryProxy.create(registry, UI_PATH, UserInterface.class);
+	return CachingProxy.create(registry, UI_PATH, UserInterface.class);
     }
 
     static public SoundScheme createCurrentSoundScheme(Registry registry)
     {
-	return RegistryProxy.create(registry, CURRENT_SOUND_SCHEME_PATH, SoundScheme.class);
+	return CachingProxy.create(registry, CURRENT_SOUND_SCHEME_PATH, SoundScheme.class);
     }
 
     static public BackgroundSounds createBackgroundSounds(Registry registry)
@@ -316,7 +329,14 @@ public interface Braille
 
     static public SpeechParams createSpeechParams(Registry registry)
     {
-	return RegistryProxy.create(registry, SPEECH_PATH, SpeechParams.class);
+	return CachingProxy.create(registry, SPEECH_PATH, SpeechParams.class);
+    }
+
+    static public PronunciationEntry createPronunciationEntry(Registry registry, String path)
+    {
+	NullCheck.notNull(registry, "registry");
+	NullCheck.notEmpty(path, "path");
+	return RegistryProxy.create(registry, path, PronunciationEntry.class);
     }
 
     static public SpeechChannelBase createSpeechChannelBase(Registry registry, String path)
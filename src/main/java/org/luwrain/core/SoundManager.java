@@ -16,36 +16,117 @@
 
 package org.luwrain.core;
 
+import java.util.*;
 import java.net.*;
 import java.io.*;
 import java.nio.file.*;
+import javax.sound.sampled.AudioFormat;
 
 import org.luwrain.core.util.OggPlayer;
 
 class SoundManager
 {
+    /**
+     * Gives the decoded background sound to the mixer. One stream of the
+     * mixer is kept through all passes of the loop, so there is no gap
+     * for reopening the line between the passes.
+     */
+    static private final class MixerOutput implements OggPlayer.Output
+    {
+	private final AudioMixer mixer;
+	private volatile AudioMixer.Voice voice = null;
+	private AudioFormat format = null;
+	private volatile boolean stopped = false;
+
+	MixerOutput(AudioMixer mixer)
+	{
+	    this.mixer = mixer;
+	}
+
+	@Override public synchronized boolean open(AudioFormat format)
+	{
+	    if (stopped)
+		return false;
+	    if (voice != null && this.format.matches(format))
+		return true;
+	    if (voice != null)
+		voice.end();
+	    this.format = format;
+	    voice = mixer.openStream(format, 1.0f);
+	    return voice != null;
+	}
+
+	//Returns false if the mixer has dropped the stream
+	@Override public boolean write(byte[] data, int offset, int length)
+	{
+	    final AudioMixer.Voice v = voice;
+	    if (v == null)
+		return false;
+	    try {
+		return v.write(data, offset, length);
+	    }
+	    catch(InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+		return false;
+	    }
+	}
+
+	@Override public synchronized void stop()
+	{
+	    stopped = true;
+	    if (voice != null)
+		voice.stop();
+	}
+
+	//The stream is kept for the next pass of the loop
+	@Override public void close()
+	{
+	}
+    }
+
+    //The total size of the decoded sounds kept for playing them again, in bytes
+    static private final long MAX_CACHE_SIZE = 32 * 1024 * 1024;
+
     private final Settings.BackgroundSounds sett;
     private final Path soundsDir;
+    private final AudioMixer mixer;
+    //The samples in the format of the mixer by URLs, the least recently used first
+    private final LinkedHashMap<String, short[]> cache = new LinkedHashMap<String, short[]>(16, 0.75f, true);
+    private long cacheSize = 0;
+    private String bkgUrl = null;
     private OggPlayer bkgOggPlayer = null;
+    //The loop of the cached sound
+    private AudioMixer.Voice bkgVoice = null;
     private boolean startingMode = false;
 
-    SoundManager(Registry registry, org.luwrain.base.CoreProperties coreProps)
+    SoundManager(Registry registry, org.luwrain.base.CoreProperties coreProps, AudioMixer mixer)
     {
 	NullCheck.notNull(registry, "registry");
 	NullCheck.notNull(coreProps, "coreProps");
+	NullCheck.notNull(mixer, "mixer");
 	this.sett = Settings.createBackgroundSounds(registry);
 	this.soundsDir = coreProps.getPathProperty("luwrain.dir.sounds");
+	this.mixer = mixer;
     }
 
-
-
     void playBackground(String url)
     {
 	NullCheck.notNull(url, "url");
 	if (url.isEmpty())
 	    return;
+	//The same sound may be requested again after any change of the layout
+	if (url.equals(bkgUrl) && isBackgroundPlaying())
+	    return;
 	stopBackground();
-	bkgOggPlayer = new OggPlayer(url);
+	bkgUrl = url;
+	final short[] samples = cache.get(url);
+	if (samples != null)
+	{
+	    bkgVoice = mixer.play(samples, 1.0f, true, null);
+	    return;
+	}
+	bkgOggPlayer = new OggPlayer(url, new MixerOutput(mixer));
 	bkgOggPlayer.start();
     }
 
@@ -81,9 +162,16 @@ class SoundManager
     {
 	if (startingMode)
 	    return;
+	if (bkgVoice != null)
+	    bkgVoice.stop();
 	if (bkgOggPlayer != null)
+	{
 	    bkgOggPlayer.stopPlaying();
+	    saveDecoded(bkgUrl, bkgOggPlayer);
+	}
+	bkgVoice = null;
 	bkgOggPlayer = null;
+	bkgUrl = null;
     }
 
     void startingMode()
@@ -102,6 +190,34 @@ class SoundManager
 	stopBackground();
     }
 
+    private boolean isBackgroundPlaying()
+    {
+	if (bkgVoice != null)
+	    return !bkgVoice.isFinished();
+	return bkgOggPlayer != null && bkgOggPlayer.isAlive();
+    }
+
+    //Keeps the sound if the player has decoded it completely
+    private void saveDecoded(String url, OggPlayer player)
+    {
+	final byte[] data = player.getDecoded();
+	final AudioFormat format = player.getDecodedFormat();
+	if (data == null || format == null || cache.containsKey(url))
+	    return;
+	final short[] samples = AudioMixer.convert(data, format);
+	final long size = samples.length * 2;
+	if (size > MAX_CACHE_SIZE)
+	    return;
+	cache.put(url, samples);
+	cacheSize += size;
+	final Iterator<short[]> it = cache.values().iterator();
+	while(cacheSize > MAX_CACHE_SIZE && it.hasNext())
+	{
+	    cacheSize -= it.next().length * 2;
+	    it.remove();
+	}
+    }
+
     private String getFileUrl(String fileName)
     {
 	NullCheck.notNull(fileName, "fileName");
@@ -21,96 +21,66 @@ import java.io.*;
 import java.nio.file.*;
 import javax.sound.sampled.*;
 
+/**
+ * Plays the sounds of the current scheme. All sounds are decoded into
+ * memory in the format of the mixer when the scheme is loaded, so a
+ * sound starts without opening files or lines. The sounds may overlap,
+ * only the oldest one is stopped if too many are playing.
+ */
 class SoundsPlayer
 {
-    static private class Player implements Runnable
-    {
-    private static final int BUF_SIZE = 512;
-
-	private String fileName;
-	private boolean interruptPlayback = false;
-	boolean finished = false;
-private SourceDataLine audioLine = null;
+    //Longer sounds aren't kept in memory
+    static private final int MAX_SOUND_SIZE = 16 * 1024 * 1024;
+    static private final int BUF_SIZE = 8192;
+    static private final int MAX_PLAYING = 4;
 
-	Player(String fileName)
-	{
-	    NullCheck.notEmpty(fileName, "fileName");
-	    this.fileName = fileName;
-	}
+    private final AudioMixer mixer;
+    private final HashMap<Sounds, short[]> sounds = new HashMap<Sounds, short[]>();
+    private final LinkedList<AudioMixer.Voice> playing = new LinkedList<AudioMixer.Voice>();
 
-	@Override public void run()
-	{
-	    try {
-	    try {
-	    final File soundFile = new File(fileName);
-	    if (!soundFile.exists())
-		return;
-	    final AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(soundFile);
-	    final AudioFormat format = audioInputStream.getFormat();
-	    final DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
-	    synchronized (this) {
-		audioLine = (SourceDataLine) AudioSystem.getLine(info);
-		audioLine.open(format);
-		audioLine.start();
-	    }
-	    int bytesRead = 0;
-	    byte[] buf = new byte[BUF_SIZE];
-		while (bytesRead != -1 && !interruptPlayback)
-		{
-		    bytesRead = audioInputStream.read(buf, 0, buf.length);
-		    //		    System.out.println("bytesRead=" + bytesRead);
-		    if (bytesRead >= 0)
-			synchronized (this) {
-			audioLine.write(buf, 0, bytesRead);
-			}
-		}
-		audioLine.drain();
-	}
-	    finally
-	    {
-		if (audioLine != null)
-		audioLine.close();
-		finished = true;
-	    }
-	    }
-	    catch(UnsupportedAudioFileException | IOException | LineUnavailableException e)
-	    {
-		e.printStackTrace();
-	    }
-		}
-
-	void stopPlaying()
-	{
-	    interruptPlayback = true;
-	    if (audioLine != null)
-	    {
-		//		audioLine.flush();
-	    audioLine.stop();
-	    }
-	}
+    SoundsPlayer(AudioMixer mixer)
+    {
+	NullCheck.notNull(mixer, "mixer");
+	this.mixer = mixer;
     }
 
-    private final HashMap<Sounds, String> soundFiles = new HashMap<Sounds, String>();
-    private Player previous;
-
     void play(Sounds sound)
     {
 	if (sound == null)
 	    return;
-	if (!soundFiles.containsKey(sound) || soundFiles.get(sound).isEmpty())
+	final short[] samples;
+	synchronized(sounds) {
+	    samples = sounds.get(sound);
+	}
+	if (samples == null)
 	{
 	    Log.error("core", "no sound for playing:" + sound);
 	    return;
 	}
-	if (previous != null)
-	    previous.stopPlaying();
-	previous = new Player(soundFiles.get(sound));
-	new Thread(previous).start();
+	synchronized(playing) {
+	    removeFinished();
+	    if (playing.size() >= MAX_PLAYING)
+		playing.removeFirst().stop();
+	    final AudioMixer.Voice voice = mixer.play(samples, 1.0f, false, null);
+	    if (voice != null)
+		playing.add(voice);
+	}
     }
 
     boolean finished()
     {
-	return previous == null || previous.finished;
+	synchronized(playing) {
+	    removeFinished();
+	    return playing.isEmpty();
+	}
+    }
+
+    private void removeFinished()
+    {
+	final Iterator<AudioMixer.Voice> it = playing.iterator();
+	while(it.hasNext())
+	    if (it.next().isFinished())
+		it.remove();
     }
 
     void init(Registry registry, Path dataDir)
@@ -118,6 +88,9 @@ private SourceDataLine audioLine = null;
 	NullCheck.notNull(registry, "registry");
 	NullCheck.notNull(dataDir, "dataDir");
 	final Settings.SoundScheme scheme = Settings.createCurrentSoundScheme(registry);
+	synchronized(sounds) {
+	    sounds.clear();
+	}
 	setSoundFile(dataDir, scheme.getEventNotProcessed(""), Sounds.EVENT_NOT_PROCESSED);
 	setSoundFile(dataDir, scheme.getEndOfLine(""), Sounds.END_OF_LINE);
 
@@ -164,12 +137,52 @@ private SourceDataLine audioLine = null;
     private void setSoundFile(Path dataDir, String fileName,
 			      Sounds sound)
     {
-NullCheck.notNull(sound, "sound");
+	NullCheck.notNull(sound, "sound");
 	if (fileName.isEmpty())
 	    return;
 	Path path = Paths.get(fileName);
 	if (!path.isAbsolute())
 	    path = dataDir.resolve(path);
-	soundFiles.put(sound, path.toString());
+	final short[] res = load(path);
+	if (res != null)
+	    synchronized(sounds) {
+		sounds.put(sound, res);
+	    }
     }
+
+    //Returns null if the file can't be decoded
+    static private short[] load(Path path)
+    {
+	if (!Files.exists(path))
+	{
+	    Log.warning("core", "the sound file " + path.toString() + " doesn't exist");
+	    return null;
+	}
+	try (final AudioInputStream fileStream = AudioSystem.getAudioInputStream(path.toFile())) {
+	    AudioInputStream stream = fileStream;
+	    final AudioFormat fileFormat = fileStream.getFormat();
+	    final AudioFormat.Encoding encoding = fileFormat.getEncoding();
+	    //The compressed sounds are decoded to the usual 16-bit samples
+	    if (!encoding.equals(AudioFormat.Encoding.PCM_SIGNED) && !encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED))
+		stream = AudioSystem.getAudioInputStream(new AudioFormat(fileFormat.getSampleRate(), 16, fileFormat.getChannels(), true, false), fileStream);
+	    final ByteArrayOutputStream res = new ByteArrayOutputStream();
+	    final byte[] buf = new byte[BUF_SIZE];
+	    int len;
+	    while((len = stream.read(buf)) >= 0)
+	    {
+		res.write(buf, 0, len);
+		if (res.size() > MAX_SOUND_SIZE)
+		{
+		    Log.error("core", "the sound file " + path.toString() + " is too long, must be less than " + MAX_SOUND_SIZE + " bytes of audio data");
+		    return null;
+		}
+	    }
+	    return AudioMixer.convert(res.toByteArray(), stream.getFormat());
+	}
+	catch(UnsupportedAudioFileException | IOException | IllegalArgumentException e)
+	{
+	    Log.error("core", "unable to load the sound file " + path.toString() + ":" + e.getClass().getName() + ":" + e.getMessage());
+	    return null;
+	}
     }
+}
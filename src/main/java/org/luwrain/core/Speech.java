@@ -24,27 +24,43 @@ class Speech
 {
     static private final String SPEECH_PREFIX = "--speech=";
     static private final String ADD_SPEECH_PREFIX = "--add-speech=";
+    //Enough for several minutes of short phrases
+    static private final long CACHE_CAPACITY = 8 * 1024 * 1024;
+    static private final String CHARS_TO_SKIP_PATH = "/org/luwrain/speech/preprocess-cchars-to-skip";
+    //The symbols the synthesizers usually skip or read differently
+    static private final String DEFAULT_CHARS_TO_NAME = "#$%&*+<=>@\\^_|~";
 
     private final HashMap<String, Factory> factories = new HashMap<String, Factory>();
     private final HashMap<String, Channel> channels = new HashMap<String, Channel>();
+    //Where the channels were loaded from, for creating more instances of them
+    private final HashMap<Channel, String> channelDirs = new HashMap<Channel, String>();
+    private final HashMap<Channel, String> channelArgs = new HashMap<Channel, String>();
     private Channel defaultChannel = null;
+    private SpeechScheduler scheduler = null;
+    private SpeechCache cache = null;
+    private SpeechNormalizer normalizer = null;
     private CmdLine cmdLine;
     private Registry registry;
+    private final AudioMixer mixer;
     private Settings.SpeechParams settings;
     private int pitch = 50;
     private int rate = 50;
 
-    Speech(CmdLine cmdLine, Registry registry)
+    Speech(CmdLine cmdLine, Registry registry, AudioMixer mixer)
     {
 	NullCheck.notNull(cmdLine, "cmdLine");
 	NullCheck.notNull(registry, "registry");
+	NullCheck.notNull(mixer, "mixer");
 	this.cmdLine = cmdLine;
 	this.registry = registry;
+	this.mixer = mixer;
 	settings = Settings.createSpeechParams(registry);
     }
 
-    boolean init()
+    //The chosen language is used for splitting long texts and for naming the characters
+    boolean init(I18n i18n)
     {
+	NullCheck.notNull(i18n, "i18n");
 	final String speechArg = cmdLine.getFirstArg(SPEECH_PREFIX);
 	if (speechArg != null && !speechArg.isEmpty())
 	{
@@ -56,6 +72,7 @@ class Speech
 		return false;
 	    }
 	    channels.put(main.getChannelName(), main);
+	    channelArgs.put(main, speechArg);
 	    final String[] additional = cmdLine.getArgs(ADD_SPEECH_PREFIX);
 	    final LinkedList<Channel> res = new LinkedList<Channel>();
 	    for(String s: additional)
@@ -71,6 +88,7 @@ class Speech
 			return false;
 		    }
 		    channels.put(name, c);
+		    channelArgs.put(c, s);
 		}
 	    }
 	    defaultChannel = main;
@@ -97,31 +115,80 @@ class Speech
 	    rate = 100;
 	defaultChannel.setDefaultRate(rate);
 	defaultChannel.setDefaultPitch(pitch);
+	cache = SpeechCache.create(defaultChannel, CACHE_CAPACITY, newPcmOutput());
+	if (cache != null)
+	    Log.debug("core", "the speech cache is enabled for the channel \'" + defaultChannel.getChannelName() + "\'");
+	normalizer = loadNormalizer(i18n);
+	scheduler = new SpeechScheduler(defaultChannel, cache, i18n.getLocale());
 	return true;
     }
 
-    //Always cancels any previous text to speak
     void speak(String text, int relPitch, int relRate)
+    {
+	speak(text, relPitch, relRate, SpeechScheduler.Priority.ITEM);
+    }
+
+    //Only messages wait for the end of the current speech, anything else cancels it
+    void speak(String text, int relPitch, int relRate, SpeechScheduler.Priority priority)
     {
 	NullCheck.notNull(text, "text");
-	if (defaultChannel == null)
+	NullCheck.notNull(priority, "priority");
+	if (scheduler == null)
 	    return;
-	defaultChannel.speak(text, null, relPitch, relRate, true);
+	scheduler.speak(normalize(text), relPitch, relRate, priority);
+    }
+
+    //For the texts going to the channels directly
+    String normalize(String text)
+    {
+	NullCheck.notNull(text, "text");
+	return normalizer != null?normalizer.normalize(text):text;
+    }
+
+    //The audio of the channels is played through the common mixer
+    PcmOutput newPcmOutput()
+    {
+	return new PcmOutput(mixer);
     }
 
     //Always cancels any previous text to speak
     void speakLetter(char letter, int relPitch, int relRate)
     {
-	if (defaultChannel == null)
+	if (scheduler == null)
 	    return;
-	defaultChannel.speakLetter(letter, null, relPitch, relRate, true);
+	scheduler.speakLetter(letter, relPitch, relRate);
     }
 
     void silence()
     {
-	if (defaultChannel == null)
+	if (scheduler == null)
+	    return;
+	scheduler.silence();
+    }
+
+    //Hints are spoken with the hint pitch, so the audio is prepared with it
+    void warmUpCache(String[] hints)
+    {
+	NullCheck.notNullItems(hints, "hints");
+	if (cache == null)
 	    return;
-	defaultChannel.silence();
+	//The scheduler looks up the cache by the normalized text
+	final String[] normalized = new String[hints.length];
+	for(int i = 0;i < hints.length;++i)
+	    normalized[i] = normalize(hints[i]);
+	cache.warmUp(normalized, Luwrain.PITCH_HINT, 0);
+    }
+
+    //Utterances which were superseded before reaching the speech channel
+    long getDroppedCount()
+    {
+	return scheduler != null?scheduler.getDroppedCount():0;
+    }
+
+    //Utterances joined with the same ones going just before
+    long getMergedCount()
+    {
+	return scheduler != null?scheduler.getMergedCount():0;
     }
 
     int getRate()
@@ -161,6 +228,49 @@ class Speech
 	return getAnyChannelByCond(EnumSet.of(Channel.Features.CAN_SYNTH_TO_SPEAKERS, Channel.Features.CAN_NOTIFY_WHEN_FINISHED));
     }
 
+    //Prefers the channels other than the default one, so that reading doesn't prevent speaking
+    Channel getStreamingChannel()
+    {
+	final Channel res = getAnyChannelByCond(EnumSet.of(Channel.Features.CAN_SYNTH_TO_STREAM));
+	if (res != null)
+	    return res;
+	if (defaultChannel != null && defaultChannel.getFeatures().contains(Channel.Features.CAN_SYNTH_TO_STREAM))
+	    return defaultChannel;
+	return null;
+    }
+
+    /**
+     * Creates new instances of the streaming channel, so that several
+     * texts may be synthesized at the same time. If no new instance can be
+     * created, the streaming channel itself is returned. The channels must
+     * be given back with {@code releaseExportChannels()}.
+     */
+    Channel[] newExportChannels(int count)
+    {
+	final Channel base = getStreamingChannel();
+	if (base == null)
+	    return new Channel[0];
+	final LinkedList<Channel> res = new LinkedList<Channel>();
+	for(int i = 0;i < count;++i)
+	{
+	    final Channel c = newChannelInstance(base);
+	    if (c == null)
+		break;
+	    res.add(c);
+	}
+	if (res.isEmpty())
+	    res.add(base);
+	return res.toArray(new Channel[res.size()]);
+    }
+
+    void releaseExportChannels(Channel[] exportChannels)
+    {
+	NullCheck.notNullItems(exportChannels, "exportChannels");
+	for(Channel c: exportChannels)
+	    if (!channels.containsValue(c))
+		c.close();
+    }
+
     boolean hasReadingChannel()
     {
 	return false;
@@ -285,10 +395,70 @@ class Speech
 		continue;
 	    }
 	    channels.put(channel.getChannelName(), channel);
+	    channelDirs.put(channel, dir);
 	    Log.info("core", "registry speech channel " + name + "(" + dir + ") successfully loaded");
 	}
     }
 
+    private SpeechNormalizer loadNormalizer(I18n i18n)
+    {
+	final Map<String, String> dictionary = loadPronunciations(registry);
+	final String charsToSkip = registry.getTypeOf(CHARS_TO_SKIP_PATH) == Registry.STRING?registry.getString(CHARS_TO_SKIP_PATH):"";
+	final String charsToName = settings.getCharsToName(DEFAULT_CHARS_TO_NAME);
+	Log.debug("core", "" + dictionary.size() + " pronunciation entries loaded");
+	return new SpeechNormalizer(dictionary, charsToSkip, charsToName, (ch)->i18n.hasSpecialNameOfChar(ch), i18n.getLocale());
+    }
+
+    //Returns an empty dictionary if there are no pronunciation entries in the registry
+    static Map<String, String> loadPronunciations(Registry registry)
+    {
+	NullCheck.notNull(registry, "registry");
+	final HashMap<String, String> dictionary = new HashMap<String, String>();
+	final String path = Settings.SPEECH_PRONUNCIATION_PATH;
+	final String[] dirs = registry.getDirectories(path);
+	if (dirs == null)
+	    return dictionary;
+	for(String s: dirs)
+	{
+	    final Settings.PronunciationEntry entry = Settings.createPronunciationEntry(registry, Registry.join(path, s));
+	    final String word = entry.getWord("");
+	    if (word.trim().isEmpty())
+	    {
+		Log.warning("core", "no word in the pronunciation entry " + Registry.join(path, s));
+		continue;
+	    }
+	    dictionary.put(word, entry.getPronunciation(""));
+	}
+	return dictionary;
+    }
+
+    //Returns null if the channel can't be loaded once again
+    private Channel newChannelInstance(Channel channel)
+    {
+	final Channel res;
+	if (channelDirs.containsKey(channel))
+	{
+	    final String dir = channelDirs.get(channel);
+	    final Factory factory = factories.get(Settings.createSpeechChannelBase(registry, dir).getType(""));
+	    if (factory == null)
+		return null;
+	    res = factory.newChannel();
+	    if (res == null || !res.initByRegistry(registry, dir))
+		return null;
+	} else
+	    if (channelArgs.containsKey(channel))
+	    {
+		res = loadChannelByStr(channelArgs.get(channel));
+		if (res == null)
+		    return null;
+	    } else
+		return null;
+	res.setCurrentVoice(channel.getCurrentVoiceName());
+	res.setDefaultPitch(channel.getDefaultPitch());
+	res.setDefaultRate(channel.getDefaultRate());
+	return res;
+    }
+
     private Channel loadChannelByStr(String arg)
     {
 	Log.debug("core", "trying to prepare new speech channel with complete arguments line \'" + arg + "\'");
@@ -0,0 +1,223 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.core;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.ByteArrayOutputStream;
+import javax.sound.sampled.AudioFormat;
+
+import org.luwrain.speech.*;
+
+/**
+ * Keeps the synthesized audio of short frequently spoken phrases (hints,
+ * letters), so that they are played without waiting for the speech
+ * engine. The audio is made with {@code Channel.synth()} in the
+ * background on the first use of a phrase, the least recently used
+ * buffers are removed when the total size exceeds the capacity.
+ */
+class SpeechCache
+{
+    //Longer texts are very unlikely to be repeated
+    static private final int MAX_TEXT_LEN = 64;
+
+    private final Channel channel;
+    private final AudioFormat format;
+    private final long capacity;
+    private final PcmOutput output;
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<Key, byte[]>(16, 0.75f, true);
+    private final Set<Key> synthesizing = new HashSet<Key>();
+    private final ExecutorService synthExecutor;
+    private long size = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    private SpeechCache(Channel channel, AudioFormat format, long capacity, PcmOutput output)
+    {
+	this.channel = channel;
+	this.format = format;
+	this.capacity = capacity;
+	this.output = output;
+	this.synthExecutor = Executors.newSingleThreadExecutor((r)->{
+		final Thread t = new Thread(r, "speech-cache");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	    });
+    }
+
+    //Returns null if the channel can't synthesize to streams
+    static SpeechCache create(Channel channel, long capacity, PcmOutput output)
+    {
+	NullCheck.notNull(channel, "channel");
+	NullCheck.notNull(output, "output");
+	if (capacity <= 0 || !channel.getFeatures().contains(Channel.Features.CAN_SYNTH_TO_STREAM))
+	    return null;
+	final AudioFormat[] formats = channel.getSynthSupportedFormats();
+	if (formats == null || formats.length == 0 || formats[0] == null)
+	    return null;
+	return new SpeechCache(channel, formats[0], capacity, output);
+    }
+
+    static boolean isCacheable(String text)
+    {
+	return text != null && !text.trim().isEmpty() && text.length() <= MAX_TEXT_LEN;
+    }
+
+    /**
+     * Plays the text from the cache. If there is no audio for it yet, it
+     * is prepared in the background and the method returns false, so the
+     * text must be spoken by the channel as usual. The same if the audio
+     * can't be played.
+     */
+    boolean play(String text, int relPitch, int relRate, Runnable onFinished)
+    {
+	NullCheck.notNull(text, "text");
+	if (!isCacheable(text))
+	    return false;
+	final Key key = createKey(text, relPitch, relRate);
+	final byte[] data;
+	synchronized(this) {
+	    data = entries.get(key);
+	    if (data == null)
+	    {
+		++missCount;
+		synthLater(key);
+		return false;
+	    }
+	}
+	if (!output.play(data, format, onFinished))
+	    return false;
+	synchronized(this) {
+	    ++hitCount;
+	}
+	return true;
+    }
+
+    void stop()
+    {
+	output.stop();
+    }
+
+    //Prepares the audio for the phrases in advance
+    void warmUp(String[] phrases, int relPitch, int relRate)
+    {
+	NullCheck.notNullItems(phrases, "phrases");
+	for(String p: phrases)
+	    if (isCacheable(p))
+		synchronized(this) {
+		    final Key key = createKey(p, relPitch, relRate);
+		    if (!entries.containsKey(key))
+			synthLater(key);
+		}
+    }
+
+    synchronized long getHitCount()
+    {
+	return hitCount;
+    }
+
+    synchronized long getMissCount()
+    {
+	return missCount;
+    }
+
+    synchronized long getSize()
+    {
+	return size;
+    }
+
+    //True while any audio is being prepared for the cache
+    synchronized boolean isSynthesizing()
+    {
+	return !synthesizing.isEmpty();
+    }
+
+    private void synthLater(Key key)
+    {
+	if (synthesizing.contains(key))
+	    return;
+	synthesizing.add(key);
+	synthExecutor.execute(()->synth(key));
+    }
+
+    private void synth(Key key)
+    {
+	final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	boolean res = false;
+	try {
+	    res = channel.synth(key.text, key.pitch, key.rate, format, stream);
+	}
+	catch(Exception e)
+	{
+	    Log.error("core", "unable to synthesize \'" + key.text + "\' for the speech cache:" + e.getClass().getName() + ":" + e.getMessage());
+	}
+	final byte[] data = stream.toByteArray();
+	synchronized(this) {
+	    synthesizing.remove(key);
+	    if (!res || data.length == 0 || data.length > capacity)
+		return;
+	    final byte[] old = entries.put(key, data);
+	    if (old != null)
+		size -= old.length;
+	    size += data.length;
+	    final Iterator<byte[]> it = entries.values().iterator();
+	    while(size > capacity && it.hasNext())
+	    {
+		size -= it.next().length;
+		it.remove();
+	    }
+	}
+    }
+
+    //Pitch and rate are absolute, so changing the defaults doesn't return the old audio
+    private Key createKey(String text, int relPitch, int relRate)
+    {
+	return new Key(text, channel.getCurrentVoiceName(),
+		       Channel.adjustParamValue(channel.getDefaultPitch() + relPitch),
+		       Channel.adjustParamValue(channel.getDefaultRate() + relRate));
+    }
+
+    static private final class Key
+    {
+	final String text;
+	final String voice;
+	final int pitch;
+	final int rate;
+
+	Key(String text, String voice, int pitch, int rate)
+	{
+	    this.text = text;
+	    this.voice = voice != null?voice:"";
+	    this.pitch = pitch;
+	    this.rate = rate;
+	}
+
+	@Override public boolean equals(Object o)
+	{
+	    if (!(o instanceof Key))
+		return false;
+	    final Key k = (Key)o;
+	    return pitch == k.pitch && rate == k.rate && text.equals(k.text) && voice.equals(k.voice);
+	}
+
+	@Override public int hashCode()
+	{
+	    return ((text.hashCode() * 31 + voice.hashCode()) * 31 + pitch) * 31 + rate;
+	}
+    }
+}
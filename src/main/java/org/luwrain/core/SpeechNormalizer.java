@@ -0,0 +1,408 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.core;
+
+import java.util.*;
+
+/**
+ * Prepares the text for the speech channel. The user pronunciation
+ * dictionary, the characters to be named and the characters to be
+ * skipped are compiled into one Aho-Corasick automaton, so the text is
+ * processed in a single pass without any regular expressions. The
+ * leftmost match wins, the longest one if there are several at the same
+ * position. The words of the dictionary are matched without the case and
+ * only as whole words. The numbers in the text between the matches lose
+ * their group separators, and the very long ones are split into groups
+ * of digits, since the synthesizers read them badly. Short texts are
+ * kept normalized in the cache, as the same items and hints are spoken
+ * again and again.
+ */
+class SpeechNormalizer
+{
+    static private final int CACHE_MAX_ENTRIES = 512;
+    static private final int CACHE_MAX_TEXT_LEN = 256;
+    //Longer numbers are spoken by groups of digits
+    static private final int MAX_NUMBER_LENGTH = 12;
+    static private final int DIGITS_GROUP = 3;
+    //The separators of digit groups used in any language
+    static private final String GROUP_SEPARATORS = "\u00a0\u2009\u202f";
+
+    interface CharNames
+    {
+	//Returns null if the character has no special name
+	String getNameOfChar(char ch);
+    }
+
+    static private final class Replacement
+    {
+	final String pattern;
+	final String value;
+	//Must not be a part of a longer word
+	final boolean wholeWord;
+	//The following same characters are replaced too
+	final boolean collapseRun;
+
+	Replacement(String pattern, String value, boolean wholeWord, boolean collapseRun)
+	{
+	    this.pattern = pattern;
+	    this.value = value;
+	    this.wholeWord = wholeWord;
+	    this.collapseRun = collapseRun;
+	}
+    }
+
+    //The states of the automaton are the indices in the arrays below
+    private char[][] transChars;
+    private int[][] transStates;
+    private int[] failure;
+    private int[] depth;
+    //The replacement accepted in the state, null if there is no such one
+    private Replacement[] accepted;
+    //The nearest state by the failure links with the accepted replacement, -1 if there is no such one
+    private int[] outputLink;
+
+    private final boolean commaGroups;
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<String, String>(16, 0.75f, true){
+	    @Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+	    {
+		return size() > CACHE_MAX_ENTRIES;
+	    }
+	};
+    private long cacheHits = 0;
+
+    /**
+     * @param dictionary The words with their pronunciations
+     * @param charsToSkip The characters to be removed from the text
+     * @param charsToName The characters to be replaced with their names
+     * @param charNames The names of the characters
+     * @param locale The locale of the text, defines whether commas separate digit groups
+     */
+    SpeechNormalizer(Map<String, String> dictionary, String charsToSkip, String charsToName,
+		     CharNames charNames, Locale locale)
+    {
+	NullCheck.notNull(dictionary, "dictionary");
+	NullCheck.notNull(charsToSkip, "charsToSkip");
+	NullCheck.notNull(charsToName, "charsToName");
+	NullCheck.notNull(charNames, "charNames");
+	NullCheck.notNull(locale, "locale");
+	this.commaGroups = locale.getLanguage().equals("en");
+	final LinkedHashMap<String, Replacement> replacements = new LinkedHashMap<String, Replacement>();
+	for(int i = 0;i < charsToName.length();++i)
+	{
+	    final char ch = charsToName.charAt(i);
+	    final String name = charNames.getNameOfChar(ch);
+	    if (name != null && !name.trim().isEmpty())
+		replacements.put(lowerCase("" + ch), new Replacement(lowerCase("" + ch), " " + name.trim() + " ", false, true));
+	}
+	for(int i = 0;i < charsToSkip.length();++i)
+	{
+	    final String ch = lowerCase(charsToSkip.substring(i, i + 1));
+	    replacements.put(ch, new Replacement(ch, "", false, false));
+	}
+	//The user dictionary overrides anything else
+	for(Map.Entry<String, String> e: dictionary.entrySet())
+	{
+	    final String word = lowerCase(e.getKey().trim());
+	    if (word.isEmpty() || e.getValue() == null)
+		continue;
+	    replacements.put(word, new Replacement(word, e.getValue(), true, false));
+	}
+	build(replacements.values());
+    }
+
+    String normalize(String text)
+    {
+	NullCheck.notNull(text, "text");
+	if (text.isEmpty())
+	    return text;
+	if (text.length() > CACHE_MAX_TEXT_LEN)
+	    return process(text);
+	synchronized(cache) {
+	    final String res = cache.get(text);
+	    if (res != null)
+	    {
+		++cacheHits;
+		return res;
+	    }
+	}
+	final String res = process(text);
+	synchronized(cache) {
+	    cache.put(text, res);
+	}
+	return res;
+    }
+
+    long getCacheHitCount()
+    {
+	synchronized(cache) {
+	    return cacheHits;
+	}
+    }
+
+    private String process(String text)
+    {
+	final StringBuilder b = new StringBuilder(text.length() + 16);
+	//The beginning of the text not copied yet
+	int copied = 0;
+	int state = 0;
+	//The best match found since the last restart
+	Replacement match = null;
+	int matchStart = -1;
+	int pos = 0;
+	while(true)
+	{
+	    final boolean textEnd = pos >= text.length();
+	    if (!textEnd)
+	    {
+		state = step(state, Character.toLowerCase(text.charAt(pos)));
+		++pos;
+	    }
+	    //No match beginning at or before the found one may appear further
+	    if (match != null && (textEnd || pos - depth[state] > matchStart))
+	    {
+		appendPlain(b, text, copied, matchStart);
+		b.append(match.value);
+		copied = matchStart + match.pattern.length();
+		if (match.collapseRun)
+		    copied = skipRun(text, copied, match.pattern.charAt(0));
+		//The characters after the match are scanned again, but not more than the length of the longest pattern
+		pos = copied;
+		state = 0;
+		match = null;
+		continue;
+	    }
+	    if (textEnd)
+		break;
+	    //The output links go from the longest replacements to the shortest ones
+	    for(int s = accepted[state] != null?state:outputLink[state];s >= 0;s = outputLink[s])
+	    {
+		final Replacement r = accepted[s];
+		final int start = pos - r.pattern.length();
+		//The match found later at the same position is longer
+		if (match != null && start > matchStart)
+		    break;
+		if (start < copied || (r.wholeWord && !isWholeWord(text, start, pos)))
+		    continue;
+		match = r;
+		matchStart = start;
+		break;
+	    }
+	}
+	appendPlain(b, text, copied, text.length());
+	return new String(b);
+    }
+
+    private int step(int state, char ch)
+    {
+	while(true)
+	{
+	    final int next = findTrans(state, ch);
+	    if (next >= 0)
+		return next;
+	    if (state == 0)
+		return 0;
+	    state = failure[state];
+	}
+    }
+
+    private int findTrans(int state, char ch)
+    {
+	final char[] chars = transChars[state];
+	final int index = Arrays.binarySearch(chars, ch);
+	return index >= 0?transStates[state][index]:-1;
+    }
+
+    //Copies the text without matches, handling the numbers
+    private void appendPlain(StringBuilder b, String text, int from, int to)
+    {
+	int i = from;
+	while(i < to)
+	{
+	    final char ch = text.charAt(i);
+	    if (!isDigit(ch) || (i > 0 && isDigit(text.charAt(i - 1))))
+	    {
+		b.append(ch);
+		++i;
+		continue;
+	    }
+	    i = appendNumber(b, text, i, to);
+	}
+    }
+
+    //Returns the position after the number
+    private int appendNumber(StringBuilder b, String text, int from, int to)
+    {
+	final StringBuilder digits = new StringBuilder();
+	int i = from;
+	int groupLen = 0;
+	while(i < to)
+	{
+	    final char ch = text.charAt(i);
+	    if (isDigit(ch))
+	    {
+		digits.append(ch);
+		++groupLen;
+		++i;
+		continue;
+	    }
+	    //The separator is accepted only before a group of three digits, which follows a group of the same size or the leading one
+	    final boolean groupComplete = digits.length() == groupLen?groupLen <= DIGITS_GROUP:groupLen == DIGITS_GROUP;
+	    if (!isGroupSeparator(ch) || !groupComplete || !isDigitsGroup(text, i + 1, to))
+		break;
+	    groupLen = 0;
+	    ++i;
+	}
+	if (digits.length() <= MAX_NUMBER_LENGTH)
+	{
+	    b.append(digits);
+	    return i;
+	}
+	for(int k = 0;k < digits.length();++k)
+	{
+	    if (k > 0 && k % DIGITS_GROUP == 0)
+		b.append(' ');
+	    b.append(digits.charAt(k));
+	}
+	return i;
+    }
+
+    private boolean isDigitsGroup(String text, int from, int to)
+    {
+	if (from + DIGITS_GROUP > to)
+	    return false;
+	for(int i = from;i < from + DIGITS_GROUP;++i)
+	    if (!isDigit(text.charAt(i)))
+		return false;
+	return from + DIGITS_GROUP == to || !isDigit(text.charAt(from + DIGITS_GROUP));
+    }
+
+    private boolean isGroupSeparator(char ch)
+    {
+	return GROUP_SEPARATORS.indexOf(ch) >= 0 || (commaGroups && ch == ',');
+    }
+
+    private void build(Collection<Replacement> replacements)
+    {
+	final ArrayList<TreeMap<Character, Integer>> trans = new ArrayList<TreeMap<Character, Integer>>();
+	final ArrayList<Replacement> acc = new ArrayList<Replacement>();
+	final ArrayList<Integer> depths = new ArrayList<Integer>();
+	trans.add(new TreeMap<Character, Integer>());
+	acc.add(null);
+	depths.add(0);
+	for(Replacement r: replacements)
+	{
+	    int state = 0;
+	    for(int i = 0;i < r.pattern.length();++i)
+	    {
+		final Character ch = r.pattern.charAt(i);
+		Integer next = trans.get(state).get(ch);
+		if (next == null)
+		{
+		    next = trans.size();
+		    trans.add(new TreeMap<Character, Integer>());
+		    acc.add(null);
+		    depths.add(i + 1);
+		    trans.get(state).put(ch, next);
+		}
+		state = next.intValue();
+	    }
+	    acc.set(state, r);
+	}
+	final int count = trans.size();
+	transChars = new char[count][];
+	transStates = new int[count][];
+	failure = new int[count];
+	depth = new int[count];
+	accepted = acc.toArray(new Replacement[count]);
+	outputLink = new int[count];
+	for(int i = 0;i < count;++i)
+	{
+	    final TreeMap<Character, Integer> t = trans.get(i);
+	    transChars[i] = new char[t.size()];
+	    transStates[i] = new int[t.size()];
+	    int k = 0;
+	    for(Map.Entry<Character, Integer> e: t.entrySet())
+	    {
+		transChars[i][k] = e.getKey().charValue();
+		transStates[i][k] = e.getValue().intValue();
+		++k;
+	    }
+	    depth[i] = depths.get(i).intValue();
+	}
+	//The failure links by the breadth-first traversal
+	final LinkedList<Integer> queue = new LinkedList<Integer>();
+	failure[0] = 0;
+	outputLink[0] = -1;
+	for(int s: transStates[0])
+	{
+	    failure[s] = 0;
+	    outputLink[s] = -1;
+	    queue.add(s);
+	}
+	while(!queue.isEmpty())
+	{
+	    final int state = queue.removeFirst().intValue();
+	    for(int i = 0;i < transChars[state].length;++i)
+	    {
+		final char ch = transChars[state][i];
+		final int next = transStates[state][i];
+		int f = failure[state];
+		while(f != 0 && findTrans(f, ch) < 0)
+		    f = failure[f];
+		final int t = findTrans(f, ch);
+		failure[next] = (t >= 0 && t != next)?t:0;
+		outputLink[next] = accepted[failure[next]] != null?failure[next]:outputLink[failure[next]];
+		queue.add(next);
+	    }
+	}
+    }
+
+    static private boolean isWholeWord(String text, int from, int to)
+    {
+	if (isWordChar(text.charAt(from)) && from > 0 && isWordChar(text.charAt(from - 1)))
+	    return false;
+	if (isWordChar(text.charAt(to - 1)) && to < text.length() && isWordChar(text.charAt(to)))
+	    return false;
+	return true;
+    }
+
+    static private int skipRun(String text, int pos, char ch)
+    {
+	int i = pos;
+	while(i < text.length() && text.charAt(i) == ch)
+	    ++i;
+	return i;
+    }
+
+    static private boolean isWordChar(char ch)
+    {
+	return Character.isLetterOrDigit(ch);
+    }
+
+    static private boolean isDigit(char ch)
+    {
+	return ch >= '0' && ch <= '9';
+    }
+
+    static private String lowerCase(String s)
+    {
+	final StringBuilder b = new StringBuilder();
+	for(int i = 0;i < s.length();++i)
+	    b.append(Character.toLowerCase(s.charAt(i)));
+	return new String(b);
+    }
+}
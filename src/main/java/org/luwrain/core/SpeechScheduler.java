@@ -0,0 +1,445 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.core;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.luwrain.speech.*;
+import org.luwrain.util.SentenceSegmenter;
+
+/**
+ * Decides which utterances really reach the speech channel. Interrupting
+ * utterances cancel the previous speech, but the ones following each
+ * other faster than the debounce window of their priority are kept
+ * pending and only the last of them is spoken at the end of the
+ * window. Non-interrupting utterances (messages) wait until the current
+ * speech is finished, if the channel is able to notify about it, and
+ * are dropped as stale if anything interrupting comes before. Letters
+ * and hints are played from the speech cache, if it has their audio.
+ * Long texts are given to the channel by sentences, so that the speech
+ * starts without waiting for the synthesis of the whole text.
+ */
+class SpeechScheduler
+{
+    enum Priority {
+	//Echo of typed or navigated characters, never delayed
+	LETTER(0, true),
+	//Announcements of the items while navigating
+	ITEM(40, true),
+	//Messages, spoken after the current speech
+	MESSAGE(100, false),
+	HINT(40, true);
+
+	final long window;
+	final boolean interrupts;
+
+	Priority(long window, boolean interrupts)
+	{
+	    this.window = window;
+	    this.interrupts = interrupts;
+	}
+    };
+
+    static private final int MAX_QUEUE_SIZE = 16;
+    //Queued messages older than this are not spoken at all
+    static private final long MAX_MESSAGE_AGE = 10000;
+    //Longer texts are split into chunks of this length at most
+    static private final int CHUNK_LENGTH = 160;
+    //How many chunks are given to the channel before the previous ones are finished
+    static private final int CHUNKS_AHEAD = 2;
+
+    private final Channel channel;
+    private final SpeechCache cache;
+    private final Locale locale;
+    private final boolean canNotify;
+    private final ScheduledExecutorService executor;
+    private final Channel.Listener listener;
+
+    private Utterance pending = null;
+    private ScheduledFuture<?> pendingFuture = null;
+    private final LinkedList<Utterance> queue = new LinkedList<Utterance>();
+    private Utterance last = null;
+    private long lastTime = 0;
+    //Long.MIN_VALUE means nothing interrupting was sent yet
+    private long lastInterruptingTime = Long.MIN_VALUE;
+    //The texts given to the channel and not finished yet, only if the channel notifies about finishing
+    private final LinkedList<Long> speakingIds = new LinkedList<Long>();
+    //The rest of the long text being spoken, null if there is no such text
+    private TextChunks chunks = null;
+    //The same for the audio played from the cache
+    private long cachePlaybackId = -1;
+    private long cachePlaybackCount = 0;
+
+    private long submittedCount = 0;
+    private long droppedCount = 0;
+    private long mergedCount = 0;
+
+    SpeechScheduler(Channel channel)
+    {
+	this(channel, null, Locale.getDefault());
+    }
+
+    //cache may be null
+    SpeechScheduler(Channel channel, SpeechCache cache, Locale locale)
+    {
+	NullCheck.notNull(channel, "channel");
+	NullCheck.notNull(locale, "locale");
+	this.channel = channel;
+	this.cache = cache;
+	this.locale = locale;
+	this.canNotify = channel.getFeatures().contains(Channel.Features.CAN_NOTIFY_WHEN_FINISHED);
+	this.executor = Executors.newSingleThreadScheduledExecutor((r)->{
+		final Thread t = new Thread(r, "speech-scheduler");
+		t.setDaemon(true);
+		return t;
+	    });
+	//The channel may call it on any thread, so it mustn't wait for our lock
+	this.listener = (id)->executor.execute(()->onFinished(id));
+    }
+
+    void speak(String text, int relPitch, int relRate, Priority priority)
+    {
+	NullCheck.notNull(text, "text");
+	NullCheck.notNull(priority, "priority");
+	schedule(new Utterance(text, '\0', relPitch, relRate, priority));
+    }
+
+    void speakLetter(char letter, int relPitch, int relRate)
+    {
+	schedule(new Utterance(null, letter, relPitch, relRate, Priority.LETTER));
+    }
+
+    synchronized void silence()
+    {
+	if (pending != null)
+	    dropPending();
+	dropQueue();
+	speakingIds.clear();
+	chunks = null;
+	cachePlaybackId = -1;
+	if (cache != null)
+	    cache.stop();
+	channel.silence();
+    }
+
+    synchronized long getSubmittedCount()
+    {
+	return submittedCount;
+    }
+
+    //Utterances which never reached the channel
+    synchronized long getDroppedCount()
+    {
+	return droppedCount;
+    }
+
+    //Utterances joined with the same ones going just before
+    synchronized long getMergedCount()
+    {
+	return mergedCount;
+    }
+
+    private synchronized void schedule(Utterance u)
+    {
+	final long now = now();
+	if (!u.priority.interrupts)
+	{
+	    enqueue(u, now);
+	    return;
+	}
+	//Anything interrupting makes queued messages stale
+	dropQueue();
+	if (pending != null)
+	{
+	    if (pending.sameAs(u))
+	    {
+		++mergedCount;
+		return;
+	    }
+	    dropPending();
+	}
+	if (last != null && last.sameAs(u) && now - lastTime < u.priority.window)
+	{
+	    ++mergedCount;
+	    return;
+	}
+	final long wait = lastInterruptingTime != Long.MIN_VALUE?lastInterruptingTime + u.priority.window - now:0;
+	if (wait <= 0)
+	{
+	    send(u, true, now);
+	    return;
+	}
+	pending = u;
+	pendingFuture = executor.schedule(()->flushPending(), wait, TimeUnit.MILLISECONDS);
+    }
+
+    private void enqueue(Utterance u, long now)
+    {
+	if (!queue.isEmpty() && queue.getLast().sameAs(u))
+	{
+	    ++mergedCount;
+	    return;
+	}
+	if (pending == null && queue.isEmpty() && !isSpeaking())
+	{
+	    if (last != null && last.sameAs(u) && now - lastTime < u.priority.window)
+	    {
+		++mergedCount;
+		return;
+	    }
+	    send(u, false, now);
+	    return;
+	}
+	queue.add(u);
+	if (queue.size() > MAX_QUEUE_SIZE)
+	{
+	    queue.removeFirst();
+	    ++droppedCount;
+	}
+    }
+
+    private synchronized void flushPending()
+    {
+	if (pending == null)
+	    return;
+	final Utterance u = pending;
+	pending = null;
+	pendingFuture = null;
+	send(u, true, now());
+	//Without notifications the channel queues the messages itself
+	if (!canNotify && cachePlaybackId < 0)
+	    sendQueued();
+    }
+
+    private synchronized void onFinished(long id)
+    {
+	if (!speakingIds.remove(Long.valueOf(id)))
+	    return;
+	while(chunks != null && speakingIds.size() < CHUNKS_AHEAD)
+	    sendChunk(false);
+	if (pending == null && !isSpeaking())
+	    sendQueued();
+    }
+
+    private boolean isSpeaking()
+    {
+	return !speakingIds.isEmpty() || chunks != null || cachePlaybackId >= 0;
+    }
+
+    private synchronized void onCachePlaybackFinished(long id)
+    {
+	if (id != cachePlaybackId)
+	    return;
+	cachePlaybackId = -1;
+	if (pending == null)
+	    sendQueued();
+    }
+
+    private void sendQueued()
+    {
+	final long now = now();
+	while(!queue.isEmpty())
+	{
+	    final Utterance u = queue.removeFirst();
+	    if (now - u.time > MAX_MESSAGE_AGE)
+	    {
+		++droppedCount;
+		continue;
+	    }
+	    send(u, false, now);
+	    //Without notifications everything goes to the channel at once
+	    if (canNotify)
+		return;
+	}
+    }
+
+    private void send(Utterance u, boolean cancelPrevious, long now)
+    {
+	++submittedCount;
+	last = u;
+	lastTime = now;
+	if (cancelPrevious)
+	{
+	    lastInterruptingTime = now;
+	    speakingIds.clear();
+	    chunks = null;
+	    if (cache != null)
+	    {
+		if (sendFromCache(u))
+		    return;
+		cache.stop();
+		cachePlaybackId = -1;
+	    }
+	}
+	if (u.text == null)
+	{
+	    onSubmitted(channel.speakLetter(u.letter, canNotify?listener:null, u.relPitch, u.relRate, cancelPrevious));
+	    return;
+	}
+	if (u.text.length() <= CHUNK_LENGTH)
+	{
+	    onSubmitted(channel.speak(u.text, canNotify?listener:null, u.relPitch, u.relRate, cancelPrevious));
+	    return;
+	}
+	chunks = new TextChunks(u, locale);
+	sendChunk(cancelPrevious);
+	if (canNotify)
+	{
+	    while(chunks != null && speakingIds.size() < CHUNKS_AHEAD)
+		sendChunk(false);
+	    return;
+	}
+	//Nothing tells when to give the next chunks, so the channel gets the rest of the text at once
+	for(int i = 1;i < CHUNKS_AHEAD && chunks != null;++i)
+	    sendChunk(false);
+	if (chunks == null)
+	    return;
+	final String rest = chunks.rest();
+	chunks = null;
+	if (!rest.trim().isEmpty())
+	    channel.speak(rest, null, u.relPitch, u.relRate, false);
+    }
+
+    private void sendChunk(boolean cancelPrevious)
+    {
+	final String text = chunks.next();
+	if (text == null)
+	{
+	    chunks = null;
+	    return;
+	}
+	onSubmitted(channel.speak(text, canNotify?listener:null, chunks.relPitch, chunks.relRate, cancelPrevious));
+    }
+
+    private void onSubmitted(long id)
+    {
+	if (canNotify && id >= 0)
+	    speakingIds.add(id);
+    }
+
+    private boolean sendFromCache(Utterance u)
+    {
+	if (u.priority != Priority.LETTER && u.priority != Priority.HINT)
+	    return false;
+	final long id = ++cachePlaybackCount;
+	final String text = u.text != null?u.text:String.valueOf(u.letter);
+	if (!cache.play(text, u.relPitch, u.relRate, ()->executor.execute(()->onCachePlaybackFinished(id))))
+	    return false;
+	cachePlaybackId = id;
+	channel.silence();
+	return true;
+    }
+
+    private void dropPending()
+    {
+	if (pendingFuture != null)
+	    pendingFuture.cancel(false);
+	pending = null;
+	pendingFuture = null;
+	++droppedCount;
+    }
+
+    private void dropQueue()
+    {
+	droppedCount += queue.size();
+	queue.clear();
+    }
+
+    static private final class TextChunks
+    {
+	final String[] lines;
+	final SentenceSegmenter segmenter;
+	final int relPitch;
+	final int relRate;
+	private int restX = 0;
+	private int restY = 0;
+
+	TextChunks(Utterance u, Locale locale)
+	{
+	    this.lines = u.text.split("\n", -1);
+	    this.relPitch = u.relPitch;
+	    this.relRate = u.relRate;
+	    this.segmenter = new SentenceSegmenter(new Lines(){
+		    @Override public int getLineCount()
+		    {
+			return lines.length;
+		    }
+		    @Override public String getLine(int index)
+		    {
+			return lines[index];
+		    }
+		}, locale, CHUNK_LENGTH, 0, 0);
+	}
+
+	//Returns null if there are no more chunks
+	String next()
+	{
+	    final SentenceSegmenter.Segment seg = segmenter.next();
+	    if (seg == null)
+		return null;
+	    restX = seg.toX;
+	    restY = seg.toY;
+	    return seg.text;
+	}
+
+	//The text after the last returned chunk
+	String rest()
+	{
+	    if (restY >= lines.length)
+		return "";
+	    final StringBuilder b = new StringBuilder();
+	    b.append(lines[restY].substring(Math.min(restX, lines[restY].length())));
+	    for(int i = restY + 1;i < lines.length;++i)
+		b.append("\n").append(lines[i]);
+	    return new String(b);
+	}
+    }
+
+    static private long now()
+    {
+	return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    static private final class Utterance
+    {
+	final String text;
+	final char letter;
+	final int relPitch;
+	final int relRate;
+	final Priority priority;
+	final long time = now();
+
+	Utterance(String text, char letter, int relPitch, int relRate, Priority priority)
+	{
+	    this.text = text;
+	    this.letter = letter;
+	    this.relPitch = relPitch;
+	    this.relRate = relRate;
+	    this.priority = priority;
+	}
+
+	boolean sameAs(Utterance u)
+	{
+	    if (relPitch != u.relPitch || relRate != u.relRate)
+		return false;
+	    if (text == null || u.text == null)
+		return text == null && u.text == null && letter == u.letter;
+	    return text.equals(u.text);
+	}
+    }
+}
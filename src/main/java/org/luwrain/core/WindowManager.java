@@ -16,6 +16,8 @@
 
 package org.luwrain.core;
 
+import java.util.*;
+
 import org.luwrain.base.*;
 
 class WindowManager 
@@ -28,6 +30,18 @@ class WindowManager
     private ScreenContentManager screenContentManager;
     private Object[] visibleObjs = null;
 
+    //The screen content being composed and the content actually shown
+    private ScreenBuffer frame = null;
+    private ScreenBuffer shown = null;
+    private final List<Divider> dividers = new ArrayList<Divider>();
+    private final List<Divider> shownDividers = new ArrayList<Divider>();
+
+    //Redrawing requests collected during processing of one event
+    private final Set<Area> dirtyAreas = Collections.newSetFromMap(new IdentityHashMap<Area, Boolean>());
+    private boolean redrawAllPending = false;
+    private long redrawRequests = 0;
+    private long redrawsPerformed = 0;
+
     WindowManager(Interaction interaction, ScreenContentManager screenContentManager)
     {
 	this.interaction = interaction;
@@ -38,15 +52,99 @@ class WindowManager
 	    throw new NullPointerException("screenContentManager may not be null");
     }
 
+    /**
+     * Schedules redrawing of the entire screen. Nothing is drawn until
+     * {@code flush()} is called.
+     *
+     * @return True if there were no pending redrawing requests before this call
+     */
+    synchronized boolean invalidate()
+    {
+	++redrawRequests;
+	final boolean wasClean = !redrawAllPending && dirtyAreas.isEmpty();
+	redrawAllPending = true;
+	dirtyAreas.clear();
+	return wasClean;
+    }
+
+    /**
+     * Schedules redrawing of the window of the particular area. Nothing is
+     * drawn until {@code flush()} is called.
+     *
+     * @return True if there were no pending redrawing requests before this call
+     */
+    synchronized boolean invalidateArea(Area area)
+    {
+	NullCheck.notNull(area, "area");
+	++redrawRequests;
+	final boolean wasClean = !redrawAllPending && dirtyAreas.isEmpty();
+	if (!redrawAllPending)
+	    dirtyAreas.add(area);
+	return wasClean;
+    }
+
+    /**
+     * Performs all redrawing scheduled since the previous call. Each area
+     * is redrawn only once regardless of the number of requests for it, and
+     * nothing except the entire screen is redrawn if a redrawing of the
+     * entire screen has been requested.
+     */
+    void flush()
+    {
+	final boolean redrawAll;
+	final Area[] areas;
+	synchronized(this) {
+	    if (!redrawAllPending && dirtyAreas.isEmpty())
+		return;
+	    redrawAll = redrawAllPending;
+	    areas = dirtyAreas.toArray(new Area[dirtyAreas.size()]);
+	    redrawAllPending = false;
+	    dirtyAreas.clear();
+	    redrawsPerformed += redrawAll?1:areas.length;
+	}
+	if (redrawAll)
+	{
+	    redraw();
+	    return;
+	}
+	for(Area a: areas)
+	    redrawArea(a);
+    }
+
+    synchronized long getRedrawRequests()
+    {
+	return redrawRequests;
+    }
+
+    synchronized long getRedrawsPerformed()
+    {
+	return redrawsPerformed;
+    }
+
+    //The number of redrawing requests which were satisfied by other ones without additional drawing
+    synchronized long getRedrawsSaved()
+    {
+	return redrawRequests - redrawsPerformed;
+    }
+
     void redraw()
     {
 	final TileManager windows = screenContentManager.getWindows();
 	if (windows == null)
 	    return;
+	final int width = interaction.getWidthInCharacters();
+	final int height = interaction.getHeightInCharacters();
+	final boolean sizeChanged = frame == null || !frame.hasSize(width, height);
+	if (sizeChanged)
+	{
+	    frame = new ScreenBuffer(width, height);
+	    shown = new ScreenBuffer(width, height);
+	} else
+	    frame.clear();
+	dividers.clear();
 	interaction.startDrawSession();
-	interaction.clearRect(0, 1, interaction.getWidthInCharacters() - 1, interaction.getHeightInCharacters() - 1);//FIXME:interaction.getHeightInCharacters() - 2;
 	interaction.setHotPoint(-1, -1);
-	calculateGeom(interaction.getWidthInCharacters(), interaction.getHeightInCharacters(), windows);
+	calculateGeom(width, height, windows);
 	visibleObjs = windows.getObjects();
 	for(int i = 0;i < visibleObjs.length;i++)
 	{
@@ -54,12 +152,25 @@ class WindowManager
 	    if (win != null && win.area != null)
 		drawWindow(win);
 	}
+	if (sizeChanged || !dividers.equals(shownDividers))
+	{
+	    //The layout is changed, there is nothing to compare with
+	    interaction.clearRect(0, 1, width - 1, height - 1);//FIXME:interaction.getHeightInCharacters() - 2;
+	    for(Divider d: dividers)
+		d.draw(interaction);
+	    frame.drawRect(interaction, 0, 1, width - 1, height - 1);
+	    shown.copyFrom(frame);
+	    shownDividers.clear();
+	    shownDividers.addAll(dividers);
+	} else
+	    frame.drawDiff(interaction, shown, 0, 1, width - 1, height - 2);
 	interaction.endDrawSession();
     }
 
     void redrawArea(Area area)
     {
-	if (visibleObjs == null || visibleObjs.length == 0)
+	if (visibleObjs == null || visibleObjs.length == 0 ||
+	    frame == null || !frame.hasSize(interaction.getWidthInCharacters(), interaction.getHeightInCharacters()))
 	{
 	    redraw();
 	    return;
@@ -72,8 +183,9 @@ class WindowManager
 		win.area == area)
 	    {
 		interaction.startDrawSession();
-		interaction.clearRect(win.x, win.y, win.x + win.width - 1, win.y + win.height - 1);
+		frame.clearRect(win.x, win.y, win.x + win.width - 1, win.y + win.height - 1);
 		drawWindow(win);
+		frame.drawDiff(interaction, shown, win.x, win.y, win.x + win.width - 1, win.y + win.height - 1);
 		interaction.endDrawSession();
 		return;
 	    }
@@ -82,6 +194,7 @@ class WindowManager
 
     int getAreaVisibleHeight(Area area)
     {
+	flushLayout();
 	if (visibleObjs == null || visibleObjs.length == 0)
 	    return -1;
 	for(int i = 0;i < visibleObjs.length;i++)
@@ -98,6 +211,7 @@ class WindowManager
 
     int getAreaVisibleWidth(Area area)
     {
+	flushLayout();
 	if (visibleObjs == null || visibleObjs.length == 0)
 	    return -1;
 	for(int i = 0;i < visibleObjs.length;i++)
@@ -113,6 +227,17 @@ class WindowManager
     }
 
 
+    //The geometry of windows must be actual, if somebody asks about it
+    private void flushLayout()
+    {
+	final boolean redrawAll;
+	synchronized(this) {
+	    redrawAll = redrawAllPending;
+	}
+	if (redrawAll)
+	    flush();
+    }
+
     private void calculateGeom(int screenWidth,
 			       int screenHeight,
 			       TileManager windows)
@@ -197,7 +322,7 @@ class WindowManager
 	    //No need to fix range2 value, it is never used below;
 	    calculateGeomImpl(windows, obj1, left, top, right, top + range1 - 1);
 	    calculateGeomImpl(windows, obj2, left, top + range1 + 1, right, bottom);
-	    interaction.drawHorizontalLine(left, right, top + range1);
+	    dividers.add(new Divider(false, left, right, top + range1));
 	    return;
 	}
 	if (windows.getDirection(obj) == TileManager.HORIZONTAL)
@@ -215,7 +340,7 @@ class WindowManager
 	    //No need to fix range2 value, it is never used below;
 	    calculateGeomImpl(windows, obj1, left, top, left + range1 - 1, bottom);
 	    calculateGeomImpl(windows, obj2, left + range1 + 1, top, right, bottom);
-	    interaction.drawVerticalLine(top, bottom, left + range1);
+	    dividers.add(new Divider(true, top, bottom, left + range1));
 	    return;
 	}
     }
@@ -236,14 +361,9 @@ win.area == null)
 	int preferableHeight = area.getLineCount();
 	int preferableWidth = 0;
 	final int linesNumberToCheckLen = preferableHeight < interaction.getHeightInCharacters()?preferableHeight:interaction.getHeightInCharacters();
-	for(int i = 0;i < linesNumberToCheckLen;i++)//FIXME:It is better to check lines around the hot point;
-	{
-	    String line = win.area.getLine(i);
-	    if (line == null)
-		continue;
+	for(String line: win.area.getLines(0, linesNumberToCheckLen))//FIXME:It is better to check lines around the hot point;
 	    if (line.length() > preferableWidth)
 		preferableWidth = line.length();
-	}
 	++preferableWidth;//Just to make nicer
 	if (preferableWidth < MIN_RANGE_HORIZONTAL)
 	    preferableWidth = MIN_RANGE_HORIZONTAL;
@@ -274,7 +394,7 @@ win.area == null)
 	    anotherTop = top;
 	    anotherRight = right;
 	    anotherBottom = bottom;
-	    interaction.drawVerticalLine(top, bottom, left + popupWidth);
+	    dividers.add(new Divider(true, top, bottom, left + popupWidth));
 	    break;
 	case TOP:
 	    win.x = left;
@@ -285,7 +405,7 @@ win.area == null)
 	    anotherTop = top + popupHeight + 1;
 	    anotherRight = right;
 	    anotherBottom = bottom;
-	    interaction.drawHorizontalLine(left, right, top + popupHeight);
+	    dividers.add(new Divider(false, left, right, top + popupHeight));
 	    break;
 	case RIGHT:
 	    win.x = right - popupWidth + 1;
@@ -296,7 +416,7 @@ win.area == null)
 	    anotherTop = top;
 	    anotherRight = right - popupWidth - 1;
 	    anotherBottom = bottom;
-	    interaction.drawVerticalLine(top, bottom, right - popupWidth);
+	    dividers.add(new Divider(true, top, bottom, right - popupWidth));
 	    break;
 	case BOTTOM:
 	    win.x = left;
@@ -307,7 +427,7 @@ win.area == null)
 	    anotherTop = top;
 	    anotherRight = right;
 	    anotherBottom = bottom - popupHeight - 1;
-	    interaction.drawHorizontalLine(left, right, bottom - popupHeight);
+	    dividers.add(new Divider(false, left, right, bottom - popupHeight));
 	    break;
 	default:
 	    win.markInvisible();
@@ -356,12 +476,13 @@ win.area == null)
 	    return;
 	final String name = area.getAreaName();
 	if (name != null && !name.isEmpty())
-	    interaction.drawText(win.x, win.y, name.length() <= win.width?name:name.substring(0, win.width), true);
+	    frame.putText(win.x, win.y, name.length() <= win.width?name:name.substring(0, win.width), true);
 	int count = area.getLineCount() - win.scrolledVert;
 	if (count > win.height - 1)
 	    count = win.height - 1;
-	for(int k = 0;k < count;k++)
-	    interaction.drawText(win.x, win.y + k + 1, getProperLinePart(win, area.getLine(k + win.scrolledVert)));
+	final String[] lines = area.getLines(win.scrolledVert, count);
+	for(int k = 0;k < lines.length;k++)
+	    frame.putText(win.x, win.y + k + 1, getProperLinePart(win, lines[k]), false);
 	if (area == screenContentManager.getActiveArea())
 	{
 	    final int hotPointX = area.getHotPointX() - win.scrolledHoriz;
@@ -381,4 +502,40 @@ win.area == null)
 	String l = win.scrolledHoriz == 0?line:line.substring(win.scrolledHoriz);
 	return l.length() <= win.width?l:l.substring(0, win.width );
     }
+
+    static private final class Divider
+    {
+	final boolean vertical;
+	final int from;
+	final int to;
+	final int pos;
+
+	Divider(boolean vertical, int from, int to, int pos)
+	{
+	    this.vertical = vertical;
+	    this.from = from;
+	    this.to = to;
+	    this.pos = pos;
+	}
+
+	void draw(Interaction interaction)
+	{
+	    if (vertical)
+		interaction.drawVerticalLine(from, to, pos); else
+		interaction.drawHorizontalLine(from, to, pos);
+	}
+
+	@Override public boolean equals(Object o)
+	{
+	    if (o == null || !(o instanceof Divider))
+		return false;
+	    final Divider d = (Divider)o;
+	    return vertical == d.vertical && from == d.from && to == d.to && pos == d.pos;
+	}
+
+	@Override public int hashCode()
+	{
+	    return ((((vertical?1:0) * 31 + from) * 31 + to) * 31) + pos;
+	}
+    }
 }
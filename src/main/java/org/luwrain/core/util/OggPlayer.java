@@ -41,6 +41,7 @@ package org.luwrain.core.util;
 
 import com.jcraft.jogg.*;                                                       
 import com.jcraft.jorbis.*;                                                     
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;                                                     
 import java.io.IOException;                                                     
 import java.net.MalformedURLException;                                          
@@ -57,6 +58,19 @@ import org.luwrain.core.*;
 
 public class OggPlayer extends Thread                                       
 {                                                                               
+    /**
+     * The destination of the decoded audio instead of the own line of the
+     * player. The output is opened for every pass of the loop.
+     */
+    public interface Output
+    {
+	boolean open(AudioFormat format);
+	//Returns false if the output can't take data anymore
+	boolean write(byte[] data, int offset, int length);
+	void stop();
+	void close();
+    }
+
     private InputStream inputStream = null;                                     
 
     private final int bufferSize = 2048;
@@ -69,6 +83,7 @@ public class OggPlayer extends Thread
     private int[] pcmIndex = null;
 
     private SourceDataLine outputLine = null;                                   
+    private final Output output;
 
     private Packet joggPacket = null;
     private Page joggPage = null;
@@ -79,40 +94,92 @@ public class OggPlayer extends Thread
     private Comment jorbisComment = null;
     private Info jorbisInfo = null;
 
-    private boolean toContinue = true;
+    //Longer sounds are decoded again on every pass of the loop
+    static private final int MAX_DECODED_SIZE = 16 * 1024 * 1024;
+
+    private volatile boolean toContinue = true;
     private boolean loop = true;
     private String urlToPlay = "";
+    //The data of the first pass, null if it is too long
+    private ByteArrayOutputStream decoding = null;
+    private AudioFormat decodedFormat = null;
+    private volatile byte[] decoded = null;
 
     public OggPlayer(String urlToPlay)
     {                                                                           
 	NullCheck.notEmpty(urlToPlay, "urlToPlay");
 	this.urlToPlay = urlToPlay;
+	this.output = null;
     }                                                                           
 
+    public OggPlayer(String urlToPlay, Output output)
+    {
+	NullCheck.notEmpty(urlToPlay, "urlToPlay");
+	NullCheck.notNull(output, "output");
+	this.urlToPlay = urlToPlay;
+	this.output = output;
+    }
+
 synchronized     public void stopPlaying()
     {
 	//	Log.debug("ogg", "stopping");
 	toContinue = false;
+	if (output != null)
+	    output.stop();
 	if (outputLine != null)
 	    outputLine.stop();
     }
 
+    /**
+     * Returns the decoded data of the whole file, if it isn't too long and
+     * the first pass of the loop is finished. The format of the data is
+     * given by {@link #getDecodedFormat()}.
+     */
+    public byte[] getDecoded()
+    {
+	return decoded;
+    }
+
+    public AudioFormat getDecodedFormat()
+    {
+	return decoded != null?decodedFormat:null;
+    }
+
     @Override public void run()                                                           
     {                                                                           
-	    if (!loop)
-		mainWork(); else
-		while (toContinue)
-		    mainWork();
+	if (!loop)
+	{
+	    mainWork();
+	    return;
+	}
+	//The first pass is kept to loop it without decoding
+	decoding = new ByteArrayOutputStream();
+	final boolean complete = mainWork();
+	if (complete && toContinue && decoding != null && decoding.size() > 0)
+	{
+	    decoded = decoding.toByteArray();
+	    decoding = null;
+	    playDecoded();
+	    return;
+	}
+	decoding = null;
+	//An incomplete pass means the stopping or an error, there is no sense to repeat it
+	while (complete && toContinue && mainWork());
     }
 
-    private void mainWork()// throws MalformedURLException, IOException, LineUnavailableException
+    //Returns true if the whole file is played
+    private boolean mainWork()// throws MalformedURLException, IOException, LineUnavailableException
     {
 	try {
 	try {
 	    inputStream = new URL(urlToPlay).openStream();
 	    init();
 	    if(readHeader() && initSound())
+	    {
 		readBody();                                                     
+		return toContinue;
+	    }
+	    return false;
 	}
 	finally 
 	{
@@ -125,6 +192,38 @@ synchronized     public void stopPlaying()
 	{
 	    Log.error("ogg", "unexpected exception while playing:" + e.getClass().getName() + ":" + e.getMessage());
 	    e.printStackTrace();
+	    return false;
+	}
+    }
+
+    private void playDecoded()
+    {
+	final byte[] data = decoded;
+	final int chunkSize = bufferSize * 2 * decodedFormat.getFrameSize();
+	try {
+	    if (output != null)
+	    {
+		if (!output.open(decodedFormat))
+		    return;
+	    } else
+		if (!openLine(decodedFormat))
+		    return;
+	    while(toContinue)
+		for(int pos = 0;pos < data.length && toContinue;pos += chunkSize)
+		    if (!write(data, pos, Math.min(chunkSize, data.length - pos)))
+			toContinue = false;
+	}
+	catch(LineUnavailableException e)
+	{
+	    Log.error("ogg", "unable to open the audio line:" + e.getMessage());
+	}
+	finally {
+	    synchronized(this) {
+		if (output != null)
+		    output.close();
+		if (outputLine != null)
+		    outputLine.close();
+	    }
 	}
     }
 
@@ -274,6 +373,16 @@ synchronized     public void stopPlaying()
         int channels = jorbisInfo.channels;                                     
         int rate = jorbisInfo.rate;                                             
         final AudioFormat audioFormat = new AudioFormat((float) rate, 16, channels, true, false);                                                       
+        pcmInfo = new float[1][][];                                             
+        pcmIndex = new int[jorbisInfo.channels];                                
+	decodedFormat = audioFormat;
+	if (output != null)
+	    return output.open(audioFormat);
+	return openLine(audioFormat);
+    }
+
+    synchronized private boolean openLine(AudioFormat audioFormat) throws LineUnavailableException
+    {
         DataLine.Info datalineInfo = new DataLine.Info(SourceDataLine.class, audioFormat, AudioSystem.NOT_SPECIFIED);                            
         if(!AudioSystem.isLineSupported(datalineInfo))                          
         {                                                                       
@@ -283,9 +392,7 @@ synchronized     public void stopPlaying()
 	outputLine = (SourceDataLine) AudioSystem.getLine(datalineInfo);    
 	outputLine.open(audioFormat);                                       
         outputLine.start();                                                     
-        pcmInfo = new float[1][][];                                             
-        pcmIndex = new int[jorbisInfo.channels];                                
-	return true;                                                            
+	return true;
     }                                                                           
 
     private void readBody() throws IOException
@@ -341,7 +448,10 @@ while(toContinue)
 
     synchronized private void cleanUp()                                                      
     {                                                                           
-	outputLine.close();
+	if (output != null)
+	    output.close();
+	if (outputLine != null)
+	    outputLine.close();
 	//	Log.debug("ogg", "cleaning up");
         joggStreamState.clear();                                                
         jorbisBlock.clear();                                                    
@@ -379,13 +489,33 @@ while(toContinue)
                 }                                                               
             }                                                                   
 	    if (toContinue)
-		synchronized(this) {
-            outputLine.write(convertedBuffer, 0, 2 * jorbisInfo.channels * range);
+	    {
+		final int len = 2 * jorbisInfo.channels * range;
+		//The body reading stops as well
+		if (!write(convertedBuffer, 0, len))
+		    toContinue = false;
+		if (decoding != null)
+		{
+		    if (decoding.size() + len <= MAX_DECODED_SIZE)
+			decoding.write(convertedBuffer, 0, len); else
+			decoding = null;
 		}
+	    }
             jorbisDspState.synthesis_read(range);                               
 	}
     }                                                                           
 
+    private boolean write(byte[] data, int offset, int length)
+    {
+	//The output may wait for its data to be played, so it is written without the lock
+	if (output != null)
+	    return output.write(data, offset, length);
+	synchronized(this) {
+	    outputLine.write(data, offset, length);
+	}
+	return true;
+    }
+
     private void debugOutput(String output)                                     
     {                                                                           
 	System.out.println("Debug: " + output);
@@ -19,6 +19,8 @@ package org.luwrain.desktop;
 import java.util.*;
 
 import org.luwrain.core.*;
+import org.luwrain.registry.DirectorySnapshot;
+import org.luwrain.registry.ValuesReplacer;
 
 class UniRefList
 {
@@ -40,14 +42,18 @@ class UniRefList
 
     void load()
     {
-	final String[] values = registry.getValues(Settings.DESKTOP_UNIREFS_PATH);
+	final DirectorySnapshot snapshot = DirectorySnapshot.read(registry, Settings.DESKTOP_UNIREFS_PATH, false);
+	if (snapshot == null)
+	{
+	    uniRefs = new UniRefInfo[0];
+	    return;
+	}
 	final LinkedList<UniRefInfo> res = new LinkedList<UniRefInfo>();
-	for(String v: values)
+	for(String v: snapshot.getValueNames())
 	{
-	    final String path = Registry.join(Settings.DESKTOP_UNIREFS_PATH, v);
-	    if (registry.getTypeOf(path) != Registry.STRING)
+	    if (snapshot.getTypeOf(v) != Registry.STRING)
 		continue;
-	    final String s = registry.getString(path);
+	    final String s = snapshot.getString(v);
 	    if (s.isEmpty())
 		continue;
 	    final UniRefInfo uniRef = luwrain.getUniRefInfo(s);
@@ -100,16 +106,15 @@ class UniRefList
 
     void save()
     {
-	final String[] values = registry.getValues(Settings.DESKTOP_UNIREFS_PATH);
-	if (values != null)
-	    for(String v: values)
-		registry.deleteValue(Registry.join(Settings.DESKTOP_UNIREFS_PATH, v));
+	final Map<String, Object> values = new TreeMap<String, Object>();
 	for(int i = 0;i < uniRefs.length;++i)
 	{
 	    String name = "" + (i + 1);
 	    while (name.length() < 6)
 		name = "0" + name;
-	    registry.setString(Registry.join(Settings.DESKTOP_UNIREFS_PATH, name), uniRefs[i].value());
+	    values.put(name, uniRefs[i].value());
 	}
+	if (!ValuesReplacer.replaceValues(registry, Settings.DESKTOP_UNIREFS_PATH, values))
+	    Log.error("desktop", "unable to save desktop items to " + Settings.DESKTOP_UNIREFS_PATH);
     }
 }
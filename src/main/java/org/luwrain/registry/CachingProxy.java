@@ -0,0 +1,176 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.*;
+
+import org.luwrain.core.*;
+
+/**
+ * Creates settings objects like {@code RegistryProxy} does, but keeps the
+ * values returned by the getters. The cache is dropped on any call of a
+ * setter and on any change of the registry directory, so the object
+ * always returns the actual values. If the registry doesn't notify about
+ * the changes, the usual proxy without caching is returned.
+ */
+public final class CachingProxy
+{
+    //The listeners of all created objects, to remove the ones of the collected objects
+    static private final List<WeakListener> weakListeners = new LinkedList<WeakListener>();
+
+    static public <T> T create(Registry registry, String path, Class<T> iface)
+    {
+	NullCheck.notNull(registry, "registry");
+	NullCheck.notEmpty(path, "path");
+	NullCheck.notNull(iface, "iface");
+	final T target = RegistryProxy.create(registry, path, iface);
+	if (!(registry instanceof ChangeNotifier))
+	    return target;
+	final ChangeNotifier notifier = (ChangeNotifier)registry;
+	final Handler handler = new Handler(target);
+	final WeakListener listener = new WeakListener(notifier, handler);
+	synchronized(weakListeners) {
+	    removeDeadListeners();
+	    weakListeners.add(listener);
+	}
+	notifier.addChangeListener(path, listener);
+	return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class[]{iface}, handler));
+    }
+
+    static private final class Handler implements InvocationHandler, ChangeNotifier.Listener
+    {
+	private final Object target;
+	private final Map<List<Object>, Object> cache = new ConcurrentHashMap<List<Object>, Object>();
+	//Incremented on every invalidation, the value read before it is not cached
+	private long generation = 0;
+
+	Handler(Object target)
+	{
+	    this.target = target;
+	}
+
+	@Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+	{
+	    if (method.getDeclaringClass() == Object.class)
+		return invokeObjectMethod(proxy, method, args);
+	    if (!isGetter(method))
+	    {
+		invalidate();
+		return invokeTarget(method, args);
+	    }
+	    final List<Object> key = new ArrayList<Object>();
+	    key.add(method);
+	    if (args != null)
+		key.addAll(Arrays.asList(args));
+	    final Object cached = cache.get(key);
+	    if (cached != null)
+		return cached;
+	    final long gen;
+	    synchronized(this) {
+		gen = generation;
+	    }
+	    final Object res = invokeTarget(method, args);
+	    if (res != null)
+		synchronized(this) {
+		    if (gen == generation)
+			cache.put(key, res);
+		}
+	    return res;
+	}
+
+	@Override public void onRegistryChange(String path)
+	{
+	    invalidate();
+	}
+
+	private synchronized void invalidate()
+	{
+	    ++generation;
+	    cache.clear();
+	}
+
+	private Object invokeTarget(Method method, Object[] args) throws Throwable
+	{
+	    try {
+		return method.invoke(target, args);
+	    }
+	    catch(InvocationTargetException e)
+	    {
+		throw e.getCause();
+	    }
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args)
+	{
+	    switch(method.getName())
+	    {
+	    case "equals":
+		return Boolean.valueOf(proxy == args[0]);
+	    case "hashCode":
+		return Integer.valueOf(System.identityHashCode(proxy));
+	    default:
+		return "caching proxy for " + target.toString();
+	    }
+	}
+
+	static private boolean isGetter(Method method)
+	{
+	    if (method.getReturnType() == void.class)
+		return false;
+	    final String name = method.getName();
+	    return name.startsWith("get") || name.startsWith("is");
+	}
+    }
+
+    //Otherwise the listeners of the collected objects are removed only on the changes of their directories
+    static private void removeDeadListeners()
+    {
+	final Iterator<WeakListener> it = weakListeners.iterator();
+	while(it.hasNext())
+	{
+	    final WeakListener l = it.next();
+	    if (l.ref.get() != null)
+		continue;
+	    it.remove();
+	    l.notifier.removeChangeListener(l);
+	}
+    }
+
+    //Doesn't prevent the settings object from being garbage collected
+    static private final class WeakListener implements ChangeNotifier.Listener
+    {
+	private final ChangeNotifier notifier;
+	private final WeakReference<ChangeNotifier.Listener> ref;
+
+	WeakListener(ChangeNotifier notifier, ChangeNotifier.Listener listener)
+	{
+	    this.notifier = notifier;
+	    this.ref = new WeakReference<ChangeNotifier.Listener>(listener);
+	}
+
+	@Override public void onRegistryChange(String path)
+	{
+	    final ChangeNotifier.Listener listener = ref.get();
+	    if (listener != null)
+		listener.onRegistryChange(path); else
+		notifier.removeChangeListener(this);
+	}
+    }
+}
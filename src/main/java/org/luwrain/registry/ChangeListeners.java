@@ -0,0 +1,156 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.luwrain.core.*;
+
+/**
+ * The list of change listeners for the registry implementations. The
+ * changes are queued while the registry lock is held and delivered by
+ * {@link #fire()} after it is released.
+ */
+public final class ChangeListeners
+{
+    static private final class Entry
+    {
+	final String[] dirItems;
+	final ChangeNotifier.Listener listener;
+
+	Entry(String[] dirItems, ChangeNotifier.Listener listener)
+	{
+	    this.dirItems = dirItems;
+	    this.listener = listener;
+	}
+    }
+
+    static private final class Change
+    {
+	final String[] dirItems;
+	final boolean deleting;
+
+	Change(String[] dirItems, boolean deleting)
+	{
+	    this.dirItems = dirItems;
+	    this.deleting = deleting;
+	}
+    }
+
+    private final List<Entry> entries = new CopyOnWriteArrayList<Entry>();
+    private final List<Change> queued = new LinkedList<Change>();
+
+    public void add(String path, ChangeNotifier.Listener listener)
+    {
+	NullCheck.notEmpty(path, "path");
+	NullCheck.notNull(listener, "listener");
+	final Path p = PathParser.parseAsDirectory(path);
+	if (p == null)
+	    throw new IllegalArgumentException("meaningless path");
+	entries.add(new Entry(p.dirItems(), listener));
+    }
+
+    public void remove(ChangeNotifier.Listener listener)
+    {
+	NullCheck.notNull(listener, "listener");
+	for(Entry e: entries)
+	    if (e.listener == listener)
+		entries.remove(e);
+    }
+
+    public boolean isEmpty()
+    {
+	return entries.isEmpty();
+    }
+
+    //The directories which have listeners attached directly
+    public List<String[]> getListenedDirs()
+    {
+	final List<String[]> res = new LinkedList<String[]>();
+	for(Entry e: entries)
+	    res.add(e.dirItems);
+	return res;
+    }
+
+    //Remembers the change to be delivered later by fire()
+    public void queue(String[] dirItems)
+    {
+	queue(dirItems, false);
+    }
+
+    //Deleting of a directory is delivered to the listeners of its subdirectories as well
+    public void queueDeleting(String[] dirItems)
+    {
+	queue(dirItems, true);
+    }
+
+    //Must be called without the registry lock
+    public void fire()
+    {
+	final List<Change> changes;
+	synchronized(queued) {
+	    if (queued.isEmpty())
+		return;
+	    changes = new LinkedList<Change>(queued);
+	    queued.clear();
+	}
+	for(Change c: changes)
+	{
+	    final String path = toPath(c.dirItems);
+	    for(Entry e: entries)
+		if (isPrefix(e.dirItems, c.dirItems) || (c.deleting && isPrefix(c.dirItems, e.dirItems)))
+		    try {
+			e.listener.onRegistryChange(path);
+		    }
+		    catch(Throwable ex)
+		    {
+			Log.error("registry", "registry change listener failed:" + ex.getClass().getName() + ":" + ex.getMessage());
+		    }
+	}
+    }
+
+    private void queue(String[] dirItems, boolean deleting)
+    {
+	NullCheck.notNullItems(dirItems, "dirItems");
+	if (entries.isEmpty())
+	    return;
+	synchronized(queued) {
+	    queued.add(new Change(dirItems, deleting));
+	}
+    }
+
+    static private boolean isPrefix(String[] prefix, String[] items)
+    {
+	if (prefix.length > items.length)
+	    return false;
+	for(int i = 0;i < prefix.length;++i)
+	    if (!prefix[i].equals(items[i]))
+		return false;
+	return true;
+    }
+
+    static private String toPath(String[] items)
+    {
+	if (items.length == 0)
+	    return "/";
+	final StringBuilder b = new StringBuilder();
+	for(String s: items)
+	    b.append("/").append(s);
+	return new String(b);
+    }
+}
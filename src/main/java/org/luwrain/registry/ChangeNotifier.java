@@ -0,0 +1,39 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry;
+
+/**
+ * The registry implementation able to notify about changes of its
+ * content. A listener is attached to a directory and is notified about
+ * changes in the directory itself and in all its subdirectories, and
+ * about deleting of any of its parents. The notifications come in the
+ * thread which made the change, after the registry lock is released, so
+ * the listener may read the registry.
+ */
+public interface ChangeNotifier
+{
+    public interface Listener
+    {
+	/**
+	 * @param path The path of the changed directory
+	 */
+	void onRegistryChange(String path);
+    }
+
+    void addChangeListener(String path, Listener listener);
+    void removeChangeListener(Listener listener);
+}
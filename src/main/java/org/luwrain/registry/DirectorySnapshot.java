@@ -0,0 +1,208 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry;
+
+import java.util.*;
+
+import org.luwrain.core.*;
+
+/**
+ * The immutable copy of all values of a registry directory, optionally
+ * with all its subdirectories. The snapshot is taken with a single call
+ * to the registry, which is much cheaper than requesting the values one
+ * by one, when the whole directory is needed (loading of file types,
+ * global keys, etc). The snapshot doesn't follow the later changes of
+ * the registry.
+ */
+public final class DirectorySnapshot
+{
+    /**
+     * The registry implementation able to take snapshots by itself. Other
+     * implementations are read value by value.
+     */
+    public interface Provider
+    {
+	//Returns null if there is no such directory
+	DirectorySnapshot getSnapshot(String path, boolean recursive);
+    }
+
+    private final String path;
+    private final boolean recursive;
+    private final Map<String, Object> values;
+    //Without recursion the names are mapped to nulls
+    private final Map<String, DirectorySnapshot> subdirs;
+
+    /**
+     * @param path The path of the directory
+     * @param values The values of the directory, every item must be {@code String}, {@code Integer} or {@code Boolean}
+     * @param subdirs The subdirectories, may be mapped to nulls if the snapshot isn't recursive
+     * @param recursive Whether the subdirectories are included
+     */
+    public DirectorySnapshot(String path, Map<String, Object> values,
+			     Map<String, DirectorySnapshot> subdirs, boolean recursive)
+    {
+	NullCheck.notEmpty(path, "path");
+	NullCheck.notNull(values, "values");
+	NullCheck.notNull(subdirs, "subdirs");
+	for(Map.Entry<String, Object> e: values.entrySet())
+	{
+	    final Object v = e.getValue();
+	    if (!(v instanceof String) && !(v instanceof Integer) && !(v instanceof Boolean))
+		throw new IllegalArgumentException("value \'" + e.getKey() + "\' has an unsupported type");
+	}
+	if (recursive)
+	    for(Map.Entry<String, DirectorySnapshot> e: subdirs.entrySet())
+		if (e.getValue() == null)
+		    throw new IllegalArgumentException("recursive snapshot has no content of subdirectory \'" + e.getKey() + "\'");
+	this.path = path;
+	this.recursive = recursive;
+	this.values = Collections.unmodifiableMap(new TreeMap<String, Object>(values));
+	this.subdirs = Collections.unmodifiableMap(new LinkedHashMap<String, DirectorySnapshot>(subdirs));
+    }
+
+    public String getPath()
+    {
+	return path;
+    }
+
+    public boolean isRecursive()
+    {
+	return recursive;
+    }
+
+    public String[] getValueNames()
+    {
+	return values.keySet().toArray(new String[values.size()]);
+    }
+
+    public boolean hasValue(String name)
+    {
+	NullCheck.notNull(name, "name");
+	return values.containsKey(name);
+    }
+
+    public int getTypeOf(String name)
+    {
+	NullCheck.notNull(name, "name");
+	final Object v = values.get(name);
+	if (v instanceof String)
+	    return Registry.STRING;
+	if (v instanceof Integer)
+	    return Registry.INTEGER;
+	if (v instanceof Boolean)
+	    return Registry.BOOLEAN;
+	return Registry.INVALID;
+    }
+
+    //Returns the empty string if there is no such string value, the same as Registry does
+    public String getString(String name)
+    {
+	NullCheck.notNull(name, "name");
+	final Object v = values.get(name);
+	return (v instanceof String)?(String)v:"";
+    }
+
+    public int getInteger(String name)
+    {
+	NullCheck.notNull(name, "name");
+	final Object v = values.get(name);
+	return (v instanceof Integer)?((Integer)v).intValue():0;
+    }
+
+    public boolean getBoolean(String name)
+    {
+	NullCheck.notNull(name, "name");
+	final Object v = values.get(name);
+	return (v instanceof Boolean)?((Boolean)v).booleanValue():false;
+    }
+
+    public String[] getSubdirNames()
+    {
+	return subdirs.keySet().toArray(new String[subdirs.size()]);
+    }
+
+    //Returns null if there is no such subdirectory or the snapshot isn't recursive
+    public DirectorySnapshot getSubdir(String name)
+    {
+	NullCheck.notNull(name, "name");
+	return subdirs.get(name);
+    }
+
+    /**
+     * Provides the read-only registry backed by this snapshot. It is
+     * useful to construct the settings proxies without any additional
+     * requests to the real registry. Values outside of the snapshot are
+     * considered absent, any modification throws an {@code UnsupportedOperationException}.
+     */
+    public Registry asRegistry()
+    {
+	return new SnapshotRegistry(this);
+    }
+
+    /**
+     * Takes the snapshot of the registry directory. If the registry is not
+     * a {@link Provider}, the values are read one by one.
+     *
+     * @param registry The registry to read
+     * @param path The path of the directory
+     * @param recursive Whether all subdirectories must be included
+     * @return The snapshot or null, if there is no such directory
+     */
+    static public DirectorySnapshot read(Registry registry, String path, boolean recursive)
+    {
+	NullCheck.notNull(registry, "registry");
+	NullCheck.notEmpty(path, "path");
+	if (registry instanceof Provider)
+	    return ((Provider)registry).getSnapshot(path, recursive);
+	if (!registry.hasDirectory(path))
+	    return null;
+	final Map<String, Object> values = new TreeMap<String, Object>();
+	final String[] valueNames = registry.getValues(path);
+	if (valueNames != null)
+	    for(String v: valueNames)
+	    {
+		final String valuePath = Registry.join(path, v);
+		switch(registry.getTypeOf(valuePath))
+		{
+		case Registry.STRING:
+		    values.put(v, registry.getString(valuePath));
+		    break;
+		case Registry.INTEGER:
+		    values.put(v, Integer.valueOf(registry.getInteger(valuePath)));
+		    break;
+		case Registry.BOOLEAN:
+		    values.put(v, Boolean.valueOf(registry.getBoolean(valuePath)));
+		    break;
+		}
+	    }
+	final Map<String, DirectorySnapshot> subdirs = new LinkedHashMap<String, DirectorySnapshot>();
+	final String[] subdirNames = registry.getDirectories(path);
+	if (subdirNames != null)
+	    for(String s: subdirNames)
+	    {
+		if (!recursive)
+		{
+		    subdirs.put(s, null);
+		    continue;
+		}
+		final DirectorySnapshot subdir = read(registry, Registry.join(path, s), true);
+		if (subdir != null)
+		    subdirs.put(s, subdir);
+	    }
+	return new DirectorySnapshot(path, values, subdirs, recursive);
+    }
+}
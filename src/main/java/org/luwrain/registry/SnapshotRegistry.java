@@ -0,0 +1,167 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry;
+
+import org.luwrain.core.*;
+
+//The read-only registry over a snapshot, see DirectorySnapshot.asRegistry()
+class SnapshotRegistry implements Registry
+{
+    private final DirectorySnapshot snapshot;
+    private final String[] baseItems;
+
+    SnapshotRegistry(DirectorySnapshot snapshot)
+    {
+	NullCheck.notNull(snapshot, "snapshot");
+	this.snapshot = snapshot;
+	final Path base = PathParser.parseAsDirectory(snapshot.getPath());
+	this.baseItems = base != null?base.dirItems():new String[0];
+    }
+
+    @Override public boolean addDirectory(String path)
+    {
+	throw new UnsupportedOperationException("the registry snapshot is read-only");
+    }
+
+    @Override public boolean deleteDirectory(String path)
+    {
+	throw new UnsupportedOperationException("the registry snapshot is read-only");
+    }
+
+    @Override public boolean deleteValue(String path)
+    {
+	throw new UnsupportedOperationException("the registry snapshot is read-only");
+    }
+
+    @Override public boolean setBoolean(String path, boolean value)
+    {
+	throw new UnsupportedOperationException("the registry snapshot is read-only");
+    }
+
+    @Override public boolean setInteger(String path, int value)
+    {
+	throw new UnsupportedOperationException("the registry snapshot is read-only");
+    }
+
+    @Override public boolean setString(String path, String value)
+    {
+	throw new UnsupportedOperationException("the registry snapshot is read-only");
+    }
+
+    @Override public boolean getBoolean(String path)
+    {
+	final Path p = parse(path);
+	final DirectorySnapshot d = findDirectory(p.dirItems());
+	return d != null?d.getBoolean(p.valueName()):false;
+    }
+
+    @Override public int getInteger(String path)
+    {
+	final Path p = parse(path);
+	final DirectorySnapshot d = findDirectory(p.dirItems());
+	return d != null?d.getInteger(p.valueName()):0;
+    }
+
+    @Override public String getString(String path)
+    {
+	final Path p = parse(path);
+	final DirectorySnapshot d = findDirectory(p.dirItems());
+	return d != null?d.getString(p.valueName()):"";
+    }
+
+    @Override public int getTypeOf(String path)
+    {
+	final Path p = PathParser.parse(path);
+	if (p == null || p.isDirectory())
+	    return INVALID;
+	final DirectorySnapshot d = findDirectory(p.dirItems());
+	return d != null?d.getTypeOf(p.valueName()):INVALID;
+    }
+
+    @Override public boolean hasValue(String path)
+    {
+	final Path p = parse(path);
+	final DirectorySnapshot d = findDirectory(p.dirItems());
+	return d != null && d.hasValue(p.valueName());
+    }
+
+    @Override public String[] getDirectories(String path)
+    {
+	final DirectorySnapshot d = findDirectory(parseAsDir(path).dirItems());
+	return d != null?d.getSubdirNames():null;
+    }
+
+    @Override public String[] getValues(String path)
+    {
+	final DirectorySnapshot d = findDirectory(parseAsDir(path).dirItems());
+	return d != null?d.getValueNames():null;
+    }
+
+    @Override public boolean hasDirectory(String path)
+    {
+	return findDirectory(parseAsDir(path).dirItems()) != null;
+    }
+
+    @Override public String getStringDesignationOfType(int type)
+    {
+	switch (type)
+	{
+	case BOOLEAN:
+	    return "boolean";
+	case INTEGER:
+	    return "integer";
+	case STRING:
+	    return "string";
+	default:
+	    return "invalid";
+	}
+    }
+
+    //Returns null for the directories outside of the snapshot
+    private DirectorySnapshot findDirectory(String[] items)
+    {
+	if (items.length < baseItems.length)
+	    return null;
+	for(int i = 0;i < baseItems.length;++i)
+	    if (!baseItems[i].equals(items[i]))
+		return null;
+	DirectorySnapshot d = snapshot;
+	for(int i = baseItems.length;i < items.length && d != null;++i)
+	    d = d.getSubdir(items[i]);
+	return d;
+    }
+
+    private Path parse(String path)
+    {
+	NullCheck.notEmpty(path, "path");
+	final Path p = PathParser.parse(path);
+	if (p == null)
+	    throw new IllegalArgumentException("meaningless path");
+	if (p.isDirectory())
+	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	return p;
+    }
+
+    private Path parseAsDir(String path)
+    {
+	NullCheck.notEmpty(path, "path");
+	final Path p = PathParser.parseAsDirectory(path);
+	if (p == null)
+	    throw new IllegalArgumentException("meaningless path");
+	return p;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry;
+
+import java.util.*;
+
+import org.luwrain.core.*;
+
+/**
+ * The registry implementation able to replace all values of a directory
+ * in one operation. Nobody sees the directory partially updated and the
+ * changes are saved once instead of saving after every value.
+ */
+public interface ValuesReplacer
+{
+    /**
+     * Replaces all values of the directory, creating the directory, if
+     * necessary. The subdirectories are left untouched.
+     *
+     * @param path The path of the directory
+     * @param values The new values, every item must be {@code String}, {@code Integer} or {@code Boolean}
+     * @return True if the values were replaced, false otherwise
+     */
+    boolean replaceValues(String path, Map<String, Object> values);
+
+    /**
+     * Replaces all values of the directory in any registry. If the
+     * registry is not a {@code ValuesReplacer}, the values are deleted and
+     * set one by one.
+     */
+    static public boolean replaceValues(Registry registry, String path, Map<String, Object> values)
+    {
+	NullCheck.notNull(registry, "registry");
+	NullCheck.notEmpty(path, "path");
+	NullCheck.notNull(values, "values");
+	checkValues(values);
+	if (registry instanceof ValuesReplacer)
+	    return ((ValuesReplacer)registry).replaceValues(path, values);
+	if (!registry.hasDirectory(path) && !registry.addDirectory(path))
+	    return false;
+	final String[] oldNames = registry.getValues(path);
+	if (oldNames != null)
+	    for(String v: oldNames)
+		if (!values.containsKey(v))
+		    registry.deleteValue(Registry.join(path, v));
+	for(Map.Entry<String, Object> e: values.entrySet())
+	{
+	    final String valuePath = Registry.join(path, e.getKey());
+	    final Object v = e.getValue();
+	    final boolean res;
+	    if (v instanceof String)
+		res = registry.setString(valuePath, (String)v); else
+		if (v instanceof Integer)
+		    res = registry.setInteger(valuePath, ((Integer)v).intValue()); else
+		    res = registry.setBoolean(valuePath, ((Boolean)v).booleanValue());
+	    if (!res)
+		return false;
+	}
+	return true;
+    }
+
+    static public void checkValues(Map<String, Object> values)
+    {
+	NullCheck.notNull(values, "values");
+	for(Map.Entry<String, Object> e: values.entrySet())
+	{
+	    NullCheck.notEmpty(e.getKey(), "value name");
+	    final Object v = e.getValue();
+	    if (!(v instanceof String) && !(v instanceof Integer) && !(v instanceof Boolean))
+		throw new IllegalArgumentException("value \'" + e.getKey() + "\' has an unsupported type");
+	}
+    }
+}
@@ -0,0 +1,137 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry.bin;
+
+import java.util.*;
+import java.io.IOException;
+import java.nio.file.*;
+
+import org.luwrain.core.*;
+import org.luwrain.registry.DirectorySnapshot;
+import org.luwrain.registry.ValuesReplacer;
+
+/**
+ * Copies the registry content between the fsdir layout and the single
+ * binary file. Can be used from the command line:
+ * <pre>
+ * Converter --to-bin &lt;fsdir registry directory&gt; &lt;file&gt;
+ * Converter --to-fsdir &lt;file&gt; &lt;fsdir registry directory&gt;
+ * </pre>
+ */
+public class Converter
+{
+    static public void fsdirToBin(java.nio.file.Path fsdirDir, java.nio.file.Path file) throws IOException
+    {
+	NullCheck.notNull(fsdirDir, "fsdirDir");
+	NullCheck.notNull(file, "file");
+	if (!Files.isDirectory(fsdirDir))
+	    throw new IOException(fsdirDir.toString() + " is not a directory");
+	if (Files.exists(file))
+	    throw new IOException(file.toString() + " already exists");
+	final RegistryImpl dest = new RegistryImpl(file);
+	boolean done = false;
+	try {
+	    copy(new org.luwrain.registry.fsdir.RegistryImpl(fsdirDir), dest);
+	    dest.compact();
+	    done = true;
+	}
+	finally {
+	    dest.close();
+	    //Not leaving the partially converted registry
+	    if (!done)
+		Files.deleteIfExists(file);
+	}
+    }
+
+    static public void binToFsdir(java.nio.file.Path file, java.nio.file.Path fsdirDir) throws IOException
+    {
+	NullCheck.notNull(file, "file");
+	NullCheck.notNull(fsdirDir, "fsdirDir");
+	if (!Files.exists(file))
+	    throw new IOException(file.toString() + " doesn't exist");
+	Files.createDirectories(fsdirDir);
+	final RegistryImpl source = new RegistryImpl(file);
+	try {
+	    final org.luwrain.registry.fsdir.RegistryImpl dest = new org.luwrain.registry.fsdir.RegistryImpl(fsdirDir);
+	    copy(source, dest);
+	    dest.flush();
+	}
+	finally {
+	    source.close();
+	}
+    }
+
+    //Copies all directories below the root, the values of the root are not used by the registry users
+    static public void copy(Registry from, Registry to) throws IOException
+    {
+	NullCheck.notNull(from, "from");
+	NullCheck.notNull(to, "to");
+	final String[] dirs = from.getDirectories("/");
+	if (dirs == null)
+	    return;
+	for(String d: dirs)
+	{
+	    final DirectorySnapshot snapshot = DirectorySnapshot.read(from, "/" + d, true);
+	    if (snapshot != null)
+		copy(snapshot, to);
+	}
+    }
+
+    static private void copy(DirectorySnapshot snapshot, Registry to) throws IOException
+    {
+	final String path = snapshot.getPath();
+	final Map<String, Object> values = new TreeMap<String, Object>();
+	for(String v: snapshot.getValueNames())
+	    switch(snapshot.getTypeOf(v))
+	    {
+	    case Registry.STRING:
+		values.put(v, snapshot.getString(v));
+		break;
+	    case Registry.INTEGER:
+		values.put(v, Integer.valueOf(snapshot.getInteger(v)));
+		break;
+	    case Registry.BOOLEAN:
+		values.put(v, Boolean.valueOf(snapshot.getBoolean(v)));
+		break;
+	    }
+	if (!ValuesReplacer.replaceValues(to, path, values))
+	    throw new IOException("unable to write values of " + path);
+	for(String s: snapshot.getSubdirNames())
+	    copy(snapshot.getSubdir(s), to);
+    }
+
+    static public void main(String[] args)
+    {
+	if (args.length != 3 || (!args[0].equals("--to-bin") && !args[0].equals("--to-fsdir")))
+	{
+	    System.err.println("Usage:");
+	    System.err.println("  Converter --to-bin <fsdir registry directory> <file>");
+	    System.err.println("  Converter --to-fsdir <file> <fsdir registry directory>");
+	    System.exit(1);
+	}
+	try {
+	    if (args[0].equals("--to-bin"))
+		fsdirToBin(Paths.get(args[1]), Paths.get(args[2])); else
+		binToFsdir(Paths.get(args[1]), Paths.get(args[2]));
+	}
+	catch(IOException e)
+	{
+	    System.err.println(e.getClass().getName() + ":" + e.getMessage());
+	    System.exit(1);
+	}
+    }
+}
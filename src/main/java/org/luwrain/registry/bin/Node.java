@@ -0,0 +1,82 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry.bin;
+
+import java.util.*;
+
+import org.luwrain.core.*;
+import org.luwrain.registry.DirectorySnapshot;
+
+//The in-memory registry directory, values are String, Integer or Boolean
+class Node
+{
+    final Map<String, Node> subdirs = new LinkedHashMap<String, Node>();
+    final TreeMap<String, Object> values = new TreeMap<String, Object>();
+
+    //Returns null if there is no such directory
+    Node find(String[] items)
+    {
+	NullCheck.notNullItems(items, "items");
+	Node n = this;
+	for(String s: items)
+	{
+	    n = n.subdirs.get(s);
+	    if (n == null)
+		return null;
+	}
+	return n;
+    }
+
+    //Creates all absent directories on the way
+    Node obtain(String[] items)
+    {
+	NullCheck.notNullItems(items, "items");
+	Node n = this;
+	for(String s: items)
+	{
+	    Node nn = n.subdirs.get(s);
+	    if (nn == null)
+	    {
+		nn = new Node();
+		n.subdirs.put(s, nn);
+	    }
+	    n = nn;
+	}
+	return n;
+    }
+
+    int getTypeOf(String valueName)
+    {
+	final Object v = values.get(valueName);
+	if (v instanceof String)
+	    return Registry.STRING;
+	if (v instanceof Integer)
+	    return Registry.INTEGER;
+	if (v instanceof Boolean)
+	    return Registry.BOOLEAN;
+	return Registry.INVALID;
+    }
+
+    DirectorySnapshot snapshot(String path, boolean recursive)
+    {
+	NullCheck.notEmpty(path, "path");
+	final Map<String, DirectorySnapshot> res = new LinkedHashMap<String, DirectorySnapshot>();
+	for(Map.Entry<String, Node> e: subdirs.entrySet())
+	    res.put(e.getKey(), recursive?e.getValue().snapshot(Registry.join(path, e.getKey()), true):null);
+	return new DirectorySnapshot(path, values, res, recursive);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry.bin;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import org.luwrain.core.*;
+
+/**
+ * The format of the registry file. The file begins with the header
+ * followed by the records. Every record is the length of its body, the
+ * checksum of the body and the body itself, which is a sequence of
+ * operations applied together. A compacted file has one record per
+ * directory, later changes are appended as new records. A truncated or
+ * damaged record at the end of the file, left after a crash, is ignored
+ * with all records following it.
+ */
+class Records
+{
+    static private final byte[] MAGIC = new byte[]{'L', 'W', 'R', 'B'};
+    static private final int VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 4;
+    static private final int RECORD_PREFIX_SIZE = 8;
+
+    static private final byte ADD_DIR = 1;
+    static private final byte DELETE_DIR = 2;
+    static private final byte SET_STRING = 3;
+    static private final byte SET_INTEGER = 4;
+    static private final byte SET_BOOLEAN = 5;
+    static private final byte DELETE_VALUE = 6;
+    static private final byte CLEAR_VALUES = 7;
+
+    //Collects the operations of a single record
+    static final class Builder
+    {
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final DataOutputStream out = new DataOutputStream(bytes);
+	private int opCount = 0;
+
+	Builder addDir(String[] dir) throws IOException
+	{
+	    out.writeByte(ADD_DIR);
+	    writeItems(dir);
+	    ++opCount;
+	    return this;
+	}
+
+	Builder deleteDir(String[] dir) throws IOException
+	{
+	    out.writeByte(DELETE_DIR);
+	    writeItems(dir);
+	    ++opCount;
+	    return this;
+	}
+
+	Builder setValue(String[] dir, String valueName, Object value) throws IOException
+	{
+	    NullCheck.notNull(value, "value");
+	    if (value instanceof String)
+		out.writeByte(SET_STRING); else
+		if (value instanceof Integer)
+		    out.writeByte(SET_INTEGER); else
+		    if (value instanceof Boolean)
+			out.writeByte(SET_BOOLEAN); else
+			throw new IllegalArgumentException("unsupported type of the value " + valueName);
+	    writeItems(dir);
+	    writeString(valueName);
+	    if (value instanceof String)
+		writeString((String)value); else
+		if (value instanceof Integer)
+		    out.writeInt(((Integer)value).intValue()); else
+		    out.writeByte(((Boolean)value).booleanValue()?1:0);
+	    ++opCount;
+	    return this;
+	}
+
+	Builder deleteValue(String[] dir, String valueName) throws IOException
+	{
+	    out.writeByte(DELETE_VALUE);
+	    writeItems(dir);
+	    writeString(valueName);
+	    ++opCount;
+	    return this;
+	}
+
+	Builder clearValues(String[] dir) throws IOException
+	{
+	    out.writeByte(CLEAR_VALUES);
+	    writeItems(dir);
+	    ++opCount;
+	    return this;
+	}
+
+	boolean isEmpty()
+	{
+	    return opCount == 0;
+	}
+
+	ByteBuffer build() throws IOException
+	{
+	    out.flush();
+	    final byte[] body = bytes.toByteArray();
+	    final CRC32 crc = new CRC32();
+	    crc.update(body);
+	    final ByteBuffer res = ByteBuffer.allocate(RECORD_PREFIX_SIZE + body.length);
+	    res.putInt(body.length);
+	    res.putInt((int)crc.getValue());
+	    res.put(body);
+	    res.flip();
+	    return res;
+	}
+
+	private void writeItems(String[] items) throws IOException
+	{
+	    NullCheck.notNullItems(items, "items");
+	    out.writeInt(items.length);
+	    for(String s: items)
+		writeString(s);
+	}
+
+	private void writeString(String s) throws IOException
+	{
+	    final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+	    out.writeInt(b.length);
+	    out.write(b);
+	}
+    }
+
+    static ByteBuffer header()
+    {
+	final ByteBuffer res = ByteBuffer.allocate(HEADER_SIZE);
+	res.put(MAGIC);
+	res.putInt(VERSION);
+	res.flip();
+	return res;
+    }
+
+    /**
+     * Applies all valid records of the file content to the tree.
+     *
+     * @return The offset right after the last valid record
+     */
+    static int replay(ByteBuffer buf, Node root) throws IOException
+    {
+	NullCheck.notNull(buf, "buf");
+	NullCheck.notNull(root, "root");
+	if (buf.remaining() < HEADER_SIZE)
+	    throw new IOException("the registry file is too short");
+	final byte[] magic = new byte[MAGIC.length];
+	buf.get(magic);
+	if (!Arrays.equals(magic, MAGIC))
+	    throw new IOException("the file is not a registry file");
+	final int version = buf.getInt();
+	if (version != VERSION)
+	    throw new IOException("unsupported registry file version " + version);
+	int validEnd = buf.position();
+	while(buf.remaining() >= RECORD_PREFIX_SIZE)
+	{
+	    final int len = buf.getInt();
+	    final int checksum = buf.getInt();
+	    if (len < 0 || len > buf.remaining())
+		break;
+	    final byte[] body = new byte[len];
+	    buf.get(body);
+	    final CRC32 crc = new CRC32();
+	    crc.update(body);
+	    if ((int)crc.getValue() != checksum)
+		break;
+	    apply(ByteBuffer.wrap(body), root);
+	    validEnd = buf.position();
+	}
+	if (validEnd < buf.limit())
+	    Log.warning(RegistryImpl.LOG_COMPONENT, "ignoring " + (buf.limit() - validEnd) + " bytes of damaged records at the end of the registry file");
+	return validEnd;
+    }
+
+    //Writes every directory as a separate record
+    static void writeTree(Node node, List<String> path, List<ByteBuffer> dest) throws IOException
+    {
+	NullCheck.notNull(node, "node");
+	NullCheck.notNull(path, "path");
+	NullCheck.notNull(dest, "dest");
+	final String[] dir = path.toArray(new String[path.size()]);
+	final Builder b = new Builder();
+	if (dir.length > 0)
+	    b.addDir(dir);
+	for(Map.Entry<String, Object> e: node.values.entrySet())
+	    b.setValue(dir, e.getKey(), e.getValue());
+	if (!b.isEmpty())
+	    dest.add(b.build());
+	for(Map.Entry<String, Node> e: node.subdirs.entrySet())
+	{
+	    path.add(e.getKey());
+	    writeTree(e.getValue(), path, dest);
+	    path.remove(path.size() - 1);
+	}
+    }
+
+    static private void apply(ByteBuffer body, Node root) throws IOException
+    {
+	try {
+	    while(body.hasRemaining())
+	    {
+		final byte op = body.get();
+		final String[] dir = readItems(body);
+		switch(op)
+		{
+		case ADD_DIR:
+		    root.obtain(dir);
+		    break;
+		case DELETE_DIR:
+		    {
+			if (dir.length == 0)
+			    throw new IOException("an attempt to delete the root directory");
+			final Node parent = root.find(Arrays.copyOf(dir, dir.length - 1));
+			if (parent != null)
+			    parent.subdirs.remove(dir[dir.length - 1]);
+			break;
+		    }
+		case SET_STRING:
+		    {
+			final String name = readString(body);
+			root.obtain(dir).values.put(name, readString(body));
+			break;
+		    }
+		case SET_INTEGER:
+		    {
+			final String name = readString(body);
+			root.obtain(dir).values.put(name, Integer.valueOf(body.getInt()));
+			break;
+		    }
+		case SET_BOOLEAN:
+		    {
+			final String name = readString(body);
+			root.obtain(dir).values.put(name, Boolean.valueOf(body.get() != 0));
+			break;
+		    }
+		case DELETE_VALUE:
+		    {
+			final String name = readString(body);
+			final Node n = root.find(dir);
+			if (n != null)
+			    n.values.remove(name);
+			break;
+		    }
+		case CLEAR_VALUES:
+		    root.obtain(dir).values.clear();
+		    break;
+		default:
+		    throw new IOException("unknown operation " + op + " in the registry file");
+		}
+	    }
+	}
+	catch(BufferUnderflowException e)
+	{
+	    throw new IOException("malformed record in the registry file", e);
+	}
+    }
+
+    static private String[] readItems(ByteBuffer buf) throws IOException
+    {
+	final int count = buf.getInt();
+	if (count < 0 || count > buf.remaining())
+	    throw new IOException("malformed record in the registry file");
+	final String[] res = new String[count];
+	for(int i = 0;i < count;++i)
+	    res[i] = readString(buf);
+	return res;
+    }
+
+    static private String readString(ByteBuffer buf) throws IOException
+    {
+	final int len = buf.getInt();
+	if (len < 0 || len > buf.remaining())
+	    throw new IOException("malformed record in the registry file");
+	final byte[] b = new byte[len];
+	buf.get(b);
+	return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,605 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry.bin;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import org.luwrain.core.*;
+import org.luwrain.registry.Path;
+import org.luwrain.registry.PathParser;
+import org.luwrain.registry.DirectorySnapshot;
+import org.luwrain.registry.ValuesReplacer;
+import org.luwrain.registry.ChangeNotifier;
+import org.luwrain.registry.ChangeListeners;
+
+/**
+ * The registry stored in a single binary file. The file is mapped into
+ * memory on opening and the whole tree is kept in memory, so reading
+ * doesn't touch the disk at all. Every change is appended to the end of
+ * the file as a small record. Once the appended records take more space
+ * than the compacted content, the file is rewritten in the background
+ * without them. See {@link Converter} for moving the data from the
+ * fsdir layout and back.
+ */
+public class RegistryImpl implements Registry, DirectorySnapshot.Provider, ValuesReplacer, ChangeNotifier
+{
+    static final String LOG_COMPONENT = "registry-bin";
+    static private final long MIN_COMPACTION_SIZE = 64 * 1024;
+    static private final String TMP_SUFFIX = ".tmp";
+
+    private final java.nio.file.Path file;
+    private final Node root = new Node();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    private final ExecutorService compactionExecutor;
+    private FileChannel channel;
+    private long compactedSize;
+    private boolean compactionScheduled = false;
+    //The records appended while the compaction is in progress
+    private List<ByteBuffer> pending = null;
+    private final ChangeListeners listeners = new ChangeListeners();
+
+    /**
+     * Opens the registry file, creating an empty one if there is no such
+     * file.
+     *
+     * @param file The path of the registry file
+     */
+    public RegistryImpl(java.nio.file.Path file) throws IOException
+    {
+	NullCheck.notNull(file, "file");
+	this.file = file;
+	if (Files.exists(file))
+	{
+	    final int validEnd;
+	    try (final FileChannel c = FileChannel.open(file, StandardOpenOption.READ)) {
+		final MappedByteBuffer buf = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+		validEnd = Records.replay(buf, root);
+	    }
+	    channel = FileChannel.open(file, StandardOpenOption.WRITE);
+	    //Dropping the damaged tail, if any
+	    channel.truncate(validEnd);
+	    channel.position(validEnd);
+	} else
+	{
+	    channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+	    writeAll(channel, Records.header());
+	}
+	this.compactedSize = channel.position();
+	this.compactionExecutor = Executors.newSingleThreadExecutor((r)->{
+		final Thread t = new Thread(r, "registry-compaction");
+		t.setDaemon(true);
+		return t;
+	    });
+    }
+
+    @Override public boolean addDirectory(String path)
+    {
+	final Path p = parseAsDir(path);
+	if (p.isRoot())
+	    throw new IllegalArgumentException("the root directory may not be requested for creating");
+	lock.writeLock().lock();
+	try {
+	    if (root.find(p.dirItems()) != null)
+		return false;
+	    append(new Records.Builder().addDir(p.dirItems()));
+	    root.obtain(p.dirItems());
+	    listeners.queue(p.dirItems());
+	    return true;
+	}
+	catch(IOException e)
+	{
+	    onIoException(e, "unable to add directory " + p.toString());
+	    return false;
+	}
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
+	}
+    }
+
+    @Override public boolean deleteDirectory(String path)
+    {
+	final Path p = parseAsDir(path);
+	if (p.isRoot())
+	    throw new IllegalArgumentException("Root directory may not be deleted");
+	lock.writeLock().lock();
+	try {
+	    final Node parent = root.find(p.getParentOfDir().dirItems());
+	    if (parent == null || !parent.subdirs.containsKey(p.getLastDirItem()))
+		return false;
+	    append(new Records.Builder().deleteDir(p.dirItems()));
+	    parent.subdirs.remove(p.getLastDirItem());
+	    listeners.queueDeleting(p.dirItems());
+	    return true;
+	}
+	catch(IOException e)
+	{
+	    onIoException(e, "unable to delete directory " + p.toString());
+	    return false;
+	}
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
+	}
+    }
+
+    @Override public boolean deleteValue(String path)
+    {
+	final Path p = parseAsValue(path);
+	lock.writeLock().lock();
+	try {
+	    final Node n = root.find(p.dirItems());
+	    if (n == null || !n.values.containsKey(p.valueName()))
+		return false;
+	    append(new Records.Builder().deleteValue(p.dirItems(), p.valueName()));
+	    n.values.remove(p.valueName());
+	    listeners.queue(p.dirItems());
+	    return true;
+	}
+	catch(IOException e)
+	{
+	    onIoException(e, "unable to delete registry value " + p.toString());
+	    return false;
+	}
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
+	}
+    }
+
+    @Override public boolean getBoolean(String path)
+    {
+	final Path p = parseAsValue(path);
+	lock.readLock().lock();
+	try {
+	    final Node n = root.find(p.dirItems());
+	    if (n == null)
+		return false;
+	    final Object v = n.values.get(p.valueName());
+	    return (v instanceof Boolean)?((Boolean)v).booleanValue():false;
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public int getInteger(String path)
+    {
+	final Path p = parseAsValue(path);
+	lock.readLock().lock();
+	try {
+	    final Node n = root.find(p.dirItems());
+	    if (n == null)
+		return 0;
+	    final Object v = n.values.get(p.valueName());
+	    return (v instanceof Integer)?((Integer)v).intValue():0;
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public String getString(String path)
+    {
+	final Path p = parseAsValue(path);
+	lock.readLock().lock();
+	try {
+	    final Node n = root.find(p.dirItems());
+	    if (n == null)
+		return "";
+	    final Object v = n.values.get(p.valueName());
+	    return (v instanceof String)?(String)v:"";
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public String[] getDirectories(String path)
+    {
+	final Path p = parseAsDir(path);
+	lock.readLock().lock();
+	try {
+	    final Node n = root.find(p.dirItems());
+	    if (n == null)
+		return null;
+	    return n.subdirs.keySet().toArray(new String[n.subdirs.size()]);
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public String[] getValues(String path)
+    {
+	final Path p = parseAsDir(path);
+	if (p.isRoot())
+	    throw new IllegalArgumentException("root directory may not have values");
+	lock.readLock().lock();
+	try {
+	    final Node n = root.find(p.dirItems());
+	    if (n == null)
+		return null;
+	    return n.values.keySet().toArray(new String[n.values.size()]);
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public int getTypeOf(String path)
+    {
+	try {
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		return INVALID;
+	    lock.readLock().lock();
+	    try {
+		final Node n = root.find(p.dirItems());
+		return n != null?n.getTypeOf(p.valueName()):INVALID;
+	    }
+	    finally {
+		lock.readLock().unlock();
+	    }
+	}
+	catch (Exception e)
+	{
+	    return INVALID;
+	}
+    }
+
+    @Override public boolean hasDirectory(String path)
+    {
+	final Path p = parseAsDir(path);
+	lock.readLock().lock();
+	try {
+	    return root.find(p.dirItems()) != null;
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public boolean hasValue(String path)
+    {
+	final Path p = parseAsValue(path);
+	lock.readLock().lock();
+	try {
+	    final Node n = root.find(p.dirItems());
+	    return n != null && n.values.containsKey(p.valueName());
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public boolean setBoolean(String path, boolean value)
+    {
+	return setValue(path, Boolean.valueOf(value));
+    }
+
+    @Override public boolean setInteger(String path, int value)
+    {
+	return setValue(path, Integer.valueOf(value));
+    }
+
+    @Override public boolean setString(String path, String value)
+    {
+	NullCheck.notNull(value, "value");
+	return setValue(path, value);
+    }
+
+    @Override public String getStringDesignationOfType(int type)
+    {
+	switch (type)
+	{
+	case BOOLEAN:
+	    return "boolean";
+	case INTEGER:
+	    return "integer";
+	case STRING:
+	    return "string";
+	default:
+	    return "invalid";
+	}
+    }
+
+    @Override public DirectorySnapshot getSnapshot(String path, boolean recursive)
+    {
+	final Path p = parseAsDir(path);
+	lock.readLock().lock();
+	try {
+	    final Node n = root.find(p.dirItems());
+	    return n != null?n.snapshot(path, recursive):null;
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public boolean replaceValues(String path, Map<String, Object> values)
+    {
+	NullCheck.notNull(values, "values");
+	ValuesReplacer.checkValues(values);
+	final Path p = parseAsDir(path);
+	if (p.isRoot())
+	    throw new IllegalArgumentException("root directory may not have values");
+	lock.writeLock().lock();
+	try {
+	    //A single record, so the replacing is never seen partially done after a crash
+	    final Records.Builder b = new Records.Builder();
+	    b.addDir(p.dirItems());
+	    b.clearValues(p.dirItems());
+	    for(Map.Entry<String, Object> e: values.entrySet())
+		b.setValue(p.dirItems(), e.getKey(), e.getValue());
+	    append(b);
+	    final Node n = root.obtain(p.dirItems());
+	    n.values.clear();
+	    n.values.putAll(values);
+	    listeners.queue(p.dirItems());
+	    return true;
+	}
+	catch(IOException e)
+	{
+	    Log.error(LOG_COMPONENT, "unable to replace values of " + p.toString() + ":" + e.getClass().getName() + ":" + e.getMessage());
+	    return false;
+	}
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
+	}
+    }
+
+    //Only the changes made through this object are reported
+    @Override public void addChangeListener(String path, Listener listener)
+    {
+	listeners.add(path, listener);
+    }
+
+    @Override public void removeChangeListener(Listener listener)
+    {
+	listeners.remove(listener);
+    }
+
+    //Makes sure all appended records reached the disk
+    public void flush()
+    {
+	lock.readLock().lock();
+	try {
+	    channel.force(false);
+	}
+	catch(IOException e)
+	{
+	    Log.error(LOG_COMPONENT, "unable to flush the registry file:" + e.getClass().getName() + ":" + e.getMessage());
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    public void close()
+    {
+	compactionExecutor.shutdown();
+	synchronized(compactionLock) {
+	    lock.writeLock().lock();
+	    try {
+		channel.force(false);
+		channel.close();
+	    }
+	    catch(IOException e)
+	    {
+		Log.error(LOG_COMPONENT, "unable to close the registry file:" + e.getClass().getName() + ":" + e.getMessage());
+	    }
+	    finally {
+		lock.writeLock().unlock();
+	    }
+	}
+    }
+
+    /**
+     * Rewrites the registry file with the current content only. The
+     * registry remains available during the compaction, the records
+     * appended meanwhile are moved to the new file.
+     */
+    public void compact() throws IOException
+    {
+	synchronized(compactionLock) {
+	    final List<ByteBuffer> records = new LinkedList<ByteBuffer>();
+	    lock.writeLock().lock();
+	    try {
+		compactionScheduled = false;
+		Records.writeTree(root, new ArrayList<String>(), records);
+		pending = new LinkedList<ByteBuffer>();
+	    }
+	    finally {
+		lock.writeLock().unlock();
+	    }
+	    final java.nio.file.Path tmpFile = file.resolveSibling(file.getFileName().toString() + TMP_SUFFIX);
+	    try {
+		final FileChannel tmp = FileChannel.open(tmpFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+		    writeAll(tmp, Records.header());
+		    for(ByteBuffer r: records)
+			writeAll(tmp, r);
+		}
+		catch(IOException e)
+		{
+		    tmp.close();
+		    throw e;
+		}
+		lock.writeLock().lock();
+		try {
+		    try {
+			for(ByteBuffer r: pending)
+			    writeAll(tmp, r);
+			tmp.force(true);
+		    }
+		    finally {
+			tmp.close();
+		    }
+		    channel.close();
+		    try {
+			moveFile(tmpFile, file);
+		    }
+		    finally {
+			//Reopening either the new file or the old one, if the moving failed
+			channel = FileChannel.open(file, StandardOpenOption.WRITE);
+			channel.position(channel.size());
+		    }
+		    compactedSize = channel.size();
+		}
+		finally {
+		    lock.writeLock().unlock();
+		}
+	    }
+	    finally {
+		lock.writeLock().lock();
+		try {
+		    pending = null;
+		}
+		finally {
+		    lock.writeLock().unlock();
+		}
+		Files.deleteIfExists(tmpFile);
+	    }
+	}
+    }
+
+    private boolean setValue(String path, Object value)
+    {
+	final Path p = parseAsValue(path);
+	lock.writeLock().lock();
+	try {
+	    append(new Records.Builder().setValue(p.dirItems(), p.valueName(), value));
+	    root.obtain(p.dirItems()).values.put(p.valueName(), value);
+	    listeners.queue(p.dirItems());
+	    return true;
+	}
+	catch(IOException e)
+	{
+	    Log.error(LOG_COMPONENT, "error setting value " + p.toString() + ":" + e.getClass().getName() + ":" + e.getMessage());
+	    return false;
+	}
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
+	}
+    }
+
+    //Must be called with the write lock held, the record goes to the file before changing the tree
+    private void append(Records.Builder builder) throws IOException
+    {
+	final ByteBuffer rec = builder.build();
+	final ByteBuffer copy = rec.duplicate();
+	final long start = channel.position();
+	try {
+	    writeAll(channel, rec);
+	}
+	catch(IOException e)
+	{
+	    //A part of the record would hide all the records appended after it
+	    try {
+		channel.truncate(start);
+		channel.position(start);
+	    }
+	    catch(IOException ee)
+	    {
+		Log.error(LOG_COMPONENT, "unable to remove the incomplete record from the registry file:" + ee.getClass().getName() + ":" + ee.getMessage());
+	    }
+	    throw e;
+	}
+	//The compaction mustn't take the record which hasn't been written
+	if (pending != null)
+	    pending.add(copy);
+	final long size = channel.position();
+	if (!compactionScheduled && size > MIN_COMPACTION_SIZE && size > 2 * compactedSize)
+	{
+	    compactionScheduled = true;
+	    compactionExecutor.execute(()->{
+		    try {
+			compact();
+		    }
+		    catch(IOException e)
+		    {
+			Log.error(LOG_COMPONENT, "unable to compact the registry file:" + e.getClass().getName() + ":" + e.getMessage());
+		    }
+		});
+	}
+    }
+
+    static private void writeAll(FileChannel c, ByteBuffer buf) throws IOException
+    {
+	while(buf.hasRemaining())
+	    c.write(buf);
+    }
+
+    static private void moveFile(java.nio.file.Path from, java.nio.file.Path to) throws IOException
+    {
+	try {
+	    Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	catch(AtomicMoveNotSupportedException e)
+	{
+	    Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+	}
+    }
+
+    private Path parse(String path)
+    {
+	NullCheck.notNull(path, "path");
+	if (path.isEmpty())
+	    throw new IllegalArgumentException("path may not be empty");
+	final Path p = PathParser.parse(path);
+	if (p == null)
+	    throw new IllegalArgumentException("meaningless path");
+	return p;
+    }
+
+    private Path parseAsValue(String path)
+    {
+	final Path p = parse(path);
+	if (p.isDirectory())
+	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	return p;
+    }
+
+    private Path parseAsDir(String path)
+    {
+	NullCheck.notNull(path, "path");
+	if (path.isEmpty())
+	    throw new IllegalArgumentException("path may not be empty");
+	final Path p = PathParser.parseAsDirectory(path);
+	if (p == null)
+	    throw new IllegalArgumentException("meaningless path");
+	return p;
+    }
+
+    private void onIoException(IOException e, String msg) throws RegistryException
+    {
+	NullCheck.notNull(e, "e");
+	NullCheck.notNull(msg, "msg");
+	Log.error(LOG_COMPONENT, msg + ":" + e.getClass().getName() + ":" + e.getMessage());
+	throw new RegistryException(msg, e);
+    }
+}
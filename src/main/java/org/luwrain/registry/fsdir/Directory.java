@@ -22,6 +22,7 @@ import java.util.*;
 import org.luwrain.core.Registry;
 import org.luwrain.core.Log;
 import org.luwrain.core.NullCheck;
+import org.luwrain.registry.DirectorySnapshot;
 
 class Directory
 {
@@ -31,8 +32,14 @@ class Directory
 
     private final String name;
     private final File dir;
-    private Vector<Directory> subdirs;
-    private TreeMap<String, Value> values;
+    //Loaded lazily, possibly by several readers at once, see RegistryImpl
+    private volatile Map<String, Directory> subdirs;
+    private volatile TreeMap<String, Value> values;
+    //Values files which must be rewritten
+    private boolean stringsChanged = false;
+    private boolean integersChanged = false;
+    private boolean booleansChanged = false;
+    private boolean deleted = false;
 
     Directory(String name, File dir)
     {
@@ -55,7 +62,7 @@ class Directory
 	if (newName.isEmpty())
 	    throw new IllegalArgumentException("newName may not be empty");
 	loadSubdirs();
-	Directory d = findSubdir(name);
+	Directory d = findSubdir(newName);
 	if (d != null)
 	    return d;
 	final File f = new File(dir, newName);
@@ -64,7 +71,7 @@ class Directory
 	d = new Directory(newName, f);
 	if (!d.createValuesFiles())
 	    return null;
-	subdirs.add(d);
+	subdirs.put(newName, d);
 	return d;
     }
 
@@ -91,16 +98,13 @@ class Directory
 	if (dirName.isEmpty())
 	    throw new IllegalArgumentException("dirName may not be empty");
 	loadSubdirs();
-	for(Directory s: subdirs)
-	    if (dirName.equals(s.getName()))
-		return s;
-	return null;
+	return subdirs.get(dirName);
     }
 
     void delete() throws IOException
     {
 	loadSubdirs();
-	for(Directory d:subdirs)
+	for(Directory d: subdirs.values())
 	    d.delete();
 	new File(dir, STRINGS_VALUES_FILE).delete();
 	new File(dir, INTEGERS_VALUES_FILE).delete();
@@ -108,6 +112,10 @@ class Directory
 	dir.delete();
 	values = null;
 	subdirs = null;
+	deleted = true;
+	stringsChanged = false;
+	integersChanged = false;
+	booleansChanged = false;
     }
 
     boolean deleteValue(String valueName) throws IOException
@@ -118,8 +126,7 @@ class Directory
 	loadValues();
 	if (!values.containsKey(valueName))
 	    return false;
-	values.remove(valueName);
-	saveValues();
+	markChanged(values.remove(valueName).type);
 	return true;
     }
 
@@ -168,13 +175,14 @@ class Directory
 	if (!values.containsKey(valueName))
 	{
 	    values.put(valueName, new Value(value));
-	    saveValues();
+	    markChanged(Registry.BOOLEAN);
 	    return true;
 	}
 	final Value v = values.get(valueName);
+	markChanged(v.type);
 	v.type = Registry.BOOLEAN;
 	v.boolValue = value;
-	saveValues();
+	markChanged(Registry.BOOLEAN);
 	return true;
     }
 
@@ -187,13 +195,14 @@ class Directory
 	if (!values.containsKey(valueName))
 	{
 	    values.put(valueName, new Value(value));
-	    saveValues();
+	    markChanged(Registry.INTEGER);
 	    return true;
 	}
 	final Value v = values.get(valueName);
+	markChanged(v.type);
 	v.type = Registry.INTEGER;
 	v.intValue = value;
-	saveValues();
+	markChanged(Registry.INTEGER);
 	return true;
     }
 
@@ -207,23 +216,22 @@ class Directory
 	if (!values.containsKey(valueName))
 	{
 	    values.put(valueName, new Value(value));
-	    saveValues();
+	    markChanged(Registry.STRING);
 	    return true;
 	}
 	final Value v = values.get(valueName);
+	markChanged(v.type);
 	v.type = Registry.STRING;
 	v.strValue = value;
-	saveValues();
+	markChanged(Registry.STRING);
 	return true;
     }
 
     String[] subdirs() throws IOException
     {
 	loadSubdirs();
-	final LinkedList<String> v = new LinkedList<String>();
-	for (Directory d: subdirs)
-	    v.add(d.getName());
-	return v.toArray(new String[v.size()]);
+	final Set<String> names = subdirs.keySet();
+	return names.toArray(new String[names.size()]);
     }
 
     String[] values() throws IOException
@@ -255,17 +263,95 @@ class Directory
 return values.get(valueName).type;
     }
 
-    void refreshDeleted() throws IOException
+    //Marks as changed only the files of the types which were present before or are present now
+    void replaceValues(Map<String, Object> newValues) throws IOException
     {
-	subdirs = null;
+	NullCheck.notNull(newValues, "newValues");
+	loadValues();
+	for(Value v: values.values())
+	    markChanged(v.type);
+	final TreeMap<String, Value> res = new TreeMap<String, Value>();
+	for(Map.Entry<String, Object> e: newValues.entrySet())
+	{
+	    final Object o = e.getValue();
+	    final Value v;
+	    if (o instanceof String)
+		v = new Value((String)o); else
+		if (o instanceof Integer)
+		    v = new Value(((Integer)o).intValue()); else
+		    v = new Value(((Boolean)o).booleanValue());
+	    res.put(e.getKey(), v);
+	    markChanged(v.type);
+	}
+	values = res;
+    }
+
+    DirectorySnapshot snapshot(String path, boolean recursive) throws IOException
+    {
+	NullCheck.notEmpty(path, "path");
+	loadValues();
 	loadSubdirs();
+	final Map<String, Object> res = new TreeMap<String, Object>();
+	for(Map.Entry<String, Value> e: values.entrySet())
+	{
+	    final Value v = e.getValue();
+	    switch(v.type)
+	    {
+	    case Registry.STRING:
+		res.put(e.getKey(), v.strValue);
+		break;
+	    case Registry.INTEGER:
+		res.put(e.getKey(), Integer.valueOf(v.intValue));
+		break;
+	    case Registry.BOOLEAN:
+		res.put(e.getKey(), Boolean.valueOf(v.boolValue));
+		break;
+	    }
+	}
+	final Map<String, DirectorySnapshot> subdirsRes = new LinkedHashMap<String, DirectorySnapshot>();
+	for(Map.Entry<String, Directory> e: subdirs.entrySet())
+	    subdirsRes.put(e.getKey(), recursive?e.getValue().snapshot(Registry.join(path, e.getKey()), true):null);
+	return new DirectorySnapshot(path, res, subdirsRes, recursive);
     }
 
-    private void loadValues() throws IOException
+    //The other subdirectories are kept, they may have unsaved changes
+    void forgetSubdir(String dirName)
+    {
+	NullCheck.notEmpty(dirName, "dirName");
+	final Map<String, Directory> s = subdirs;
+	if (s != null)
+	    s.remove(dirName);
+    }
+
+    //Re-reads the list of subdirectories keeping the already known ones with their content
+    void refreshSubdirs() throws IOException
+    {
+	final Map<String, Directory> old = subdirs;
+	if (old == null)
+	    return;
+	final Map<String, Directory> res = new LinkedHashMap<String, Directory>();
+	final File[] content = dir.listFiles();
+	if (content != null)
+	    for(File f: content)
+		if (f.isDirectory())
+		    res.put(f.getName(), old.containsKey(f.getName())?old.get(f.getName()):new Directory(f.getName(), f));
+	subdirs = res;
+    }
+
+    //Drops the loaded values to read them again on the next access, not possible with unsaved changes
+    boolean reloadValues()
+    {
+	if (hasChanges())
+	    return false;
+	values = null;
+	return true;
+    }
+
+    synchronized private void loadValues() throws IOException
     {
 	if (values != null)
 	    return;
-	values = new TreeMap<String, Value>();
+	final TreeMap<String, Value> res = new TreeMap<String, Value>();
 	Map<String, String> raw;
 
 	//strings
@@ -274,12 +360,12 @@ return values.get(valueName).type;
 	{
 	    final String k = e.getKey();
 	    final String v = e.getValue();
-	    if (values. containsKey(k))
+	    if (res.containsKey(k))
 	    {
 		Log.warning("registry", "doublicating of key \'" + k + "\' in values of " + dir.getAbsolutePath());
 		continue;
 	    }
-	    values.put(k, new Value(v));
+	    res.put(k, new Value(v));
 	}
 
 	//booleans
@@ -288,21 +374,21 @@ return values.get(valueName).type;
 	{
 	    final String k = e.getKey();
 	    final String v = e.getValue();
-	    if (values. containsKey(k))
+	    if (res.containsKey(k))
 	    {
 		Log.warning("registry", "doublicating of key \'" + k + "\' in values of " + dir.getAbsolutePath());
 		continue;
 	    }
-	    boolean res;
+	    boolean value;
 	    if (v.equals("true") || v.equals("True") || v.equals("TRUE"))
-		res = true; else
+		value = true; else
 	    if (v.equals("false") || v.equals("False") || v.equals("FALSE"))
-		res = false; else
+		value = false; else
 	    {
 		Log.warning("registry", "key \'" + k + "\' in " + dir.getAbsolutePath() + "\' has an invalid boolean value \'" + v + "\'");
 		continue;
 	    }
-	    values.put(e.getKey(), new Value(res));
+	    res.put(e.getKey(), new Value(value));
 	}
 
 	//integers
@@ -312,39 +398,56 @@ return values.get(valueName).type;
 	    final String k = e.getKey();
 	    final String v = e.getValue();
 	    //	    Log.debug("fsdir", "k=" + k + ",v=" + v);
-	    if (values. containsKey(k))
+	    if (res.containsKey(k))
 	    {
 		Log.warning("registry", "doublicating of key \'" + k + "\' in values of " + dir.getAbsolutePath());
 		continue;
 	    }
-	    int res;
+	    int value;
 	    try {
-		res = Integer.parseInt(v);
+		value = Integer.parseInt(v);
 	    }
 	    catch (NumberFormatException ee)
 	    {
 		Log.warning("fsdir", "key \'" + k + "\' in " + dir.getAbsolutePath() + "\' has an invalid integer value \'" + v + "\'");
 		continue;
 	    }
-	    values.put(e.getKey(), new Value(res));
+	    res.put(e.getKey(), new Value(value));
 	}
+	//Publishing only the completely loaded map
+	values = res;
     }
 
-    private void loadSubdirs() throws IOException
+    synchronized private void loadSubdirs() throws IOException
     {
 	if (subdirs != null)
 	    return;
-	subdirs = new Vector<Directory>();
+	//Keeping the order of the listing
+	final Map<String, Directory> res = new LinkedHashMap<String, Directory>();
 	final File[] content = dir.listFiles();
 	for(File f: content)
 	    if (f.isDirectory())
-		subdirs.add(new Directory(f.getName(), f));
+		res.put(f.getName(), new Directory(f.getName(), f));
+	subdirs = res;
     }
 
-    private void saveValues() throws IOException
+    boolean hasChanges()
     {
-	if (values == null)
-	    return;
+	return stringsChanged || integersChanged || booleansChanged;
+    }
+
+    /**
+     * Prepares the content of the values files changed since the previous
+     * call. The returned content is a snapshot which may be safely written
+     * later without any locking. The marks of changes are cleared.
+     *
+     * @return The new content of the changed files, empty if there are no changes
+     */
+    Map<File, TreeMap<String, String>> takeChanges()
+    {
+	final Map<File, TreeMap<String, String>> res = new HashMap<File, TreeMap<String, String>>();
+	if (deleted || values == null || !hasChanges())
+	    return res;
 	final TreeMap<String, String> stringValues = new TreeMap<String, String>();
 	final TreeMap<String, String> integerValues = new TreeMap<String, String>();
 	final TreeMap<String, String> booleanValues = new TreeMap<String, String>();
@@ -365,8 +468,31 @@ return values.get(valueName).type;
 		break;
 	    }
 	}
-	ValueWriter.saveValuesToFile(stringValues, new File(dir, STRINGS_VALUES_FILE).getAbsolutePath());
-		ValueWriter.saveValuesToFile(integerValues, new File(dir, INTEGERS_VALUES_FILE).getAbsolutePath());
-	ValueWriter.saveValuesToFile(booleanValues, new File(dir, BOOLEANS_VALUES_FILE).getAbsolutePath());
+	if (stringsChanged)
+	    res.put(new File(dir, STRINGS_VALUES_FILE), stringValues);
+	if (integersChanged)
+	    res.put(new File(dir, INTEGERS_VALUES_FILE), integerValues);
+	if (booleansChanged)
+	    res.put(new File(dir, BOOLEANS_VALUES_FILE), booleanValues);
+	stringsChanged = false;
+	integersChanged = false;
+	booleansChanged = false;
+	return res;
+    }
+
+    private void markChanged(int type)
+    {
+	switch(type)
+	{
+	case Registry.STRING:
+	    stringsChanged = true;
+	    break;
+	case Registry.INTEGER:
+	    integersChanged = true;
+	    break;
+	case Registry.BOOLEAN:
+	    booleansChanged = true;
+	    break;
+	}
     }
 }
@@ -0,0 +1,84 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry.fsdir;
+
+import java.util.*;
+
+import org.luwrain.core.*;
+import org.luwrain.registry.Path;
+import org.luwrain.registry.PathParser;
+
+//Keeps the recently parsed paths, the least recently used are evicted first
+class PathCache
+{
+    private final Map<String, Path> values;
+    private final Map<String, Path> dirs;
+
+    PathCache(int capacity)
+    {
+	if (capacity <= 0)
+	    throw new IllegalArgumentException("capacity (" + capacity + ") must be greater than zero");
+	this.values = createMap(capacity);
+	this.dirs = createMap(capacity);
+    }
+
+    //Returns null for meaningless paths, they are not cached
+    Path parse(String path)
+    {
+	NullCheck.notNull(path, "path");
+	synchronized(values) {
+	    final Path res = values.get(path);
+	    if (res != null)
+		return res;
+	}
+	final Path res = PathParser.parse(path);
+	if (res == null)
+	    return null;
+	synchronized(values) {
+	    values.put(path, res);
+	}
+	return res;
+    }
+
+    //Returns null for meaningless paths, they are not cached
+    Path parseAsDirectory(String path)
+    {
+	NullCheck.notNull(path, "path");
+	synchronized(dirs) {
+	    final Path res = dirs.get(path);
+	    if (res != null)
+		return res;
+	}
+	final Path res = PathParser.parseAsDirectory(path);
+	if (res == null)
+	    return null;
+	synchronized(dirs) {
+	    dirs.put(path, res);
+	}
+	return res;
+    }
+
+    static private Map<String, Path> createMap(int capacity)
+    {
+	return new LinkedHashMap<String, Path>(capacity, 0.75f, true){
+	    @Override protected boolean removeEldestEntry(Map.Entry<String, Path> eldest)
+	    {
+		return size() > capacity;
+	    }
+	};
+    }
+}
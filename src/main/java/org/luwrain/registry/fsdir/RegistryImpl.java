@@ -17,33 +17,116 @@
 package org.luwrain.registry.fsdir;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
 import java.io.IOException;
 import java.io.File;
 
 import org.luwrain.core.*;
 import org.luwrain.registry.Path;
-import org.luwrain.registry.PathParser;
+import org.luwrain.registry.DirectorySnapshot;
+import org.luwrain.registry.ValuesReplacer;
+import org.luwrain.registry.ChangeNotifier;
+import org.luwrain.registry.ChangeListeners;
 
-public class RegistryImpl implements Registry
+public class RegistryImpl implements Registry, DirectorySnapshot.Provider, ValuesReplacer, ChangeNotifier
 {
     static final String LOG_COMPONENT = "fsdir";
+    static private final int PATH_CACHE_CAPACITY = 1024;
 
 
     private final String base;
     private final Directory root;
+    //Readers go in parallel, a writer excludes everybody
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PathCache pathCache = new PathCache(PATH_CACHE_CAPACITY);
+
+    //Write-behind: the delay in milliseconds, zero means saving on every change
+    private final int flushDelay;
+    private final Set<Directory> changedDirs = Collections.newSetFromMap(new IdentityHashMap<Directory, Boolean>());
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flushExecutor = null;
+    private boolean flushScheduled = false;
+
+    private final ChangeListeners listeners = new ChangeListeners();
+    private volatile Watcher watcher = null;
+    //The modification time and the size of the files written by this registry, to skip own changes noticed by the watcher
+    private final Map<String, String> ownWrites = new ConcurrentHashMap<String, String>();
+    //Put to ownWrites for the files being written, their changes are own whatever the stamp is
+    static private final String WRITING = "writing";
 
     public RegistryImpl(java.nio.file.Path base)
+    {
+	this(base, 0);
+    }
+
+    /**
+     * Creates the registry with delayed saving of the changes. All the
+     * changes made within {@code flushDelay} milliseconds after the first
+     * one are written together, every values file only once, regardless how
+     * many times it was modified. The owner must call {@link #flush()}
+     * before exiting.
+     *
+     * @param base The directory with the registry data
+     * @param flushDelay The delay of saving in milliseconds, zero means saving every change immediately
+     */
+    public RegistryImpl(java.nio.file.Path base, int flushDelay)
     {
 	NullCheck.notNull(base, "base");
+	if (flushDelay < 0)
+	    throw new IllegalArgumentException("flushDelay (" + flushDelay + ") may not be negative");
 	this.base = base.toString();
 	System.out.println("!!! " + base);
 	this.root = new Directory("root", base.toFile());
+	this.flushDelay = flushDelay;
     }
 
-    @Override public synchronized boolean addDirectory(String path)
+    /**
+     * Writes to disk all pending changes. The values are taken under the
+     * registry lock, but the files are written without it, so the readers
+     * are not blocked by the disk operations.
+     */
+    public void flush()
     {
-	final Path p = parseAsDir(path);
-	return addDirectory(p);
+	synchronized(flushLock) {
+	    final List<Map<File, TreeMap<String, String>>> changes = new LinkedList<Map<File, TreeMap<String, String>>>();
+	    lock.writeLock().lock();
+	    try {
+		flushScheduled = false;
+		for(Directory d: changedDirs)
+		{
+		    final Map<File, TreeMap<String, String>> c = d.takeChanges();
+		    //Before releasing the lock, the watcher may notice the writing at any moment after that
+		    markWriting(c);
+		    changes.add(c);
+		}
+		changedDirs.clear();
+	    }
+	    finally {
+		lock.writeLock().unlock();
+	    }
+	    for(Map<File, TreeMap<String, String>> c: changes)
+		try {
+		    writeChanges(c);
+		}
+		catch(IOException e)
+		{
+		    Log.error(LOG_COMPONENT, "unable to save registry values:" + e.getClass().getName() + ":" + e.getMessage());
+		}
+	}
+    }
+
+    @Override public boolean addDirectory(String path)
+    {
+	lock.writeLock().lock();
+	try {
+	    final Path p = parseAsDir(path);
+	    return addDirectory(p);
+	}
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
+	}
     }
 
     private boolean addDirectory(Path p)
@@ -70,6 +153,7 @@ public class RegistryImpl implements Registry
 		d = d.createSubdir(items[pos]);
 		++pos;
 	    }
+	    listeners.queue(items);
 	}
 	catch(IOException e)
 	{
@@ -79,118 +163,290 @@ public class RegistryImpl implements Registry
 	return true;
     }
 
-    @Override public synchronized boolean deleteDirectory(String path)
+    @Override public boolean deleteDirectory(String path)
     {
 	final Path p = parseAsDir(path);
 	if (p.isRoot())
 	    throw new IllegalArgumentException("Root directory may not be deleted");
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
-		return false;
-	    d.delete();
-	    Path parent = p.getParentOfDir();
-	    d = findDirectory(parent.dirItems());//Should never return null
-	    d.refreshDeleted();
-	return true;
+	    //Preventing the pending changes from being written to the directory being deleted
+	    synchronized(flushLock) {
+		lock.writeLock().lock();
+		try {
+		    Directory d = findDirectory(p.dirItems());
+		    if (d == null)
+			return false;
+		    d.delete();
+		    Path parent = p.getParentOfDir();
+		    d = findDirectory(parent.dirItems());//Should never return null
+		    final String[] items = p.dirItems();
+		    d.forgetSubdir(items[items.length - 1]);
+		    listeners.queueDeleting(p.dirItems());
+		    return true;
+		}
+		catch(IOException e)
+		{
+		    onIoException(e, "unable to delete directory:" + p.toString());
+		    return false;
+		}
+		finally {
+		    lock.writeLock().unlock();
+		}
+	    }
 	}
-	catch(IOException e)
-	{
-	    onIoException(e, "unable to delete directory:" + p.toString());
-	    return false;
+	finally {
+	    listeners.fire();
 	}
     }
 
-    @Override public synchronized boolean deleteValue(String path)
+    @Override public boolean deleteValue(String path)
     {
-	final Path p = parse(path);
-	if (p.isDirectory())
-	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	lock.writeLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		throw new IllegalArgumentException("path addresses a directory, not a value");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return false;
+		return onChanged(p, d, d.deleteValue(p.valueName()));
+	    }
+	    catch(IOException e)
+	    {
+		onIoException(e, "unable to delete registry value:" + p.toString());
 		return false;
-	    return d.deleteValue(p.valueName());
+	    }
 	}
-	catch(IOException e)
-	{
-	    onIoException(e, "unable to delete registry value:" + p.toString());
-	    return false;
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
 	}
     }
 
-    @Override public synchronized boolean getBoolean(String path)
+    @Override public boolean getBoolean(String path)
     {
-	final Path p = parse(path);
-	if (p.isDirectory())
-	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	lock.readLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		throw new IllegalArgumentException("path addresses a directory, not a value");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return false;
+		return d.getBoolean(p.valueName());
+	    }
+	    catch (IOException e)
+	    {
+		onIoException(e, "unable to read boolean  value:" + e.getMessage());
 		return false;
-	    return d.getBoolean(p.valueName());
+	    }
 	}
-	catch (IOException e)
-	{
-	    onIoException(e, "unable to read boolean  value:" + e.getMessage());
-	    return false;
+	finally {
+	    lock.readLock().unlock();
 	}
     }
 
-    @Override public synchronized String[] getDirectories(String path)
+    @Override public String[] getDirectories(String path)
     {
-	final Path p = parseAsDir(path);
+	lock.readLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
+	    final Path p = parseAsDir(path);
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return null;
+		return d.subdirs();
+	    }
+	    catch (IOException e)
+	    {
+		onIoException(e, "unable to read list of subdirectories in " + p.toString());
 		return null;
-	    return d.subdirs();
+	    }
 	}
-	catch (IOException e)
-	{
-	    onIoException(e, "unable to read list of subdirectories in " + p.toString());
-	    return null;
+	finally {
+	    lock.readLock().unlock();
 	}
     }
 
-    @Override public synchronized int getInteger(String path)
+    @Override public int getInteger(String path)
     {
-	final Path p = parse(path);
-	if (p.isDirectory())
-	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	lock.readLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		throw new IllegalArgumentException("path addresses a directory, not a value");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return 0;
+		return d.getInteger(p.valueName());
+	    }
+	    catch (IOException e)
+	    {
+		onIoException(e, "unable to read integer value:" + e.getMessage());
 		return 0;
-	    return d.getInteger(p.valueName());
+	    }
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public String getString(String path)
+    {
+	lock.readLock().lock();
+	try {
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		throw new IllegalArgumentException("path addresses a directory, not a value");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return "";
+		final String res = d.getString(p.valueName());
+		return res;
+	    }
+	    catch (IOException e)
+	    {
+		onIoException(e, "unable to read string value:" + e.getMessage());
+		return "";
+	    }
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public DirectorySnapshot getSnapshot(String path, boolean recursive)
+    {
+	lock.readLock().lock();
+	try {
+	    final Path p = parseAsDir(path);
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return null;
+		return d.snapshot(path, recursive);
+	    }
+	    catch (IOException e)
+	    {
+		onIoException(e, "unable to take the snapshot of " + p.toString());
+		return null;
+	    }
+	}
+	finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override public boolean replaceValues(String path, Map<String, Object> values)
+    {
+	NullCheck.notNull(values, "values");
+	ValuesReplacer.checkValues(values);
+	lock.writeLock().lock();
+	try {
+	    final Path p = parseAsDir(path);
+	    if (p.isRoot())
+		throw new IllegalArgumentException("root directory may not have values");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		{
+		    addDirectory(p);
+		    d = findDirectory(p.dirItems());
+		    if (d == null)
+			return false;
+		}
+		d.replaceValues(values);
+		return onChanged(p, d, true);
+	    }
+	    catch(IOException e)
+	    {
+		onIoException(e, "unable to replace values of " + p.toString());
+		return false;
+	    }
+	}
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
+	}
+    }
+
+    /**
+     * Adds the listener of changes. Besides the changes made through this
+     * object, the directory of the listener is watched for the changes
+     * of the files by other processes. The subdirectories are not watched
+     * for that.
+     */
+    @Override public void addChangeListener(String path, Listener listener)
+    {
+	NullCheck.notNull(listener, "listener");
+	final Path p = parseAsDir(path);
+	listeners.add(path, listener);
+	try {
+	    synchronized(listeners) {
+		if (watcher == null)
+		{
+		    watcher = new Watcher((dirItems, dir, changedFiles, subdirsChanged)->onExternalChange(dirItems, dir, changedFiles, subdirsChanged));
+		    final Thread t = new Thread(watcher, "registry-watcher");
+		    t.setDaemon(true);
+		    t.start();
+		}
+	    }
+	    watcher.watch(java.nio.file.Paths.get(base, p.dirItems()), p.dirItems());
 	}
-	catch (IOException e)
+	catch(IOException e)
 	{
-	    onIoException(e, "unable to read integer value:" + e.getMessage());
-	    return 0;
+	    Log.warning(LOG_COMPONENT, "unable to watch " + p.toString() + " for external changes:" + e.getClass().getName() + ":" + e.getMessage());
 	}
     }
 
-    @Override public synchronized String getString(String path)
+    @Override public void removeChangeListener(Listener listener)
     {
-	final Path p = parse(path);
-	if (p.isDirectory())
-	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	listeners.remove(listener);
+    }
+
+    private void onExternalChange(String[] dirItems, java.nio.file.Path dir, Set<String> changedFiles, boolean subdirsChanged)
+    {
+	boolean valuesChanged = false;
+	for(String f: changedFiles)
+	{
+	    final File file = dir.resolve(f).toFile();
+	    final String own = ownWrites.get(file.getAbsolutePath());
+	    if (own == null || (own != WRITING && !own.equals(getFileStamp(file))))
+		valuesChanged = true;
+	}
+	if (!valuesChanged && !subdirsChanged)
+	    return;
+	lock.writeLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
+	    final Directory d = findDirectory(dirItems);
 	    if (d == null)
-		return "";
-	    final String res = d.getString(p.valueName());
-	    return res;
+		return;
+	    //The unsaved changes are kept, they will overwrite the files anyway
+	    if (valuesChanged)
+	    {
+		if (d.hasChanges())
+		    Log.warning(LOG_COMPONENT, "values in " + dir.toString() + " were changed outside, but there are unsaved changes, keeping them"); else
+		    d.reloadValues();
+	    }
+	    if (subdirsChanged)
+		d.refreshSubdirs();
+	    listeners.queue(dirItems);
 	}
-	catch (IOException e)
+	catch(IOException e)
 	{
-	    onIoException(e, "unable to read string value:" + e.getMessage());
-	    return "";
+	    Log.error(LOG_COMPONENT, "unable to refresh " + dir.toString() + ":" + e.getClass().getName() + ":" + e.getMessage());
+	}
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
 	}
     }
 
-    @Override public synchronized String getStringDesignationOfType(int type)
+    @Override public String getStringDesignationOfType(int type)
     {
 	switch (type)
 	{
@@ -205,149 +461,250 @@ public class RegistryImpl implements Registry
 	}
     }
 
-    @Override public synchronized int getTypeOf(String path)
+    @Override public int getTypeOf(String path)
     {
+	lock.readLock().lock();
 	try {
-	    final Path p = parse(path);
-	    if (p.isDirectory())
-		return INVALID;
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
+	    try {
+		final Path p = parse(path);
+		if (p.isDirectory())
+		    return INVALID;
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return INVALID;
+		return d.getTypeOf(p.valueName());
+	    }
+	    catch (Exception e)
+	    {
 		return INVALID;
-	    return d.getTypeOf(p.valueName());
+	    }
 	}
-	catch (Exception e)
-	{
-	    return INVALID;
+	finally {
+	    lock.readLock().unlock();
 	}
     }
 
-    @Override public synchronized String[] getValues(String path)
+    @Override public String[] getValues(String path)
     {
-	final Path p = parseAsDir(path);
-	if (p.isRoot())
-	    throw new IllegalArgumentException("root directory may not have values");
+	lock.readLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
+	    final Path p = parseAsDir(path);
+	    if (p.isRoot())
+		throw new IllegalArgumentException("root directory may not have values");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return null;
+		return d.values();
+	    }
+	    catch (IOException e)
+	    {
+		Log.error("registry", "error while reading list of values of " + p.toString() + ":" + e.getMessage());
+		e.printStackTrace();
 		return null;
-	    return d.values();
+	    }
 	}
-	catch (IOException e)
-	{
-	    Log.error("registry", "error while reading list of values of " + p.toString() + ":" + e.getMessage());
-	    e.printStackTrace();
-	    return null;
+	finally {
+	    lock.readLock().unlock();
 	}
     }
 
-    @Override public synchronized boolean hasDirectory(String path)
+    @Override public boolean hasDirectory(String path)
     {
-	final Path p = parseAsDir(path);
+	lock.readLock().lock();
 	try {
-	    return findDirectory(p.dirItems()) != null;
+	    final Path p = parseAsDir(path);
+	    try {
+		return findDirectory(p.dirItems()) != null;
+	    }
+	    catch (IOException e)
+	    {
+		Log.error("registry", "error while checking a directory " + p.toString() + ":" + e.getMessage());
+		e.printStackTrace();
+		return false;
+	    }
 	}
-	catch (IOException e)
-	{
-	    Log.error("registry", "error while checking a directory " + p.toString() + ":" + e.getMessage());
-	    e.printStackTrace();
-	    return false;
+	finally {
+	    lock.readLock().unlock();
 	}
     }
 
-    @Override public synchronized boolean hasValue(String path)
+    @Override public boolean hasValue(String path)
     {
-	final Path p = parse(path);
-	if (p.isDirectory())
-	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	lock.readLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		throw new IllegalArgumentException("path addresses a directory, not a value");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		    return false;
+		return d.hasValue(p.valueName());
+	    }
+	    catch(IOException e)
+	    {
+		Log.error("registry", "error while checking a value " + p.toString() + ":" + e.getMessage());
+		e.printStackTrace();
 		return false;
-	    return d.hasValue(p.valueName());
+	    }
 	}
-	catch(IOException e)
-	{
-	    Log.error("registry", "error while checking a value " + p.toString() + ":" + e.getMessage());
-	    e.printStackTrace();
-	    return false;
+	finally {
+	    lock.readLock().unlock();
 	}
     }
 
-    @Override public synchronized boolean setBoolean(String path, boolean value)
+    @Override public boolean setBoolean(String path, boolean value)
     {
-	final Path p = parse(path);
-	if (p.isDirectory())
-	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	lock.writeLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
-	    {
-		if (!addDirectory(new Path(true, p.dirItems(), "")))
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		throw new IllegalArgumentException("path addresses a directory, not a value");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		{
+		    if (!addDirectory(new Path(true, p.dirItems(), "")))
+			return false;
+    d = findDirectory(p.dirItems());
+    if (d == null)
 		    return false;
-d = findDirectory(p.dirItems());
-if (d == null)
+		}
+		return onChanged(p, d, d.setBoolean(p.valueName(), value));
+	    }
+	    catch (IOException e)
+	    {
+		Log.error("registry", "error setting boolean value " + p.toString() + ":" + e.getMessage());
+		e.printStackTrace();
 		return false;
 	    }
-	    return d.setBoolean(p.valueName(), value);
 	}
-	catch (IOException e)
-	{
-	    Log.error("registry", "error setting boolean value " + p.toString() + ":" + e.getMessage());
-	    e.printStackTrace();
-	    return false;
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
 	}
     }
 
-    @Override public synchronized boolean setInteger(String path, int value)
+    @Override public boolean setInteger(String path, int value)
     {
-	final Path p = parse(path);
-	if (p.isDirectory())
-	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	lock.writeLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
-	    {
-		if (!addDirectory(new Path(true, p.dirItems(), "")))
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		throw new IllegalArgumentException("path addresses a directory, not a value");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		{
+		    if (!addDirectory(new Path(true, p.dirItems(), "")))
+			return false;
+    d = findDirectory(p.dirItems());
+    if (d == null)
 		    return false;
-d = findDirectory(p.dirItems());
-if (d == null)
+		}
+		return onChanged(p, d, d.setInteger(p.valueName(), value));
+	    }
+	    catch (IOException e)
+	    {
+		Log.error("registry", "error setting integer value " + p.toString() + ":" + e.getMessage());
+		e.printStackTrace();
 		return false;
 	    }
-	    return d.setInteger(p.valueName(), value);
 	}
-	catch (IOException e)
-	{
-	    Log.error("registry", "error setting integer value " + p.toString() + ":" + e.getMessage());
-	    e.printStackTrace();
-	    return false;
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
 	}
     }
 
-    @Override public synchronized boolean setString(String path, String value)
+    @Override public boolean setString(String path, String value)
     {
-	NullCheck.notNull(value, "value");
-	final Path p = parse(path);
-	if (p.isDirectory())
-	    throw new IllegalArgumentException("path addresses a directory, not a value");
+	lock.writeLock().lock();
 	try {
-	    Directory d = findDirectory(p.dirItems());
-	    if (d == null)
-	    {
-		if (!addDirectory(new Path(true, p.dirItems(), "")))
+	    NullCheck.notNull(value, "value");
+	    final Path p = parse(path);
+	    if (p.isDirectory())
+		throw new IllegalArgumentException("path addresses a directory, not a value");
+	    try {
+		Directory d = findDirectory(p.dirItems());
+		if (d == null)
+		{
+		    if (!addDirectory(new Path(true, p.dirItems(), "")))
+			return false;
+    d = findDirectory(p.dirItems());
+    if (d == null)
 		    return false;
-d = findDirectory(p.dirItems());
-if (d == null)
+		}
+		return onChanged(p, d, d.setString(p.valueName(), value));
+	    }
+	    catch (IOException e)
+	    {
+		Log.error("registry", "error setting string value " + p.toString() + ":" + e.getMessage());
+		e.printStackTrace();
 		return false;
 	    }
-	    return d.setString(p.valueName(), value);
 	}
-	catch (IOException e)
+	finally {
+	    lock.writeLock().unlock();
+	    listeners.fire();
+	}
+    }
+
+    //Must be called with the write lock held
+    private boolean onChanged(Path p, Directory d, boolean res) throws IOException
+    {
+	NullCheck.notNull(p, "p");
+	NullCheck.notNull(d, "d");
+	if (!d.hasChanges())
+	    return res;
+	listeners.queue(p.dirItems());
+	if (flushDelay == 0)
 	{
-	    Log.error("registry", "error setting string value " + p.toString() + ":" + e.getMessage());
-	    e.printStackTrace();
-	    return false;
+	    writeChanges(d.takeChanges());
+	    return res;
 	}
+	changedDirs.add(d);
+	if (!flushScheduled)
+	{
+	    if (flushExecutor == null)
+		flushExecutor = Executors.newSingleThreadScheduledExecutor((r)->{
+			final Thread t = new Thread(r, "registry-flush");
+			t.setDaemon(true);
+			return t;
+		    });
+	    flushExecutor.schedule(()->flush(), flushDelay, TimeUnit.MILLISECONDS);
+	    flushScheduled = true;
+	}
+	return res;
+    }
+
+    private void writeChanges(Map<File, TreeMap<String, String>> changes) throws IOException
+    {
+	NullCheck.notNull(changes, "changes");
+	markWriting(changes);
+	for(Map.Entry<File, TreeMap<String, String>> e: changes.entrySet())
+	{
+	    final String path = e.getKey().getAbsolutePath();
+	    try {
+		ValueWriter.saveValuesToFile(e.getValue(), path);
+	    }
+	    finally {
+		//The stamp replaces the mark only after the file is complete
+		ownWrites.put(path, getFileStamp(e.getKey()));
+	    }
+	}
+    }
+
+    private void markWriting(Map<File, TreeMap<String, String>> changes)
+    {
+	for(File f: changes.keySet())
+	    ownWrites.put(f.getAbsolutePath(), WRITING);
+    }
+
+    static private String getFileStamp(File f)
+    {
+	return "" + f.lastModified() + ":" + f.length();
     }
 
     //Returns the root if path is empty, null is returned if there is no such path without throwing an exception;
@@ -373,7 +730,7 @@ if (d == null)
 	NullCheck.notNull(path, "path");
 	if (path.isEmpty())
 	    throw new IllegalArgumentException("path may not be empty");
-	final Path p = PathParser.parse(path);
+	final Path p = pathCache.parse(path);
 	if (p == null)
 	    throw new IllegalArgumentException("meaningless path");
 	return p;
@@ -384,7 +741,7 @@ if (d == null)
 	NullCheck.notNull(path, "path");
 	if (path.isEmpty())
 	    throw new IllegalArgumentException("path may not be empty");
-final Path p = PathParser.parseAsDirectory(path);
+	final Path p = pathCache.parseAsDirectory(path);
 	if (p == null)
 	    throw new IllegalArgumentException("meaningless path");
 	return p;
@@ -25,10 +25,14 @@ import org.luwrain.core.Log;
 
 class ValueWriter
 {
+    static final String TMP_SUFFIX = ".tmp";
+
     static void saveValuesToFile(TreeMap<String, String> values, String fileName) throws IOException
     {
 	final Path path = Paths.get(fileName);
-	try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+	//Writing to a temporary file first, so the reader never sees a partially written file
+	final Path tmpPath = Paths.get(fileName + TMP_SUFFIX);
+	try (BufferedWriter writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8))
 	    {
 		for(Map.Entry<String,String> e: values.entrySet())
 		{
@@ -40,6 +44,13 @@ class ValueWriter
 		    writer.newLine();
 		}
 	    }
+	try {
+	    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	catch(AtomicMoveNotSupportedException e)
+	{
+	    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+	}
     }
 
     static private String escapeString(String str)
@@ -0,0 +1,101 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.registry.fsdir;
+
+import java.util.*;
+import java.io.IOException;
+import java.nio.file.*;
+
+import org.luwrain.core.*;
+
+//Notices changes of the registry files made by other processes
+class Watcher implements Runnable
+{
+    interface Handler
+    {
+	//changedFiles contains the names of the changed values files
+	void onExternalChange(String[] dirItems, java.nio.file.Path dir, Set<String> changedFiles, boolean subdirsChanged);
+    }
+
+    private final WatchService service;
+    private final Handler handler;
+    private final Map<WatchKey, String[]> keys = new HashMap<WatchKey, String[]>();
+    private final Set<java.nio.file.Path> watched = new HashSet<java.nio.file.Path>();
+
+    Watcher(Handler handler) throws IOException
+    {
+	NullCheck.notNull(handler, "handler");
+	this.handler = handler;
+	this.service = FileSystems.getDefault().newWatchService();
+    }
+
+    synchronized void watch(java.nio.file.Path dir, String[] dirItems) throws IOException
+    {
+	NullCheck.notNull(dir, "dir");
+	NullCheck.notNullItems(dirItems, "dirItems");
+	if (watched.contains(dir) || !Files.isDirectory(dir))
+	    return;
+	final WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+	keys.put(key, dirItems);
+	watched.add(dir);
+    }
+
+    @Override public void run()
+    {
+	while(true)
+	{
+	    final WatchKey key;
+	    try {
+		key = service.take();
+	    }
+	    catch(InterruptedException | ClosedWatchServiceException e)
+	    {
+		return;
+	    }
+	    final String[] dirItems;
+	    synchronized(this) {
+		dirItems = keys.get(key);
+	    }
+	    final Set<String> changedFiles = new HashSet<String>();
+	    boolean subdirsChanged = false;
+	    for(WatchEvent<?> event: key.pollEvents())
+	    {
+		if (!(event.context() instanceof java.nio.file.Path))
+		{
+		    //Overflow, everything could be changed
+		    changedFiles.add(Directory.STRINGS_VALUES_FILE);
+		    changedFiles.add(Directory.INTEGERS_VALUES_FILE);
+		    changedFiles.add(Directory.BOOLEANS_VALUES_FILE);
+		    subdirsChanged = true;
+		    continue;
+		}
+		final String name = ((java.nio.file.Path)event.context()).getFileName().toString();
+		if (name.equals(Directory.STRINGS_VALUES_FILE) || name.equals(Directory.INTEGERS_VALUES_FILE) || name.equals(Directory.BOOLEANS_VALUES_FILE))
+		    changedFiles.add(name); else
+		    if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY && !name.endsWith(ValueWriter.TMP_SUFFIX))
+			subdirsChanged = true;
+	    }
+	    if (!key.reset())
+		synchronized(this) {
+		    keys.remove(key);
+		    watched.remove((java.nio.file.Path)key.watchable());
+		}
+	    if (dirItems != null && (!changedFiles.isEmpty() || subdirsChanged))
+		handler.onExternalChange(dirItems, (java.nio.file.Path)key.watchable(), changedFiles, subdirsChanged);
+	}
+    }
+}
@@ -0,0 +1,271 @@
+/*
+   Copyright 2012-2017 Michael Pozhidaev <michael.pozhidaev@gmail.com>
+
+   This file is part of the LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.util;
+
+import java.util.*;
+import java.text.BreakIterator;
+
+import org.luwrain.core.*;
+
+/**
+ * Splits the text of {@code Lines} into sentences for reading. The lines
+ * are taken by blocks only when needed and joined with spaces, an empty
+ * line always ends the sentence. Sentences longer than the maximum
+ * length are cut at the last space before it. Every line is read once
+ * and the sentence boundaries are looked for in a window limited by the
+ * maximum length, so the whole text is processed in linear time.
+ */
+public class SentenceSegmenter
+{
+    static private final int LINES_BLOCK = 16;
+    //The boundaries found at the very end of the window aren't reliable
+    static private final int WINDOW_MARGIN = 32;
+    //The lines without these characters can't end a sentence
+    static private final String SENTENCE_END_CHARS = ".!?;\u2026\u3002\uff01\uff1f";
+
+    static public final class Segment
+    {
+	public final String text;
+	public final int fromX;
+	public final int fromY;
+	//The position where the next segment begins
+	public final int toX;
+	public final int toY;
+
+	Segment(String text, int fromX, int fromY, int toX, int toY)
+	{
+	    this.text = text;
+	    this.fromX = fromX;
+	    this.fromY = fromY;
+	    this.toX = toX;
+	    this.toY = toY;
+	}
+    }
+
+    //The line text starting at the given offset of the buffer
+    static private final class Chunk
+    {
+	int offset;
+	final int lineIndex;
+	final int fromX;
+
+	Chunk(int offset, int lineIndex, int fromX)
+	{
+	    this.offset = offset;
+	    this.lineIndex = lineIndex;
+	    this.fromX = fromX;
+	}
+    }
+
+    private final Lines lines;
+    private final BreakIterator iter;
+    private final int maxLength;
+    private final StringBuilder buf = new StringBuilder();
+    private final ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+    //The beginning of the unread text in the buffer
+    private int start = 0;
+    //The end of the text before an empty line, -1 if there is no such line
+    private int paragraphEnd = -1;
+    //Whether there were sentence end characters since the last check
+    private boolean mayHaveBoundary = false;
+    private String[] block = new String[0];
+    private int blockStart = 0;
+    private int nextLine;
+    private final int lineCount;
+
+    public SentenceSegmenter(Lines lines, Locale locale, int maxLength, int fromX, int fromY)
+    {
+	NullCheck.notNull(lines, "lines");
+	NullCheck.notNull(locale, "locale");
+	if (maxLength <= 0)
+	    throw new IllegalArgumentException("maxLength (" + maxLength + ") must be greater than zero");
+	if (fromX < 0 || fromY < 0)
+	    throw new IllegalArgumentException("fromX (" + fromX + ") and fromY (" + fromY + ") may not be negative");
+	this.lines = lines;
+	this.iter = BreakIterator.getSentenceInstance(locale);
+	this.maxLength = maxLength;
+	this.lineCount = lines.getLineCount();
+	this.nextLine = fromY;
+	if (fromY < lineCount)
+	{
+	    final String line = getLine(fromY);
+	    appendLine(fromY, fromX < line.length()?line.substring(fromX):"", Math.min(fromX, line.length()));
+	    nextLine = fromY + 1;
+	}
+    }
+
+    //Returns null if there is no more text
+    public Segment next()
+    {
+	while(true)
+	{
+	    skipSpaces();
+	    if (paragraphEnd >= 0 && paragraphEnd <= start)
+		paragraphEnd = -1;
+	    if (paragraphEnd >= 0)
+		return cut(findEnd(paragraphEnd, true));
+	    if (start < buf.length())
+	    {
+		final int end = findEnd(buf.length(), nextLine >= lineCount);
+		if (end > start)
+		    return cut(end);
+	    }
+	    if (nextLine >= lineCount)
+		return null;
+	    final String line = getLine(nextLine);
+	    if (line.trim().isEmpty() && start < buf.length())
+		paragraphEnd = buf.length();
+	    appendLine(nextLine, line, 0);
+	    ++nextLine;
+	}
+    }
+
+    /**
+     * Looks for the end of the next segment before {@code limit}. If
+     * {@code final} is false, more text may follow and the segment is
+     * returned only if there is a boundary inside or the text is long
+     * enough.
+     */
+    private int findEnd(int limit, boolean isFinal)
+    {
+	final int length = limit - start;
+	if (!isFinal && !mayHaveBoundary && length < maxLength)
+	    return -1;
+	final int windowEnd = Math.min(limit, start + maxLength + WINDOW_MARGIN);
+	iter.setText(buf.substring(start, windowEnd));
+	final int boundary = iter.following(0);
+	//The boundary at the end of the window is only the end of the given text
+	if (boundary != BreakIterator.DONE && boundary <= maxLength &&
+	    (start + boundary < windowEnd || (windowEnd == limit && isFinal)))
+	    return start + boundary;
+	if (length <= maxLength)
+	{
+	    if (isFinal)
+		return limit;
+	    //Only the text after the sentence end may confirm it
+	    mayHaveBoundary = endsWithSentenceEnd(limit);
+	    return -1;
+	}
+	//Too long without a boundary, cutting at the last space
+	for(int i = start + maxLength;i > start;--i)
+	    if (Character.isWhitespace(buf.charAt(i)))
+		return i;
+	return start + maxLength;
+    }
+
+    private Segment cut(int end)
+    {
+	int contentEnd = end;
+	while(contentEnd > start && Character.isWhitespace(buf.charAt(contentEnd - 1)))
+	    --contentEnd;
+	final String text = buf.substring(start, contentEnd);
+	final Chunk from = findChunk(start);
+	final int fromX = from.fromX + start - from.offset;
+	final int fromY = from.lineIndex;
+	final Chunk to = findChunk(end);
+	final int toX;
+	final int toY;
+	if (end - to.offset > getChunkLength(to))
+	{
+	    //The separator after the line
+	    toX = 0;
+	    toY = to.lineIndex + 1;
+	} else
+	{
+	    toX = to.fromX + end - to.offset;
+	    toY = to.lineIndex;
+	}
+	start = end;
+	compact();
+	return new Segment(text, fromX, fromY, toX, toY);
+    }
+
+    private void appendLine(int index, String text, int fromX)
+    {
+	chunks.add(new Chunk(buf.length(), index, fromX));
+	buf.append(text).append(' ');
+	if (!mayHaveBoundary)
+	    for(int i = 0;i < text.length();++i)
+		if (SENTENCE_END_CHARS.indexOf(text.charAt(i)) >= 0)
+		{
+		    mayHaveBoundary = true;
+		    break;
+		}
+    }
+
+    private boolean endsWithSentenceEnd(int limit)
+    {
+	int i = limit - 1;
+	while(i >= start && Character.isWhitespace(buf.charAt(i)))
+	    --i;
+	return i >= start && SENTENCE_END_CHARS.indexOf(buf.charAt(i)) >= 0;
+    }
+
+    private void skipSpaces()
+    {
+	while(start < buf.length() && Character.isWhitespace(buf.charAt(start)))
+	    ++start;
+    }
+
+    //The chunks before the unread text are removed in compact(), so the search is short
+    private Chunk findChunk(int offset)
+    {
+	int i = 0;
+	while(i + 1 < chunks.size() && chunks.get(i + 1).offset <= offset)
+	    ++i;
+	return chunks.get(i);
+    }
+
+    private int getChunkLength(Chunk chunk)
+    {
+	final int index = chunks.indexOf(chunk);
+	final int nextOffset = index + 1 < chunks.size()?chunks.get(index + 1).offset:buf.length();
+	//Without the separator
+	return nextOffset - chunk.offset - 1;
+    }
+
+    //Removes the read text from the buffer once it takes the most of it
+    private void compact()
+    {
+	int first = 0;
+	while(first + 1 < chunks.size() && chunks.get(first + 1).offset <= start)
+	    ++first;
+	if (first > 0)
+	    chunks.subList(0, first).clear();
+	if (start < buf.length() / 2 || chunks.isEmpty())
+	    return;
+	final int shift = chunks.get(0).offset;
+	if (shift == 0)
+	    return;
+	buf.delete(0, shift);
+	for(Chunk c: chunks)
+	    c.offset -= shift;
+	start -= shift;
+	if (paragraphEnd >= 0)
+	    paragraphEnd -= shift;
+    }
+
+    private String getLine(int index)
+    {
+	if (index < blockStart || index - blockStart >= block.length)
+	{
+	    block = lines.getLines(index, LINES_BLOCK);
+	    blockStart = index;
+	}
+	return index - blockStart < block.length?block[index - blockStart]:"";
+    }
+}
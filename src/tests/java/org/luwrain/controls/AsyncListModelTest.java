@@ -0,0 +1,130 @@
+
+package org.luwrain.controls;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public class AsyncListModelTest extends Assert
+{
+    static private final class Source implements AsyncListModel.Source
+    {
+	volatile int count;
+	volatile boolean failing = false;
+	final List<Integer> requested = Collections.synchronizedList(new ArrayList<Integer>());
+
+	Source(int count)
+	{
+	    this.count = count;
+	}
+
+	@Override public int getItemCount()
+	{
+	    return count;
+	}
+
+	@Override public Object[] getItems(int fromIndex, int count)
+	{
+	    requested.add(fromIndex);
+	    if (failing)
+		throw new RuntimeException("failing");
+	    final Object[] res = new Object[count];
+	    for(int i = 0;i < count;++i)
+		res[i] = "item" + (fromIndex + i);
+	    return res;
+	}
+    }
+
+    private final LinkedBlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<Runnable>();
+
+    @Test public void pages() throws Exception
+    {
+	final Source source = new Source(1000000);
+	final AsyncListModel model = new AsyncListModel(source, (r)->mainThread.add(r), 10, 4);
+	final int[] notified = new int[]{0};
+	model.setLoadingListener(()->++notified[0]);
+	assertTrue(model.isCountPending());
+	assertEquals(0, model.getItemCount());
+	runMainThread();
+	assertEquals(1000000, model.getItemCount());
+	assertEquals(1, notified[0]);
+	assertNull(model.getItem(123456));
+	assertFalse(model.isItemLoaded(123456));
+	//The page is requested only once
+	assertNull(model.getItem(123457));
+	runMainThread();
+	assertEquals(2, notified[0]);
+	assertEquals(1, source.requested.size());
+	assertTrue(model.isItemLoaded(123450));
+	assertEquals("item123456", model.getItem(123456));
+	assertEquals("item123459", model.getItem(123459));
+	assertFalse(model.isItemLoaded(123460));
+    }
+
+    @Test public void boundedCache() throws Exception
+    {
+	final AsyncListModel model = new AsyncListModel(new Source(1000), (r)->mainThread.add(r), 10, 4);
+	runMainThread();
+	for(int i = 0;i < 6;++i)
+	{
+	    model.getItem(i * 10);
+	    runMainThread();
+	}
+	for(int i = 0;i < 2;++i)
+	    assertFalse(model.isItemLoaded(i * 10));
+	for(int i = 2;i < 6;++i)
+	    assertTrue(model.isItemLoaded(i * 10));
+    }
+
+    @Test public void refresh() throws Exception
+    {
+	final Source source = new Source(100);
+	final AsyncListModel model = new AsyncListModel(source, (r)->mainThread.add(r), 10, 4);
+	runMainThread();
+	model.getItem(5);
+	//The page for the previous state is dropped
+	model.refresh();
+	source.count = 3;
+	runMainThread();
+	assertEquals(3, model.getItemCount());
+	assertFalse(model.isItemLoaded(0));
+	assertNull(model.getItem(2));
+	runMainThread();
+	assertEquals("item2", model.getItem(2));
+	assertNull(model.getItem(3));
+    }
+
+    @Test public void failedPageNotRequestedAgain() throws Exception
+    {
+	final Source source = new Source(100);
+	final AsyncListModel model = new AsyncListModel(source, (r)->mainThread.add(r), 10, 4);
+	runMainThread();
+	source.failing = true;
+	assertNull(model.getItem(15));
+	runMainThread();
+	assertTrue(model.isItemLoaded(15));
+	for(int i = 0;i < 5;++i)
+	{
+	    assertNull(model.getItem(15));
+	    runMainThread();
+	}
+	assertEquals(1, source.requested.size());
+	//Tried again after refreshing
+	source.failing = false;
+	model.refresh();
+	runMainThread();
+	assertNull(model.getItem(15));
+	runMainThread();
+	assertEquals(2, source.requested.size());
+	assertEquals("item15", model.getItem(15));
+    }
+
+    //Runs everything delivered to the main thread until the loading thread is quiet
+    private void runMainThread() throws InterruptedException
+    {
+	Runnable r;
+	while((r = mainThread.poll(200, TimeUnit.MILLISECONDS)) != null)
+	    r.run();
+    }
+}
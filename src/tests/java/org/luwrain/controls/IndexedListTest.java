@@ -0,0 +1,79 @@
+
+package org.luwrain.controls;
+
+import java.util.*;
+
+import org.junit.*;
+
+public class IndexedListTest extends Assert
+{
+    @Test public void replace()
+    {
+	final IndexedList<String> list = new IndexedList<String>(Arrays.asList("a", "b", "c", "d"));
+	assertEquals(4, list.size());
+	list.replace(1, 2, Arrays.asList("x", "y", "z"));
+	assertContent(Arrays.asList("a", "x", "y", "z", "d"), list);
+	list.replace(0, 0, Arrays.asList("first"));
+	list.replace(list.size(), 0, Arrays.asList("last"));
+	assertContent(Arrays.asList("first", "a", "x", "y", "z", "d", "last"), list);
+	list.replace(0, list.size(), new ArrayList<String>());
+	assertEquals(0, list.size());
+	assertEquals(-1, list.indexOf((s)->true));
+    }
+
+    @Test public void bounds()
+    {
+	final IndexedList<String> list = new IndexedList<String>(Arrays.asList("a", "b"));
+	try {
+	    list.get(2);
+	    fail();
+	}
+	catch(IndexOutOfBoundsException e)
+	{
+	}
+	try {
+	    list.replace(1, 2, new ArrayList<String>());
+	    fail();
+	}
+	catch(IndexOutOfBoundsException e)
+	{
+	}
+    }
+
+    @Test public void sameAsArrayList()
+    {
+	final Random rand = new Random(3);
+	final ArrayList<Integer> expected = new ArrayList<Integer>();
+	final IndexedList<Integer> list = new IndexedList<Integer>();
+	int next = 0;
+	for(int n = 0;n < 2000;++n)
+	{
+	    final int index = rand.nextInt(expected.size() + 1);
+	    final int count = rand.nextInt(Math.min(expected.size() - index, 10) + 1);
+	    final ArrayList<Integer> items = new ArrayList<Integer>();
+	    final int added = rand.nextInt(12);
+	    for(int i = 0;i < added;++i)
+		items.add(next++);
+	    for(int i = 0;i < count;++i)
+		expected.remove(index);
+	    expected.addAll(index, items);
+	    list.replace(index, count, items);
+	    assertEquals(expected.size(), list.size());
+	    if (!expected.isEmpty())
+	    {
+		final int k = rand.nextInt(expected.size());
+		assertEquals(expected.get(k), list.get(k));
+		final Integer value = expected.get(k);
+		assertEquals(k, list.indexOf((i)->i.equals(value)));
+	    }
+	}
+	assertContent(expected, list);
+    }
+
+    private <E> void assertContent(List<E> expected, IndexedList<E> list)
+    {
+	assertEquals(expected.size(), list.size());
+	for(int i = 0;i < expected.size();++i)
+	    assertEquals(expected.get(i), list.get(i));
+    }
+}
@@ -0,0 +1,60 @@
+
+package org.luwrain.controls;
+
+import java.util.*;
+
+import org.junit.*;
+
+public class PrefixIndexTest extends Assert
+{
+    @Test public void firstInListOrder()
+    {
+	final PrefixIndex index = new PrefixIndex(new String[]{"beta", "alpha2", "gamma", "alpha1", "alpha", null, "b"});
+	assertEquals(1, index.findFirst("a"));
+	assertEquals(1, index.findFirst("alpha"));
+	assertEquals(3, index.findFirst("alpha1"));
+	assertEquals(0, index.findFirst("b"));
+	assertEquals(0, index.findFirst("be"));
+	assertEquals(0, index.findFirst(""));
+	assertEquals(-1, index.findFirst("alpha3"));
+	assertEquals(-1, index.findFirst("z"));
+	assertEquals(-1, index.findFirst("0"));
+    }
+
+    @Test public void empty()
+    {
+	assertEquals(-1, new PrefixIndex(new String[0]).findFirst("a"));
+	assertEquals(-1, new PrefixIndex(new String[]{null, null}).findFirst(""));
+    }
+
+    @Test public void sameAsLinearSearch()
+    {
+	final Random rand = new Random(7);
+	final String[] strings = new String[5000];
+	for(int i = 0;i < strings.length;++i)
+	{
+	    final StringBuilder b = new StringBuilder();
+	    final int len = rand.nextInt(5);
+	    for(int k = 0;k < len;++k)
+		b.append((char)('a' + rand.nextInt(3)));
+	    strings[i] = rand.nextInt(20) == 0?null:new String(b);
+	}
+	final PrefixIndex index = new PrefixIndex(strings);
+	for(int n = 0;n < 500;++n)
+	{
+	    final StringBuilder b = new StringBuilder();
+	    final int len = rand.nextInt(4);
+	    for(int k = 0;k < len;++k)
+		b.append((char)('a' + rand.nextInt(3)));
+	    final String prefix = new String(b);
+	    int expected = -1;
+	    for(int i = 0;i < strings.length;++i)
+		if (strings[i] != null && strings[i].startsWith(prefix))
+		{
+		    expected = i;
+		    break;
+		}
+	    assertEquals(expected, index.findFirst(prefix));
+	}
+    }
+}
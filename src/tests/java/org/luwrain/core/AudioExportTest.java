@@ -0,0 +1,61 @@
+
+package org.luwrain.core;
+
+import java.io.*;
+import java.nio.file.*;
+import javax.sound.sampled.*;
+
+import org.junit.*;
+
+public class AudioExportTest extends Assert
+{
+    @Test public void wavFileReadable() throws Exception
+    {
+	final Path path = Files.createTempFile("luwrain-test", ".wav");
+	try {
+	    final AudioFormat format = new AudioFormat(22050, 16, 1, true, true);
+	    try (final AudioExport.WavOutput output = new AudioExport.WavOutput(path, format)) {
+		output.write(new byte[]{0x01, 0x02, 0x03, 0x04});
+		//The incomplete frame is skipped
+		output.write(new byte[]{0x05, 0x06, 0x07});
+	    }
+	    try (final AudioInputStream stream = AudioSystem.getAudioInputStream(path.toFile())) {
+		final AudioFormat res = stream.getFormat();
+		assertEquals(22050, (int)res.getSampleRate());
+		assertEquals(16, res.getSampleSizeInBits());
+		assertFalse(res.isBigEndian());
+		assertEquals(3, stream.getFrameLength());
+		final byte[] data = new byte[6];
+		assertEquals(6, stream.read(data));
+		assertArrayEquals(new byte[]{0x02, 0x01, 0x04, 0x03, 0x06, 0x05}, data);
+	    }
+	}
+	finally {
+	    Files.delete(path);
+	}
+    }
+
+    @Test public void eightBitUnsigned() throws Exception
+    {
+	final Path path = Files.createTempFile("luwrain-test", ".wav");
+	try {
+	    try (final AudioExport.WavOutput output = new AudioExport.WavOutput(path, new AudioFormat(8000, 8, 1, true, false))) {
+		output.write(new byte[]{0, 127, -128});
+	    }
+	    final byte[] data = Files.readAllBytes(path);
+	    assertEquals(47, data.length);
+	    assertEquals((byte)0x80, data[44]);
+	    assertEquals((byte)0xff, data[45]);
+	    assertEquals(0, data[46]);
+	}
+	finally {
+	    Files.delete(path);
+	}
+    }
+
+    @Test public void unsupportedFormat()
+    {
+	assertFalse(AudioExport.WavOutput.isSupported(new AudioFormat(AudioFormat.Encoding.ULAW, 8000, 8, 1, 1, 8000, false)));
+	assertTrue(AudioExport.WavOutput.isSupported(new AudioFormat(16000, 16, 2, true, false)));
+    }
+}
@@ -0,0 +1,61 @@
+
+package org.luwrain.core;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.*;
+
+public class AudioMixerTest extends Assert
+{
+    @Test public void monoToStereo()
+    {
+	final byte[] data = new byte[]{0x10, 0x00, 0x20, 0x00, (byte)0xf0, (byte)0xff};
+	final short[] res = AudioMixer.convert(data, new AudioFormat(44100, 16, 1, true, false));
+	//The last frame is kept for the interpolation with the next data
+	assertEquals(4, res.length);
+	assertEquals(0x10, res[0]);
+	assertEquals(0x10, res[1]);
+	assertEquals(0x20, res[2]);
+	assertEquals(0x20, res[3]);
+    }
+
+    @Test public void unsignedAndBigEndian()
+    {
+	final short[] u8 = AudioMixer.convert(new byte[]{(byte)0x80, (byte)0x80, (byte)0xff, 0x00, 0, 0}, new AudioFormat(44100, 8, 2, false, false));
+	assertEquals(0, u8[0]);
+	assertEquals(0, u8[1]);
+	assertEquals(127 << 8, u8[2]);
+	assertEquals(-128 << 8, u8[3]);
+	final short[] be = AudioMixer.convert(new byte[]{0x12, 0x34, (byte)0xff, (byte)0xfe, 0, 0}, new AudioFormat(44100, 16, 1, true, true));
+	assertEquals(0x1234, be[0]);
+	assertEquals(-2, be[2]);
+    }
+
+    @Test public void resampling()
+    {
+	final AudioFormat format = new AudioFormat(22050, 16, 2, true, false);
+	final byte[] data = new byte[22050 * 4];
+	for(int i = 0;i < 22050;++i)
+	{
+	    data[i * 4] = (byte)(i % 2 == 0?0:100);
+	    data[i * 4 + 2] = (byte)(i % 2 == 0?0:100);
+	}
+	final short[] res = AudioMixer.convert(data, format);
+	assertTrue(Math.abs(res.length / 2 - 44100) <= 2);
+	//The added frames are between the original ones
+	assertEquals(0, res[0]);
+	assertEquals(50, res[2]);
+	assertEquals(100, res[4]);
+    }
+
+    @Test public void rejectsCompressed()
+    {
+	try {
+	    AudioMixer.convert(new byte[4], new AudioFormat(AudioFormat.Encoding.ULAW, 8000, 8, 1, 1, 8000, false));
+	    fail();
+	}
+	catch(IllegalArgumentException e)
+	{
+	}
+    }
+}
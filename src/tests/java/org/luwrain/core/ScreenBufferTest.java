@@ -0,0 +1,83 @@
+package org.luwrain.core;
+
+import java.util.*;
+import java.lang.reflect.*;
+
+import org.junit.*;
+
+import org.luwrain.base.*;
+
+public class ScreenBufferTest extends Assert
+{
+    private final List<String> calls = new LinkedList<String>();
+
+    @Test public void onlyChangedRunsDrawn()
+    {
+	final Interaction interaction = createInteraction();
+	final ScreenBuffer shown = new ScreenBuffer(20, 3);
+	final ScreenBuffer frame = new ScreenBuffer(20, 3);
+	frame.putText(0, 1, "abcdefghij", false);
+	frame.drawDiff(interaction, shown, 0, 0, 19, 2);
+	assertEquals(2, calls.size());
+	assertEquals("clearRect 0 1 9 1", calls.get(0));
+	assertEquals("drawText 0 1 abcdefghij", calls.get(1));
+	calls.clear();
+	frame.putText(5, 1, "X", false);
+	frame.drawDiff(interaction, shown, 0, 0, 19, 2);
+	assertEquals(2, calls.size());
+	assertEquals("clearRect 5 1 5 1", calls.get(0));
+	assertEquals("drawText 5 1 X", calls.get(1));
+	calls.clear();
+	frame.drawDiff(interaction, shown, 0, 0, 19, 2);
+	assertTrue(calls.isEmpty());
+    }
+
+    @Test public void erasedTextOnlyCleared()
+    {
+	final Interaction interaction = createInteraction();
+	final ScreenBuffer shown = new ScreenBuffer(20, 3);
+	final ScreenBuffer frame = new ScreenBuffer(20, 3);
+	frame.putText(0, 0, "abc", false);
+	frame.drawDiff(interaction, shown, 0, 0, 19, 2);
+	calls.clear();
+	frame.clearRect(0, 0, 19, 0);
+	frame.drawDiff(interaction, shown, 0, 0, 19, 2);
+	assertEquals(1, calls.size());
+	assertEquals("clearRect 0 0 2 0", calls.get(0));
+    }
+
+    @Test public void highlightingSplitsRuns()
+    {
+	final Interaction interaction = createInteraction();
+	final ScreenBuffer shown = new ScreenBuffer(20, 1);
+	final ScreenBuffer frame = new ScreenBuffer(20, 1);
+	frame.putText(0, 0, "ab", true);
+	frame.putText(2, 0, "cd", false);
+	frame.drawDiff(interaction, shown, 0, 0, 19, 0);
+	assertEquals(4, calls.size());
+	assertEquals("drawText 0 0 ab true", calls.get(1));
+	assertEquals("drawText 2 0 cd", calls.get(3));
+    }
+
+    @Test public void textClipped()
+    {
+	final Interaction interaction = createInteraction();
+	final ScreenBuffer shown = new ScreenBuffer(5, 1);
+	final ScreenBuffer frame = new ScreenBuffer(5, 1);
+	frame.putText(3, 0, "abcdef", false);
+	frame.drawDiff(interaction, shown, 0, 0, 4, 0);
+	assertEquals("drawText 3 0 ab", calls.get(1));
+    }
+
+    private Interaction createInteraction()
+    {
+	return (Interaction)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Interaction.class}, (proxy, method, args)->{
+		final StringBuilder b = new StringBuilder(method.getName());
+		if (args != null)
+		    for(Object o: args)
+			b.append(" ").append(o.toString());
+		calls.add(new String(b));
+		return null;
+	    });
+    }
+}
@@ -0,0 +1,103 @@
+
+package org.luwrain.core;
+
+import java.util.*;
+
+import org.junit.*;
+
+import org.luwrain.speech.*;
+
+public class SpeechCacheTest extends Assert
+{
+    @Test public void noCacheWithoutStreams()
+    {
+	final TestingSpeechChannel channel = new TestingSpeechChannel(true);
+	assertNull(SpeechCache.create(channel, 1024, new TestingPcmOutput(false)));
+    }
+
+    @Test public void secondTimeFromCache() throws Exception
+    {
+	final TestingSpeechChannel channel = newChannel();
+	final SpeechCache cache = SpeechCache.create(channel, 1024 * 1024, new TestingPcmOutput(false));
+	assertNotNull(cache);
+	assertFalse(cache.play("empty line", 0, 0, null));
+	TestingConditions.waitFor(()->!cache.isSynthesizing());
+	assertTrue(cache.play("empty line", 0, 0, null));
+	cache.stop();
+	assertEquals(1, cache.getHitCount());
+	assertEquals(1, cache.getMissCount());
+	//Another pitch needs another audio
+	assertFalse(cache.play("empty line", 10, 0, null));
+	assertFalse(cache.play(longText(), 0, 0, null));
+	TestingConditions.waitFor(()->!cache.isSynthesizing());
+	assertEquals(2, channel.getSynthesizedCount());
+    }
+
+    @Test public void leastRecentlyUsedRemoved() throws Exception
+    {
+	final TestingSpeechChannel channel = newChannel();
+	//Each phrase below takes 500 bytes
+	final SpeechCache cache = SpeechCache.create(channel, 1200, new TestingPcmOutput(false));
+	cache.warmUp(new String[]{"aaaaa", "bbbbb"}, 0, 0);
+	TestingConditions.waitFor(()->!cache.isSynthesizing());
+	assertEquals(1000, cache.getSize());
+	assertTrue(cache.play("aaaaa", 0, 0, null));
+	cache.warmUp(new String[]{"ccccc"}, 0, 0);
+	TestingConditions.waitFor(()->!cache.isSynthesizing());
+	assertEquals(1000, cache.getSize());
+	assertTrue(cache.play("aaaaa", 0, 0, null));
+	assertTrue(cache.play("ccccc", 0, 0, null));
+	assertFalse(cache.play("bbbbb", 0, 0, null));
+	cache.stop();
+    }
+
+    @Test public void schedulerUsesCache() throws Exception
+    {
+	final TestingSpeechChannel channel = newChannel();
+	final SpeechCache cache = SpeechCache.create(channel, 1024 * 1024, new TestingPcmOutput(false));
+	final SpeechScheduler scheduler = new SpeechScheduler(channel, cache, Locale.ENGLISH);
+	scheduler.speakLetter('a', 0, 0);
+	TestingConditions.waitFor(()->!cache.isSynthesizing());
+	scheduler.speakLetter('a', 0, 0);
+	//Just after the letter, so goes through the debounce window
+	scheduler.speak("item", 0, 0, SpeechScheduler.Priority.ITEM);
+	TestingConditions.waitFor(()->channel.getSpokenCount() >= 2);
+	scheduler.silence();
+	synchronized(channel) {
+	    assertEquals(2, channel.spoken.size());
+	    assertEquals("a", channel.spoken.get(0));
+	    assertEquals("item", channel.spoken.get(1));
+	}
+	assertEquals(1, cache.getHitCount());
+    }
+
+    @Test public void channelWhenUnableToPlay() throws Exception
+    {
+	final TestingSpeechChannel channel = newChannel();
+	final SpeechCache cache = SpeechCache.create(channel, 1024 * 1024, new TestingPcmOutput(true));
+	final SpeechScheduler scheduler = new SpeechScheduler(channel, cache, Locale.ENGLISH);
+	cache.warmUp(new String[]{"a"}, 0, 0);
+	TestingConditions.waitFor(()->!cache.isSynthesizing());
+	assertEquals(100, cache.getSize());
+	//Letters are spoken at once, no waiting is needed
+	scheduler.speakLetter('a', 0, 0);
+	synchronized(channel) {
+	    assertEquals(1, channel.spoken.size());
+	    assertEquals("a", channel.spoken.get(0));
+	}
+	assertEquals(0, cache.getHitCount());
+    }
+
+    private TestingSpeechChannel newChannel()
+    {
+	return new TestingSpeechChannel(EnumSet.of(Channel.Features.CAN_SYNTH_TO_SPEAKERS, Channel.Features.CAN_SYNTH_TO_STREAM));
+    }
+
+    private String longText()
+    {
+	final StringBuilder b = new StringBuilder();
+	for(int i = 0;i < 100;++i)
+	    b.append("x");
+	return new String(b);
+    }
+}
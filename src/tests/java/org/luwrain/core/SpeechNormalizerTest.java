@@ -0,0 +1,94 @@
+
+package org.luwrain.core;
+
+import java.util.*;
+
+import org.junit.*;
+
+public class SpeechNormalizerTest extends Assert
+{
+    @Test public void dictionaryWholeWords()
+    {
+	final HashMap<String, String> dict = new HashMap<String, String>();
+	dict.put("luwrain", "loo rain");
+	dict.put("GNU", "gnoo");
+	dict.put("gnu linux", "gnoo linux");
+	final SpeechNormalizer n = newNormalizer(dict, "", "");
+	assertEquals("loo rain runs on gnoo linux", n.normalize("Luwrain runs on GNU Linux"));
+	assertEquals("gnoo, gnoo!", n.normalize("GNU, gnu!"));
+	//Not the whole words
+	assertEquals("luwrains gnus agnu", n.normalize("luwrains gnus agnu"));
+	assertEquals("gnoo gnoo linux", n.normalize("gnu gnu linux"));
+    }
+
+    @Test public void leftmostLongest()
+    {
+	final HashMap<String, String> dict = new HashMap<String, String>();
+	dict.put("b c", "X");
+	dict.put("a b c d", "Y");
+	dict.put("c d", "Z");
+	dict.put("a b", "W");
+	final SpeechNormalizer n = newNormalizer(dict, "", "");
+	assertEquals("Y", n.normalize("a b c d"));
+	assertEquals("Y e", n.normalize("a b c d e"));
+	assertEquals("x X z", n.normalize("x b c z"));
+	//The match after an unfinished longer one
+	dict.clear();
+	dict.put("a b", "W");
+	dict.put("a b c x", "V");
+	dict.put("c d", "Z");
+	assertEquals("W Z", newNormalizer(dict, "", "").normalize("a b c d"));
+    }
+
+    @Test public void charsNamedAndSkipped()
+    {
+	final SpeechNormalizer n = newNormalizer(new HashMap<String, String>(), "\"", "#=");
+	assertEquals("issue  NUMBER SIGN 5", n.normalize("issue #5"));
+	assertEquals("say hello", n.normalize("say \"hello\""));
+	//The runs are named once
+	assertEquals(" EQUALS SIGN title EQUALS SIGN ", n.normalize("===title=="));
+    }
+
+    @Test public void numbers()
+    {
+	final SpeechNormalizer en = newNormalizer(new HashMap<String, String>(), "", "");
+	assertEquals("1234567 items", en.normalize("1,234,567 items"));
+	assertEquals("1234567", en.normalize("1 234 567"));
+	//Not the groups of thousands
+	assertEquals("1,23 and 1234,5678 and 12,34", en.normalize("1,23 and 1234,5678 and 12,34"));
+	assertEquals("call 123 456 789 012 345", en.normalize("call 123456789012345"));
+	assertEquals("123456789012", en.normalize("123456789012"));
+	final SpeechNormalizer ru = new SpeechNormalizer(new HashMap<String, String>(), "", "", (ch)->null, new Locale("ru"));
+	assertEquals("1,500", ru.normalize("1,500"));
+	assertEquals("1500", ru.normalize("1 500"));
+    }
+
+    @Test public void longText()
+    {
+	final HashMap<String, String> dict = new HashMap<String, String>();
+	for(int i = 0;i < 1000;++i)
+	    dict.put("word" + i, "w" + i);
+	final SpeechNormalizer n = newNormalizer(dict, "", "#");
+	final StringBuilder text = new StringBuilder();
+	final StringBuilder expected = new StringBuilder();
+	for(int i = 0;i < 20000;++i)
+	{
+	    text.append("word" + (i % 1500) + " #" + i + " ");
+	    expected.append((i % 1500 < 1000?"w" + (i % 1500):"word" + (i % 1500)) + "  NUMBER SIGN " + i + " ");
+	}
+	assertEquals(new String(expected), n.normalize(new String(text)));
+    }
+
+    @Test public void cache()
+    {
+	final SpeechNormalizer n = newNormalizer(new HashMap<String, String>(), "", "#");
+	assertEquals(" NUMBER SIGN ", n.normalize("#"));
+	assertEquals(" NUMBER SIGN ", n.normalize("#"));
+	assertEquals(1, n.getCacheHitCount());
+    }
+
+    private SpeechNormalizer newNormalizer(Map<String, String> dict, String charsToSkip, String charsToName)
+    {
+	return new SpeechNormalizer(dict, charsToSkip, charsToName, (ch)->Character.getName(ch), Locale.ENGLISH);
+    }
+}
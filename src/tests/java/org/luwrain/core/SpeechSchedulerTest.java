@@ -0,0 +1,132 @@
+
+package org.luwrain.core;
+
+import org.junit.*;
+
+public class SpeechSchedulerTest extends Assert
+{
+    @Test public void lettersNeverDelayed()
+    {
+	final TestingSpeechChannel channel = new TestingSpeechChannel(false);
+	final SpeechScheduler scheduler = new SpeechScheduler(channel);
+	for(char c = 'a';c <= 'z';++c)
+	    scheduler.speakLetter(c, 0, 0);
+	assertEquals(26, channel.spoken.size());
+	assertEquals("z", channel.spoken.get(25));
+	assertEquals(0, scheduler.getDroppedCount());
+    }
+
+    @Test public void itemsDebounced() throws Exception
+    {
+	final TestingSpeechChannel channel = new TestingSpeechChannel(false);
+	final SpeechScheduler scheduler = new SpeechScheduler(channel);
+	for(int i = 0;i < 10;++i)
+	    scheduler.speak("item" + i, 0, 0, SpeechScheduler.Priority.ITEM);
+	//The first one goes immediately, the last one after the window
+	assertEquals(1, channel.spoken.size());
+	assertEquals("item0", channel.spoken.get(0));
+	TestingConditions.waitFor(()->channel.getSpokenCount() >= 2);
+	synchronized(channel) {
+	    assertEquals(2, channel.spoken.size());
+	    assertEquals("item9", channel.spoken.get(1));
+	}
+	assertEquals(8, scheduler.getDroppedCount());
+    }
+
+    @Test public void sameHintsMerged()
+    {
+	final TestingSpeechChannel channel = new TestingSpeechChannel(false);
+	final SpeechScheduler scheduler = new SpeechScheduler(channel);
+	scheduler.speak("no items", 0, 0, SpeechScheduler.Priority.HINT);
+	scheduler.speak("no items", 0, 0, SpeechScheduler.Priority.HINT);
+	scheduler.speak("no items", 0, 0, SpeechScheduler.Priority.HINT);
+	assertEquals(1, channel.spoken.size());
+	assertEquals(2, scheduler.getMergedCount());
+    }
+
+    @Test public void messagesQueued() throws Exception
+    {
+	final TestingSpeechChannel channel = new TestingSpeechChannel(true);
+	final SpeechScheduler scheduler = new SpeechScheduler(channel);
+	scheduler.speak("item", 0, 0, SpeechScheduler.Priority.ITEM);
+	scheduler.speak("message1", 0, 0, SpeechScheduler.Priority.MESSAGE);
+	scheduler.speak("message2", 0, 0, SpeechScheduler.Priority.MESSAGE);
+	assertEquals(1, channel.spoken.size());
+	channel.finish();
+	TestingConditions.waitFor(()->channel.getSpokenCount() >= 2);
+	synchronized(channel) {
+	    assertEquals(2, channel.spoken.size());
+	    assertEquals("message1", channel.spoken.get(1));
+	    assertFalse(channel.cancelled.get(1));
+	}
+	channel.finish();
+	TestingConditions.waitFor(()->channel.getSpokenCount() >= 3);
+	synchronized(channel) {
+	    assertEquals(3, channel.spoken.size());
+	    assertEquals("message2", channel.spoken.get(2));
+	}
+    }
+
+    @Test public void staleMessagesDropped() throws Exception
+    {
+	final TestingSpeechChannel channel = new TestingSpeechChannel(true);
+	final SpeechScheduler scheduler = new SpeechScheduler(channel);
+	scheduler.speak("item", 0, 0, SpeechScheduler.Priority.ITEM);
+	scheduler.speak("message", 0, 0, SpeechScheduler.Priority.MESSAGE);
+	scheduler.speakLetter('a', 0, 0);
+	assertEquals(1, scheduler.getDroppedCount());
+	channel.finish();
+	TestingConditions.waitFor(()->channel.getSpokenCount() >= 2);
+	synchronized(channel) {
+	    assertEquals(2, channel.spoken.size());
+	    assertEquals("a", channel.spoken.get(1));
+	}
+    }
+
+    @Test public void longTextChunked() throws Exception
+    {
+	final TestingSpeechChannel channel = new TestingSpeechChannel(true);
+	final SpeechScheduler scheduler = new SpeechScheduler(channel);
+	scheduler.speak(longText(20), 0, 0, SpeechScheduler.Priority.MESSAGE);
+	synchronized(channel) {
+	    //The first one and one more ahead
+	    assertEquals(2, channel.spoken.size());
+	    assertEquals("Sentence number 0 is here.", channel.spoken.get(0));
+	    assertFalse(channel.cancelled.get(1));
+	}
+	channel.finish();
+	TestingConditions.waitFor(()->channel.getSpokenCount() >= 3);
+	assertEquals(3, channel.getSpokenCount());
+	//Cancelling drops the rest
+	scheduler.speak("item", 0, 0, SpeechScheduler.Priority.ITEM);
+	channel.finish();
+	TestingConditions.waitFor(()->channel.getSpokenCount() >= 4);
+	synchronized(channel) {
+	    assertEquals(4, channel.spoken.size());
+	    assertEquals("item", channel.spoken.get(3));
+	}
+    }
+
+    @Test public void longTextWithoutNotifications()
+    {
+	final TestingSpeechChannel channel = new TestingSpeechChannel(false);
+	final SpeechScheduler scheduler = new SpeechScheduler(channel);
+	final String text = longText(1000);
+	scheduler.speak(text, 0, 0, SpeechScheduler.Priority.ITEM);
+	assertEquals(3, channel.spoken.size());
+	assertTrue(channel.spoken.get(0).length() <= 160);
+	assertEquals(text, channel.spoken.get(0) + " " + channel.spoken.get(1) + " " + channel.spoken.get(2));
+    }
+
+    private String longText(int count)
+    {
+	final StringBuilder b = new StringBuilder();
+	for(int i = 0;i < count;++i)
+	{
+	    if (i > 0)
+		b.append(" ");
+	    b.append("Sentence number " + i + " is here.");
+	}
+	return new String(b);
+    }
+}
@@ -0,0 +1,33 @@
+
+package org.luwrain.core;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+
+import org.luwrain.registry.fsdir.RegistryImpl;
+
+public class SpeechTest extends Assert
+{
+    @Test public void noPronunciationDirectory() throws Exception
+    {
+	final Path base = Files.createTempDirectory("luwrain-registry");
+	try {
+	    for(String s: new String[]{"strings.txt", "integers.txt", "booleans.txt"})
+		Files.createFile(base.resolve(s));
+	    final Registry registry = new RegistryImpl(base);
+	    assertNull(registry.getDirectories(Settings.SPEECH_PRONUNCIATION_PATH));
+	    final Map<String, String> dictionary = Speech.loadPronunciations(registry);
+	    assertNotNull(dictionary);
+	    assertTrue(dictionary.isEmpty());
+	    //The normalizer must be buildable with the empty dictionary
+	    final SpeechNormalizer normalizer = new SpeechNormalizer(dictionary, "", "", (ch)->null, Locale.ENGLISH);
+	    assertEquals("proba", normalizer.normalize("proba"));
+	}
+	finally {
+	    Files.walk(base).sorted(Comparator.reverseOrder()).forEach((p)->p.toFile().delete());
+	}
+    }
+}
@@ -0,0 +1,25 @@
+
+package org.luwrain.core;
+
+import java.util.function.BooleanSupplier;
+
+import org.junit.*;
+
+//Waits for the results of the background threads without fixed pauses
+class TestingConditions
+{
+    static private final long TIMEOUT = 5000;
+    static private final long POLL_INTERVAL = 5;
+
+    //Fails if the condition doesn't become true in time
+    static void waitFor(BooleanSupplier cond) throws InterruptedException
+    {
+	final long deadline = System.currentTimeMillis() + TIMEOUT;
+	while(!cond.getAsBoolean())
+	{
+	    if (System.currentTimeMillis() > deadline)
+		Assert.fail("the condition hasn't become true in " + TIMEOUT + " ms");
+	    Thread.sleep(POLL_INTERVAL);
+	}
+    }
+}
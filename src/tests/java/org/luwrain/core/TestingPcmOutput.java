@@ -0,0 +1,32 @@
+
+package org.luwrain.core;
+
+import java.util.*;
+import javax.sound.sampled.AudioFormat;
+
+//Finishes the playing at once without any audio line
+class TestingPcmOutput extends PcmOutput
+{
+    final List<byte[]> played = new ArrayList<byte[]>();
+    private final boolean failing;
+
+    TestingPcmOutput(boolean failing)
+    {
+	super(new AudioMixer());
+	this.failing = failing;
+    }
+
+    @Override synchronized boolean play(byte[] data, AudioFormat format, Runnable onFinished)
+    {
+	if (failing)
+	    return false;
+	played.add(data);
+	if (onFinished != null)
+	    onFinished.run();
+	return true;
+    }
+
+    @Override synchronized void stop()
+    {
+    }
+}
@@ -0,0 +1,103 @@
+
+package org.luwrain.core;
+
+import java.util.*;
+import java.io.*;
+import javax.sound.sampled.AudioFormat;
+
+import org.luwrain.speech.*;
+
+class TestingSpeechChannel implements Channel
+{
+    static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+    final List<String> spoken = new ArrayList<String>();
+    final List<Boolean> cancelled = new ArrayList<Boolean>();
+    final List<String> synthesized = new ArrayList<String>();
+    private final Set<Features> features;
+    private Listener listener = null;
+    private long lastId = 0;
+
+    TestingSpeechChannel(boolean canNotify)
+    {
+	this.features = canNotify?EnumSet.of(Features.CAN_SYNTH_TO_SPEAKERS, Features.CAN_NOTIFY_WHEN_FINISHED):EnumSet.of(Features.CAN_SYNTH_TO_SPEAKERS);
+    }
+
+    TestingSpeechChannel(Set<Features> features)
+    {
+	this.features = features;
+    }
+
+    //Imitates the end of the current speech
+    synchronized void finish()
+    {
+	if (listener != null)
+	    listener.onFinished(lastId);
+	listener = null;
+    }
+
+    synchronized int getSpokenCount()
+    {
+	return spoken.size();
+    }
+
+    synchronized int getSynthesizedCount()
+    {
+	return synthesized.size();
+    }
+
+    @Override public synchronized long speak(String text, Listener listener, int relPitch, int relRate, boolean cancelPrevious)
+    {
+	spoken.add(text);
+	cancelled.add(cancelPrevious);
+	this.listener = listener;
+	return ++lastId;
+    }
+
+    @Override public long speakLetter(char letter, Listener listener, int relPitch, int relRate, boolean cancelPrevious)
+    {
+	return speak("" + letter, listener, relPitch, relRate, cancelPrevious);
+    }
+
+    //Every character becomes 100 bytes of audio
+    @Override public boolean synth(String text, int pitch, int rate, AudioFormat format, OutputStream stream)
+    {
+	synchronized(this) {
+	    synthesized.add(text);
+	}
+	try {
+	    stream.write(new byte[text.length() * 100]);
+	    return true;
+	}
+	catch(IOException e)
+	{
+	    return false;
+	}
+    }
+
+    @Override public Set<Features> getFeatures()
+    {
+	return features;
+    }
+
+    @Override public AudioFormat[] getSynthSupportedFormats()
+    {
+	return new AudioFormat[]{FORMAT};
+    }
+
+    @Override public void silence() {}
+    @Override public boolean initByRegistry(Registry registry, String path) { return true; }
+    @Override public boolean initByArgs(String[] args) { return true; }
+    @Override public void close() {}
+    @Override public Voice[] getVoices() { return new Voice[0]; }
+    @Override public String getChannelName() { return "testing"; }
+    @Override public boolean isDefault() { return true; }
+    @Override public String getCurrentVoiceName() { return ""; }
+    @Override public void setCurrentVoice(String name) {}
+    @Override public int getDefaultPitch() { return DEFAULT_PARAM_VALUE; }
+    @Override public void setDefaultPitch(int value) {}
+    @Override public int getDefaultRate() { return DEFAULT_PARAM_VALUE; }
+    @Override public void setDefaultRate(int value) {}
+    @Override public PuncMode getCurrentPuncMode() { return PuncMode.NONE; }
+    @Override public void setCurrentPuncMode(PuncMode mode) {}
+}
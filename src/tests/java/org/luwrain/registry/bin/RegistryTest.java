@@ -0,0 +1,119 @@
+
+package org.luwrain.registry.bin;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import org.junit.*;
+
+import org.luwrain.core.Registry;
+
+public class RegistryTest extends Assert
+{
+    static private final File TEST_DIR = new File("/tmp/registry-bin-test");
+
+    private java.nio.file.Path file = null;
+
+    @Before public void createDir()
+    {
+	deleteRecurse(TEST_DIR);
+	TEST_DIR.mkdir();
+	file = new File(TEST_DIR, "registry.bin").toPath();
+    }
+
+    @After public void cleaning()
+    {
+	deleteRecurse(TEST_DIR);
+    }
+
+    @Test public void valuesKeptAfterReopening() throws IOException
+    {
+	RegistryImpl registry = new RegistryImpl(file);
+	assertTrue(registry.addDirectory("/proba/dir"));
+	assertFalse(registry.addDirectory("/proba/dir"));
+	assertTrue(registry.setString("/proba/str", "value"));
+	assertTrue(registry.setInteger("/proba/num", 10));
+	assertTrue(registry.setBoolean("/proba/dir/flag", true));
+	assertTrue(registry.setString("/proba/removed", "value"));
+	assertTrue(registry.deleteValue("/proba/removed"));
+	registry.close();
+	registry = new RegistryImpl(file);
+	assertEquals("value", registry.getString("/proba/str"));
+	assertEquals(10, registry.getInteger("/proba/num"));
+	assertTrue(registry.getBoolean("/proba/dir/flag"));
+	assertEquals(Registry.INVALID, registry.getTypeOf("/proba/removed"));
+	assertEquals(Registry.INTEGER, registry.getTypeOf("/proba/num"));
+	assertArrayEquals(new String[]{"dir"}, registry.getDirectories("/proba"));
+	assertTrue(registry.deleteDirectory("/proba/dir"));
+	assertFalse(registry.hasDirectory("/proba/dir"));
+	registry.close();
+	assertFalse(new RegistryImpl(file).hasDirectory("/proba/dir"));
+    }
+
+    @Test public void damagedTailIgnored() throws IOException
+    {
+	RegistryImpl registry = new RegistryImpl(file);
+	assertTrue(registry.setString("/proba/first", "1"));
+	registry.close();
+	final long goodSize = Files.size(file);
+	registry = new RegistryImpl(file);
+	assertTrue(registry.setString("/proba/second", "2"));
+	registry.close();
+	try (FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE)) {
+	    c.truncate(Files.size(file) - 3);
+	}
+	registry = new RegistryImpl(file);
+	assertEquals("1", registry.getString("/proba/first"));
+	assertFalse(registry.hasValue("/proba/second"));
+	assertEquals(goodSize, Files.size(file));
+	assertTrue(registry.setString("/proba/third", "3"));
+	registry.close();
+	assertEquals("3", new RegistryImpl(file).getString("/proba/third"));
+    }
+
+    @Test public void compaction() throws IOException
+    {
+	final RegistryImpl registry = new RegistryImpl(file);
+	for(int i = 0;i < 1000;++i)
+	    assertTrue(registry.setInteger("/proba/num", i));
+	final long sizeBefore = Files.size(file);
+	registry.compact();
+	assertTrue(Files.size(file) < sizeBefore);
+	assertTrue(registry.setString("/proba/after", "value"));
+	registry.close();
+	final RegistryImpl reopened = new RegistryImpl(file);
+	assertEquals(999, reopened.getInteger("/proba/num"));
+	assertEquals("value", reopened.getString("/proba/after"));
+    }
+
+    @Test public void conversion() throws IOException
+    {
+	final File fsdirDir = new File(TEST_DIR, "fsdir");
+	fsdirDir.mkdir();
+	final org.luwrain.registry.fsdir.RegistryImpl fsdir = new org.luwrain.registry.fsdir.RegistryImpl(fsdirDir.toPath());
+	assertTrue(fsdir.setString("/org/luwrain/str", "value"));
+	assertTrue(fsdir.setInteger("/org/luwrain/sub/num", 5));
+	assertTrue(fsdir.addDirectory("/org/empty"));
+	Converter.fsdirToBin(fsdirDir.toPath(), file);
+	final RegistryImpl registry = new RegistryImpl(file);
+	assertEquals("value", registry.getString("/org/luwrain/str"));
+	assertEquals(5, registry.getInteger("/org/luwrain/sub/num"));
+	assertTrue(registry.hasDirectory("/org/empty"));
+	registry.close();
+	final File backDir = new File(TEST_DIR, "back");
+	Converter.binToFsdir(file, backDir.toPath());
+	final org.luwrain.registry.fsdir.RegistryImpl back = new org.luwrain.registry.fsdir.RegistryImpl(backDir.toPath());
+	assertEquals("value", back.getString("/org/luwrain/str"));
+	assertEquals(5, back.getInteger("/org/luwrain/sub/num"));
+	assertTrue(back.hasDirectory("/org/empty"));
+    }
+
+    private void deleteRecurse(File f)
+    {
+	if (f.isDirectory())
+	    for(File i: f.listFiles())
+		deleteRecurse(i);
+	f.delete();
+    }
+}
@@ -0,0 +1,80 @@
+
+package org.luwrain.registry.fsdir;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class RegistryStressTest extends Assert
+{
+    static private final File REGISTRY_BASE = new File("/tmp/registry-stress-test");
+    static private final int DIR_COUNT = 50;
+
+    private RegistryImpl registry = null;
+
+    @Before public void createBase() throws IOException
+    {
+	REGISTRY_BASE.mkdir();
+	new File(REGISTRY_BASE, Directory.STRINGS_VALUES_FILE).createNewFile();
+	new File(REGISTRY_BASE, Directory.INTEGERS_VALUES_FILE).createNewFile();
+	new File(REGISTRY_BASE, Directory.BOOLEANS_VALUES_FILE).createNewFile();
+	registry = new RegistryImpl(REGISTRY_BASE.toPath(), 60000);
+	for(int i = 0;i < DIR_COUNT;++i)
+	{
+	    assertTrue(registry.setString("/stress/dir" + i + "/name", "dir" + i));
+	    assertTrue(registry.setInteger("/stress/dir" + i + "/counter", 0));
+	}
+	registry.flush();
+    }
+
+    @After public void cleaning()
+    {
+	deleteRecurse(REGISTRY_BASE);
+    }
+
+    @Test public void readersSeeMonotonicWrites() throws Exception
+    {
+	final int readerCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+	final AtomicBoolean finished = new AtomicBoolean(false);
+	final AtomicReference<String> failure = new AtomicReference<String>(null);
+	final ExecutorService executor = Executors.newFixedThreadPool(readerCount + 1);
+	final List<Future<?>> futures = new LinkedList<Future<?>>();
+	for(int r = 0;r < readerCount;++r)
+	    futures.add(executor.submit(()->{
+			final int[] last = new int[DIR_COUNT];
+			while(!finished.get())
+			    for(int i = 0;i < DIR_COUNT;++i)
+			    {
+				final int value = registry.getInteger("/stress/dir" + i + "/counter");
+				if (value < last[i])
+				    failure.set("dir" + i + ": " + value + " after " + last[i]);
+				last[i] = value;
+				if (!("dir" + i).equals(registry.getString("/stress/dir" + i + "/name")))
+				    failure.set("dir" + i + ": wrong name");
+			    }
+		    }));
+	futures.add(executor.submit(()->{
+		    for(int k = 1;k <= 200;++k)
+			for(int i = 0;i < DIR_COUNT;++i)
+			    registry.setInteger("/stress/dir" + i + "/counter", k);
+		    finished.set(true);
+		}));
+	for(Future<?> f: futures)
+	    f.get(60, TimeUnit.SECONDS);
+	executor.shutdown();
+	assertNull(failure.get());
+	for(int i = 0;i < DIR_COUNT;++i)
+	    assertEquals(200, registry.getInteger("/stress/dir" + i + "/counter"));
+    }
+
+    private void deleteRecurse(File f)
+    {
+	if (f.isDirectory())
+	    for(File i: f.listFiles())
+		deleteRecurse(i);
+	f.delete();
+    }
+}
@@ -2,8 +2,14 @@
 package org.luwrain.registry.fsdir;
 
 import java.io.*;
+import java.util.*;
 import org.junit.*;
 
+import org.luwrain.core.Registry;
+import org.luwrain.registry.DirectorySnapshot;
+import org.luwrain.registry.ValuesReplacer;
+import org.luwrain.registry.ChangeNotifier;
+
 public class RegistryTest extends Assert
 {
     static private final File REGISTRY_BASE = new File("/tmp/registry-test");
@@ -35,7 +41,7 @@ public class RegistryTest extends Assert
 
     @Test public void addDir()
     {
-	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.getAbsolutePath());
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath());
 	assertTrue(registry.addDirectory("proba"));
 
 	final File probaDir = new File(REGISTRY_BASE, "proba");
@@ -46,6 +52,141 @@ public class RegistryTest extends Assert
 	assertTrue(new File(probaDir, Directory.BOOLEANS_VALUES_FILE).exists());
     }
 
+    @Test public void writeBehind() throws IOException
+    {
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath(), 60000);
+	assertTrue(registry.addDirectory("proba"));
+	final File strings = new File(new File(REGISTRY_BASE, "proba"), Directory.STRINGS_VALUES_FILE);
+	final File integers = new File(new File(REGISTRY_BASE, "proba"), Directory.INTEGERS_VALUES_FILE);
+	for(int i = 0;i < 100;++i)
+	    assertTrue(registry.setInteger("/proba/rate", i));
+	assertTrue(registry.setString("/proba/name", "value"));
+	assertEquals(99, registry.getInteger("/proba/rate"));
+	assertEquals(0, integers.length());
+	assertEquals(0, strings.length());
+	registry.flush();
+	assertTrue(integers.length() > 0);
+	assertTrue(strings.length() > 0);
+	final RegistryImpl reloaded = new RegistryImpl(REGISTRY_BASE.toPath());
+	assertEquals(99, reloaded.getInteger("/proba/rate"));
+	assertEquals("value", reloaded.getString("/proba/name"));
+    }
+
+    @Test public void noWritesToDeletedDir()
+    {
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath(), 60000);
+	assertTrue(registry.setString("/proba/name", "value"));
+	assertTrue(registry.deleteDirectory("/proba"));
+	registry.flush();
+	assertFalse(new File(REGISTRY_BASE, "proba").exists());
+    }
+
+    @Test public void deleteWithPendingSibling()
+    {
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath(), 60000);
+	assertTrue(registry.setInteger("/proba/first/num", 1));
+	assertTrue(registry.setInteger("/proba/second/num", 2));
+	registry.flush();
+	assertTrue(registry.setInteger("/proba/second/num", 3));
+	assertTrue(registry.deleteDirectory("/proba/first"));
+	//The pending value remains visible and is saved
+	assertEquals(3, registry.getInteger("/proba/second/num"));
+	registry.flush();
+	assertEquals(3, new RegistryImpl(REGISTRY_BASE.toPath()).getInteger("/proba/second/num"));
+    }
+
+    @Test public void manySiblings()
+    {
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath(), 60000);
+	for(int i = 0;i < 2000;++i)
+	    assertTrue(registry.setInteger("/proba/dir" + i + "/num", i));
+	assertEquals(2000, registry.getDirectories("/proba").length);
+	for(int i = 0;i < 2000;++i)
+	    assertEquals(i, registry.getInteger("/proba/dir" + i + "/num"));
+	assertTrue(registry.deleteDirectory("/proba/dir5"));
+	assertFalse(registry.hasDirectory("/proba/dir5"));
+	assertTrue(registry.hasDirectory("/proba/dir6"));
+	assertEquals(1999, registry.getDirectories("/proba").length);
+    }
+
+    @Test public void snapshot()
+    {
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath());
+	assertTrue(registry.setString("/proba/str", "value"));
+	assertTrue(registry.setInteger("/proba/sub/num", 5));
+	assertTrue(registry.setBoolean("/proba/sub/deeper/flag", true));
+	final DirectorySnapshot flat = DirectorySnapshot.read(registry, "/proba", false);
+	assertNotNull(flat);
+	assertEquals(Registry.STRING, flat.getTypeOf("str"));
+	assertEquals("value", flat.getString("str"));
+	assertEquals(1, flat.getSubdirNames().length);
+	assertNull(flat.getSubdir("sub"));
+	final DirectorySnapshot snapshot = DirectorySnapshot.read(registry, "/proba", true);
+	assertEquals(5, snapshot.getSubdir("sub").getInteger("num"));
+	assertTrue(snapshot.getSubdir("sub").getSubdir("deeper").getBoolean("flag"));
+	final Registry view = snapshot.asRegistry();
+	assertEquals(Registry.INTEGER, view.getTypeOf("/proba/sub/num"));
+	assertTrue(view.getBoolean("/proba/sub/deeper/flag"));
+	assertFalse(view.hasDirectory("/other"));
+	//The snapshot doesn't follow the changes
+	assertTrue(registry.setString("/proba/str", "changed"));
+	assertEquals("value", view.getString("/proba/str"));
+	assertNull(DirectorySnapshot.read(registry, "/absent", true));
+    }
+
+    @Test public void replaceValues()
+    {
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath());
+	assertTrue(registry.setString("/proba/a", "1"));
+	assertTrue(registry.setString("/proba/b", "2"));
+	assertTrue(registry.setInteger("/proba/num", 3));
+	final Map<String, Object> values = new TreeMap<String, Object>();
+	values.put("b", "new");
+	values.put("c", "added");
+	values.put("num", 3);
+	assertTrue(ValuesReplacer.replaceValues(registry, "/proba", values));
+	final RegistryImpl reloaded = new RegistryImpl(REGISTRY_BASE.toPath());
+	assertFalse(reloaded.hasValue("/proba/a"));
+	assertEquals("new", reloaded.getString("/proba/b"));
+	assertEquals("added", reloaded.getString("/proba/c"));
+	assertEquals(3, reloaded.getInteger("/proba/num"));
+	assertTrue(ValuesReplacer.replaceValues(registry, "/created", values));
+	assertEquals("added", new RegistryImpl(REGISTRY_BASE.toPath()).getString("/created/c"));
+    }
+
+    @Test public void changeNotifications()
+    {
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath());
+	assertTrue(registry.addDirectory("/proba/sub"));
+	final List<String> changes = new LinkedList<String>();
+	final ChangeNotifier.Listener listener = (path)->changes.add(path);
+	registry.addChangeListener("/proba", listener);
+	assertTrue(registry.setString("/proba/sub/str", "value"));
+	assertTrue(registry.setString("/other/str", "value"));
+	assertEquals(1, changes.size());
+	assertEquals("/proba/sub", changes.get(0));
+	registry.removeChangeListener(listener);
+	assertTrue(registry.setString("/proba/sub/str", "another"));
+	assertEquals(1, changes.size());
+    }
+
+    @Test public void externalChanges() throws Exception
+    {
+	final RegistryImpl registry = new RegistryImpl(REGISTRY_BASE.toPath());
+	assertTrue(registry.setString("/proba/str", "value"));
+	final List<String> changes = Collections.synchronizedList(new LinkedList<String>());
+	registry.addChangeListener("/proba", (path)->changes.add(path));
+	assertEquals("value", registry.getString("/proba/str"));
+	final File strings = new File(new File(REGISTRY_BASE, "proba"), Directory.STRINGS_VALUES_FILE);
+	//Making sure the modification time differs from the own write
+	Thread.sleep(1100);
+	ValueWriter.saveValuesToFile(new TreeMap<String, String>(Collections.singletonMap("str", "changed")), strings.getAbsolutePath());
+	for(int i = 0;i < 100 && changes.isEmpty();++i)
+	    Thread.sleep(100);
+	assertFalse(changes.isEmpty());
+	assertEquals("changed", registry.getString("/proba/str"));
+    }
+
     private void deleteRecurse(File f) throws IOException
     {
 	if (f.isDirectory())
@@ -0,0 +1,110 @@
+
+package org.luwrain.util;
+
+import java.util.*;
+
+import org.junit.*;
+
+import org.luwrain.core.*;
+
+public class SentenceSegmenterTest extends Assert
+{
+    @Test public void sentencesAcrossLines()
+    {
+	final SentenceSegmenter s = new SentenceSegmenter(lines("First sentence. Second", "sentence goes on. Third one"), Locale.ENGLISH, 200, 0, 0);
+	SentenceSegmenter.Segment seg = s.next();
+	assertEquals("First sentence.", seg.text);
+	assertEquals(0, seg.fromX);
+	assertEquals(0, seg.fromY);
+	assertEquals(16, seg.toX);
+	assertEquals(0, seg.toY);
+	seg = s.next();
+	assertEquals("Second sentence goes on.", seg.text);
+	assertEquals(16, seg.fromX);
+	assertEquals(0, seg.fromY);
+	assertEquals(18, seg.toX);
+	assertEquals(1, seg.toY);
+	seg = s.next();
+	assertEquals("Third one", seg.text);
+	assertEquals(0, seg.toX);
+	assertEquals(2, seg.toY);
+	assertNull(s.next());
+    }
+
+    @Test public void startInsideLine()
+    {
+	final SentenceSegmenter s = new SentenceSegmenter(lines("One. Two. Three."), Locale.ENGLISH, 200, 5, 0);
+	SentenceSegmenter.Segment seg = s.next();
+	assertEquals("Two.", seg.text);
+	assertEquals(5, seg.fromX);
+	assertEquals(10, seg.toX);
+	seg = s.next();
+	assertEquals("Three.", seg.text);
+	assertEquals(0, seg.toX);
+	assertEquals(1, seg.toY);
+	assertNull(s.next());
+    }
+
+    @Test public void emptyLineEndsSentence()
+    {
+	final SentenceSegmenter s = new SentenceSegmenter(lines("Title", "", "   ", "Text"), Locale.ENGLISH, 200, 0, 0);
+	SentenceSegmenter.Segment seg = s.next();
+	assertEquals("Title", seg.text);
+	seg = s.next();
+	assertEquals("Text", seg.text);
+	assertEquals(0, seg.fromX);
+	assertEquals(3, seg.fromY);
+	assertNull(s.next());
+    }
+
+    @Test public void longTextCutAtSpaces()
+    {
+	final String[] text = new String[1000];
+	for(int i = 0;i < text.length;++i)
+	    text[i] = "word" + i + " without any punctuation";
+	final SentenceSegmenter s = new SentenceSegmenter(lines(text), Locale.ENGLISH, 100, 0, 0);
+	final StringBuilder b = new StringBuilder();
+	SentenceSegmenter.Segment seg;
+	int count = 0;
+	while((seg = s.next()) != null)
+	{
+	    assertTrue(seg.text.length() <= 100);
+	    assertFalse(seg.text.startsWith(" "));
+	    b.append(seg.text).append(" ");
+	    ++count;
+	}
+	assertTrue(count > 300);
+	assertEquals(String.join(" ", text) + " ", new String(b));
+    }
+
+    @Test public void positionsMatchText()
+    {
+	final String[] text = new String[200];
+	for(int i = 0;i < text.length;++i)
+	    text[i] = (i % 3 == 0)?"":"Line " + i + " has some words. And more words here";
+	final Lines lines = lines(text);
+	final SentenceSegmenter s = new SentenceSegmenter(lines, Locale.ENGLISH, 40, 0, 0);
+	SentenceSegmenter.Segment seg;
+	while((seg = s.next()) != null)
+	{
+	    final String line = lines.getLine(seg.fromY);
+	    assertTrue(line.substring(seg.fromX).startsWith(seg.text.split(" ")[0]));
+	    if (seg.toY < lines.getLineCount())
+		assertTrue(seg.toX <= lines.getLine(seg.toY).length());
+	}
+    }
+
+    static private Lines lines(String... text)
+    {
+	return new Lines(){
+	    @Override public int getLineCount()
+	    {
+		return text.length;
+	    }
+	    @Override public String getLine(int index)
+	    {
+		return text[index];
+	    }
+	};
+    }
+}